@@ -0,0 +1,51 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the heap taken by the address index of a {@code UTXOPool}: the pool is filled, the
+ * used heap is sampled, the index is built by one query per address and the heap sampled again.
+ *
+ * <pre>
+ * java AddressIndexFootprint [utxoSetSize=1000000] [addresses=1000]
+ * </pre>
+ */
+public class AddressIndexFootprint {
+
+    public static void main(String[] args) {
+        int utxoSetSize = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int numAddresses = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+
+        LedgerFixtures fixtures = new LedgerFixtures(42, 512);
+        List<KeyPair> addresses = fixtures.newKeyPairs(numAddresses);
+        UTXOPool utxoPool = new UTXOPool();
+        int perAddress = Math.max(1, utxoSetSize / numAddresses);
+        for (KeyPair address : addresses) {
+            LedgerFixtures.addOutputs(fixtures.fundingTransaction(perAddress, 1, address.getPublic()), utxoPool);
+        }
+
+        long before = usedHeap();
+        double total = 0;
+        for (KeyPair address : addresses) {
+            total += utxoPool.getBalance(address.getPublic());
+        }
+        long after = usedHeap();
+
+        int size = utxoPool.size();
+        System.out.printf(Locale.ROOT, "UTXOs %d, addresses %d, total balance %.1f%n", size, numAddresses, total);
+        System.out.printf(Locale.ROOT, "address index measured  %,d bytes (%.1f bytes/UTXO)%n",
+                after - before, (after - before) / (double) size);
+        System.out.printf(Locale.ROOT, "address index estimated %,d bytes (%.1f bytes/UTXO)%n",
+                utxoPool.estimateAddressIndexBytes(), utxoPool.estimateAddressIndexBytes() / (double) size);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,400 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A small, dependency-free micro-benchmark harness in the spirit of JMH, which itself cannot be
+ * used here: it refuses benchmark classes in the default package, where all of this code lives.
+ * Benchmarks are registered with the parameters they use; every combination of parameter values
+ * is run in JVMs of its own (forks, {@code -f}), so that profile pollution and JIT decisions of
+ * one benchmark do not carry over to the next. In each fork it is set up once, warmed up and then
+ * measured in fixed-duration iterations. Invocations are timed in batches, grown until a batch
+ * takes {@link #BATCH_NANOS}, so that the cost of reading the clock stays out of the score;
+ * preparation of a batch is not timed. Results are printed as a table and can be written as JSON
+ * (one result per line, in JMH's field layout) and compared against an earlier run.
+ *
+ * <pre>
+ * java LedgerBenchmarks [-p name=v1,v2 ...] [-f 1] [-wi 3] [-i 5] [-r 1000] [-o out.json] [-compare old.json] [regex]
+ * </pre>
+ *
+ * With {@code -f 0} every benchmark runs in the JVM of the runner. Forks run the main class given
+ * to the constructor, with the class path and JVM options of the runner.
+ */
+public class BenchmarkRunner {
+
+    /** One benchmarked operation, already set up for a single combination of parameters */
+    public interface Operation {
+        /**
+         * Called before every batch of {@code invocations} calls of {@link #run}, outside the
+         * timed region; an operation that needs fresh state for every call sets up that many here
+         */
+        default void prepare(int invocations) throws Exception {
+        }
+
+        /** @return a value that is consumed so the JIT cannot drop the work */
+        Object run() throws Exception;
+    }
+
+    /** Sets up an {@link Operation} for the given parameter values */
+    public interface Benchmark {
+        Operation setUp(Map<String, Integer> params) throws Exception;
+    }
+
+    /** two-sided 99.9% Student t quantiles for 1..10 degrees of freedom */
+    private static final double[] T_999 = {636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59};
+
+    /** a batch of invocations is doubled in size until timing it takes at least this long */
+    public static final long BATCH_NANOS = 1_000_000;
+
+    private static final int MAX_BATCH = 1 << 20;
+
+    /** prefix of the line through which a fork reports its scores to the runner */
+    private static final String SCORES = "# scores ";
+
+    private static volatile int sink;
+
+    private final Class<?> mainClass;
+    private final Map<String, List<Integer>> paramValues = new LinkedHashMap<>();
+    private final Map<String, Registration> benchmarks = new LinkedHashMap<>();
+
+    private int forks = 1;
+    private boolean forked;
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 1000;
+
+    /** invocations timed together in the benchmark being measured; kept from one iteration to the next */
+    private int batchSize;
+    private Pattern filter = Pattern.compile(".*");
+    private String outputFile;
+    private String compareFile;
+
+    /** @param mainClass the class whose main method registers the benchmarks and calls {@link #run} */
+    public BenchmarkRunner(Class<?> mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    /** Declares parameter {@code name} with the values used unless overridden by {@code -p} */
+    public void param(String name, int... defaults) {
+        List<Integer> values = new ArrayList<>();
+        for (int value : defaults) {
+            values.add(value);
+        }
+        paramValues.put(name, values);
+    }
+
+    /** Registers {@code benchmark} under {@code name}, run for every combination of {@code params} */
+    public void register(String name, Benchmark benchmark, String... params) {
+        for (String param : params) {
+            if (!paramValues.containsKey(param)) {
+                throw new IllegalArgumentException("unknown parameter " + param + " for " + name);
+            }
+        }
+        benchmarks.put(name, new Registration(name, Arrays.asList(params), benchmark));
+    }
+
+    public void run(String[] args) throws Exception {
+        parseArgs(args);
+
+        List<Result> results = new ArrayList<>();
+        for (Registration registration : benchmarks.values()) {
+            if (!filter.matcher(registration.name).find()) {
+                continue;
+            }
+            for (Map<String, Integer> params : combinations(registration.params)) {
+                if (forked) {
+                    double[] scores = measure(registration, params);
+                    StringBuilder line = new StringBuilder(SCORES);
+                    for (double score : scores) {
+                        line.append(' ').append(Double.toString(score));
+                    }
+                    System.out.println(line);
+                    continue;
+                }
+                double[] scores = (forks == 0) ? measure(registration, params) : fork(registration, params);
+                Result result = new Result(registration.name, params, forks, warmupIterations, scores);
+                System.out.println(result.toLine());
+                results.add(result);
+            }
+        }
+        if (forked) {
+            return;
+        }
+
+        if (outputFile != null) {
+            StringBuilder json = new StringBuilder("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                json.append("  ").append(results.get(i).toJson()).append(i + 1 < results.size() ? ",\n" : "\n");
+            }
+            json.append("]\n");
+            Files.write(Paths.get(outputFile), json.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Results written to " + outputFile);
+        }
+        if (compareFile != null) {
+            compare(results, compareFile);
+        }
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p": {
+                    String[] nameAndValues = args[++i].split("=", 2);
+                    if (!paramValues.containsKey(nameAndValues[0])) {
+                        throw new IllegalArgumentException("unknown parameter " + nameAndValues[0]);
+                    }
+                    List<Integer> values = new ArrayList<>();
+                    for (String value : nameAndValues[1].split(",")) {
+                        values.add(Integer.parseInt(value.trim()));
+                    }
+                    paramValues.put(nameAndValues[0], values);
+                    break;
+                }
+                case "-f":
+                    forks = Integer.parseInt(args[++i]);
+                    break;
+                case "-forked":
+                    forked = true;
+                    break;
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    measurementIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-o":
+                    outputFile = args[++i];
+                    break;
+                case "-compare":
+                    compareFile = args[++i];
+                    break;
+                default:
+                    filter = Pattern.compile(args[i]);
+            }
+        }
+        if (measurementIterations < 1) {
+            throw new IllegalArgumentException("at least one measurement iteration is required");
+        }
+        if (forks < 0) {
+            throw new IllegalArgumentException("the number of forks cannot be negative: " + forks);
+        }
+    }
+
+    private List<Map<String, Integer>> combinations(List<String> params) {
+        List<Map<String, Integer>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (String param : params) {
+            List<Map<String, Integer>> extended = new ArrayList<>();
+            for (Map<String, Integer> combination : combinations) {
+                for (int value : paramValues.get(param)) {
+                    Map<String, Integer> copy = new LinkedHashMap<>(combination);
+                    copy.put(param, value);
+                    extended.add(copy);
+                }
+            }
+            combinations = extended;
+        }
+        return combinations;
+    }
+
+    /** @return the scores of all measurement iterations of all forks, each fork running one combination */
+    private double[] fork(Registration registration, Map<String, Integer> params) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        for (Map.Entry<String, Integer> param : params.entrySet()) {
+            command.add("-p");
+            command.add(param.getKey() + "=" + param.getValue());
+        }
+        command.addAll(Arrays.asList("-forked", "-wi", Integer.toString(warmupIterations),
+                "-i", Integer.toString(measurementIterations), "-r", Long.toString(iterationMillis),
+                "^" + Pattern.quote(registration.name) + "$"));
+
+        double[] scores = new double[forks * measurementIterations];
+        for (int f = 0; f < forks; f++) {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            int read = 0;
+            try (BufferedReader out = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line; (line = out.readLine()) != null; ) {
+                    if (!line.startsWith(SCORES)) {
+                        System.out.println(line);
+                        continue;
+                    }
+                    for (String score : line.substring(SCORES.length()).trim().split(" ")) {
+                        scores[f * measurementIterations + read++] = Double.parseDouble(score);
+                    }
+                }
+            }
+            int status = process.waitFor();
+            if (status != 0 || read != measurementIterations) {
+                throw new IllegalStateException("fork " + (f + 1) + " of " + registration.name + " " + params
+                        + " exited with status " + status + " after reporting " + read + " scores");
+            }
+        }
+        return scores;
+    }
+
+    /** @return the score of every measurement iteration, run in this JVM */
+    private double[] measure(Registration registration, Map<String, Integer> params) throws Exception {
+        Operation operation = registration.benchmark.setUp(params);
+        batchSize = 1;
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+        double[] scores = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            scores[i] = iteration(operation);
+        }
+        return scores;
+    }
+
+    /** @return the mean time of one invocation in microseconds */
+    private double iteration(Operation operation) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000L;
+        long measuredNanos = 0;
+        long invocations = 0;
+        int consumed = 0;
+        do {
+            int size = batchSize;
+            operation.prepare(size);
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                consumed ^= System.identityHashCode(operation.run());
+            }
+            long elapsed = System.nanoTime() - start;
+            measuredNanos += elapsed;
+            invocations += size;
+            if (elapsed < BATCH_NANOS && size < MAX_BATCH) {
+                batchSize = size * 2;
+            }
+        } while (System.nanoTime() < deadline);
+        sink ^= consumed;
+        return measuredNanos / 1000.0 / invocations;
+    }
+
+    private static void compare(List<Result> results, String baselineFile) throws IOException {
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        Pattern line = Pattern.compile("\"benchmark\": \"(.*?)\".*\"params\": (\\{.*?\\}).*\"score\": ([-0-9.Ee+]+)");
+        for (String json : Files.readAllLines(Paths.get(baselineFile), StandardCharsets.UTF_8)) {
+            Matcher m = line.matcher(json);
+            if (m.find()) {
+                baseline.put(m.group(1) + " " + m.group(2), Double.parseDouble(m.group(3)));
+            }
+        }
+
+        System.out.println();
+        System.out.println("Comparison against " + baselineFile + " (ratio > 1 means slower now)");
+        for (Result result : results) {
+            Double before = baseline.get(result.name + " " + result.paramsJson());
+            if (before == null) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-60s %12.3f -> %12.3f us/op  x%.3f%n",
+                    result.name + " " + result.paramsJson(), before, result.score(), result.score() / before);
+        }
+    }
+
+    private static class Registration {
+        final String name;
+        final List<String> params;
+        final Benchmark benchmark;
+
+        Registration(String name, List<String> params, Benchmark benchmark) {
+            this.name = name;
+            this.params = params;
+            this.benchmark = benchmark;
+        }
+    }
+
+    private static class Result {
+        final String name;
+        final Map<String, Integer> params;
+        final int forks;
+        final int warmupIterations;
+        final double[] scores;
+
+        Result(String name, Map<String, Integer> params, int forks, int warmupIterations, double[] scores) {
+            this.name = name;
+            this.params = params;
+            this.forks = forks;
+            this.warmupIterations = warmupIterations;
+            this.scores = scores;
+        }
+
+        double score() {
+            double sum = 0;
+            for (double score : scores) {
+                sum += score;
+            }
+            return sum / scores.length;
+        }
+
+        /** @return the half-width of the 99.9% confidence interval of the score */
+        double scoreError() {
+            int n = scores.length;
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double mean = score();
+            double squares = 0;
+            for (double score : scores) {
+                squares += (score - mean) * (score - mean);
+            }
+            double t = (n - 1 <= T_999.length) ? T_999[n - 2] : 3.29;
+            return t * Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+        }
+
+        String paramsJson() {
+            StringBuilder json = new StringBuilder("{");
+            for (Map.Entry<String, Integer> param : params.entrySet()) {
+                if (json.length() > 1) {
+                    json.append(", ");
+                }
+                json.append('"').append(param.getKey()).append("\": \"").append(param.getValue()).append('"');
+            }
+            return json.append('}').toString();
+        }
+
+        String toJson() {
+            // one array of scores per fork, as JMH writes them
+            int perFork = scores.length / Math.max(forks, 1);
+            StringBuilder raw = new StringBuilder();
+            for (int i = 0; i < scores.length; i++) {
+                raw.append(i == 0 ? "[" : (i % perFork == 0) ? "], [" : ", ")
+                        .append(String.format(Locale.ROOT, "%.4f", scores[i]));
+            }
+            raw.append(']');
+            return String.format(Locale.ROOT,
+                    "{\"benchmark\": \"%s\", \"mode\": \"avgt\", \"forks\": %d, \"warmupIterations\": %d, "
+                            + "\"measurementIterations\": %d, "
+                            + "\"params\": %s, \"primaryMetric\": {\"score\": %.4f, \"scoreError\": %s, "
+                            + "\"scoreUnit\": \"us/op\", \"rawData\": [%s]}}",
+                    name, forks, warmupIterations, perFork, paramsJson(), score(),
+                    Double.isNaN(scoreError()) ? "\"NaN\"" : String.format(Locale.ROOT, "%.4f", scoreError()), raw);
+        }
+
+        String toLine() {
+            return String.format(Locale.ROOT, "%-45s %-50s %14.3f +- %10.3f us/op",
+                    name, params, score(), scoreError());
+        }
+    }
+}
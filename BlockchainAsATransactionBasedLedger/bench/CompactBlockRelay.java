@@ -0,0 +1,171 @@
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Relays one block from a sender to in-process peers as a {@link CompactBlock} and reports the
+ * bytes moved against sending the full block, and how long peers take to rebuild it. Every peer
+ * holds a random {@code overlap} share of the block's transactions in its pool, plus
+ * {@code poolExtra} transactions that are not in the block. A peer that misses transactions asks
+ * the sender for them, which is one more round trip; the bytes of that request and its answer
+ * are counted too.
+ *
+ * <pre>
+ * java CompactBlockRelay [-txs 1000] [-poolExtra 1000] [-peers 4] [-rounds 20]
+ *                        [-overlap 1,0.99,0.9,0.5] [-keySize 1024] [-seed 1]
+ * </pre>
+ */
+public class CompactBlockRelay {
+
+    private static final double COIN_VALUE = 10;
+
+    private int numTxs = 1000;
+    private int poolExtra = 1000;
+    private int numPeers = 4;
+    private int rounds = 20;
+    private double[] overlaps = {1, 0.99, 0.9, 0.5};
+    private int keySize = 1024;
+    private long seed = 1;
+
+    private Random random;
+    private Block block;
+    private List<Transaction> extraTxs;
+
+    public static void main(String[] args) {
+        CompactBlockRelay relay = new CompactBlockRelay();
+        relay.parseArgs(args);
+        relay.setUp();
+        for (double overlap : relay.overlaps) {
+            relay.run(overlap);
+        }
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-txs": numTxs = Integer.parseInt(value); break;
+                case "-poolExtra": poolExtra = Integer.parseInt(value); break;
+                case "-peers": numPeers = Integer.parseInt(value); break;
+                case "-rounds": rounds = Integer.parseInt(value); break;
+                case "-overlap": overlaps = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray(); break;
+                case "-keySize": keySize = Integer.parseInt(value); break;
+                case "-seed": seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+    }
+
+    /** Signs the block's transactions and the extra pool transactions, all spending one funding transaction */
+    private void setUp() {
+        random = new Random(seed);
+        LedgerFixtures fixtures = new LedgerFixtures(seed, keySize);
+        KeyPair owner = fixtures.newKeyPair();
+        KeyPair recipient = fixtures.newKeyPair();
+        Transaction funding = fixtures.fundingTransaction(numTxs + poolExtra, COIN_VALUE, owner.getPublic());
+        List<Transaction> txs = fixtures.independentTransactions(LedgerFixtures.fundsOf(funding), COIN_VALUE, owner,
+                numTxs + poolExtra, 1);
+
+        Block genesis = new Block(null, owner.getPublic());
+        genesis.addTransaction(funding);
+        genesis.finalize();
+        block = new Block(genesis.getHash(), recipient.getPublic());
+        for (Transaction tx : txs.subList(0, numTxs)) {
+            block.addTransaction(tx);
+        }
+        block.finalize();
+        extraTxs = txs.subList(numTxs, txs.size());
+    }
+
+    private void run(double overlap) {
+        List<TransactionPool> pools = new ArrayList<>();
+        for (int p = 0; p < numPeers; p++) {
+            TransactionPool pool = new TransactionPool();
+            for (Transaction tx : block.getTransactions()) {
+                if (random.nextDouble() < overlap) {
+                    pool.addTransaction(tx);
+                }
+            }
+            for (Transaction tx : extraTxs) {
+                pool.addTransaction(tx);
+            }
+            pools.add(pool);
+        }
+
+        LatencyRecorder encoding = new LatencyRecorder("encode");
+        LatencyRecorder reconstruction = new LatencyRecorder("reconstruct");
+        LatencyRecorder completion = new LatencyRecorder("complete");
+        long fullBytes = fullBlockBytes();
+        long compactBytes = 0;
+        long followUpBytes = 0;
+        long missingTxs = 0;
+        long secondRoundTrips = 0;
+        long fallbacks = 0;
+        long relays = 0;
+
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            byte[] wire = new CompactBlock(block, random.nextLong()).toWire();
+            encoding.record(System.nanoTime() - start);
+
+            for (TransactionPool pool : pools) {
+                start = System.nanoTime();
+                CompactBlock received = CompactBlock.fromWire(ByteBuffer.wrap(wire));
+                CompactBlock.Reconstruction rebuilt = received.reconstruct(pool.snapshot());
+                int[] missing = rebuilt.getMissing();
+                reconstruction.record(System.nanoTime() - start);
+
+                // the request names the missing indexes, the answer carries the transactions in wire format
+                List<Transaction> answer = new ArrayList<>(missing.length);
+                if (missing.length > 0) {
+                    secondRoundTrips++;
+                    followUpBytes += Integer.BYTES * (1 + missing.length) + Integer.BYTES;
+                    for (Transaction tx : CompactBlock.getTransactions(block, missing)) {
+                        byte[] txWire = tx.toWire();
+                        followUpBytes += Integer.BYTES + txWire.length;
+                        answer.add(TransactionView.wrap(ByteBuffer.wrap(txWire)).materialize());
+                    }
+                }
+                missingTxs += missing.length;
+
+                start = System.nanoTime();
+                Block completed = rebuilt.complete(answer);
+                completion.record(System.nanoTime() - start);
+                if (completed == null) {
+                    fallbacks++;
+                    followUpBytes += fullBytes;
+                }
+                compactBytes += wire.length;
+                relays++;
+            }
+        }
+
+        double relayed = (compactBytes + followUpBytes) / (double) relays;
+        System.out.printf(Locale.ROOT, "overlap %.2f: %d txs, %d peers x %d rounds, pool %d extra txs%n",
+                overlap, numTxs, numPeers, rounds, poolExtra);
+        System.out.printf(Locale.ROOT, "  full block           %,d bytes%n", fullBytes);
+        System.out.printf(Locale.ROOT, "  compact block        %,d bytes, follow-up %,.0f bytes per relay%n",
+                compactBytes / relays, followUpBytes / (double) relays);
+        System.out.printf(Locale.ROOT, "  saved                %.1f%% (%,.0f bytes per relay)%n",
+                100 * (1 - relayed / fullBytes), fullBytes - relayed);
+        System.out.printf(Locale.ROOT, "  missing              %.1f txs per relay, second round trip %.0f%%, fallbacks %d%n",
+                missingTxs / (double) relays, 100.0 * secondRoundTrips / relays, fallbacks);
+        System.out.println("  " + encoding.summary());
+        System.out.println("  " + reconstruction.summary());
+        System.out.println("  " + completion.summary());
+    }
+
+    /** @return the size of the block with every transaction in wire format, each behind its length */
+    private long fullBlockBytes() {
+        long bytes = 2 * Short.BYTES + block.getPrevBlockHash().length
+                + block.getCoinbase().getOutput(0).addressEntry().encodedLength() + Integer.BYTES;
+        for (Transaction tx : block.getTransactions()) {
+            bytes += Integer.BYTES + tx.toWire().length;
+        }
+        return bytes;
+    }
+}
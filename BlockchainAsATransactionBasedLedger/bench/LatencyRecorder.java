@@ -0,0 +1,58 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/** Records latency samples in nanoseconds and reports their count, mean and percentiles */
+public class LatencyRecorder {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    /** Records every sample of {@code other} */
+    public void addAll(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.samples[i]);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** @return the sample at quantile {@code q} (between 0 and 1) in nanoseconds, or 0 if there are no samples */
+    public long percentile(double q) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(q * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    public double meanNanos() {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i];
+        }
+        return (count == 0) ? 0 : sum / count;
+    }
+
+    /** @return one line with the count, mean, p50, p99, p99.9 and maximum, in microseconds */
+    public String summary() {
+        return String.format(Locale.ROOT, "%-22s n=%-8d mean=%10.1fus p50=%10.1fus p99=%10.1fus p999=%10.1fus max=%10.1fus",
+                name, count, meanNanos() / 1e3, percentile(0.50) / 1e3, percentile(0.99) / 1e3,
+                percentile(0.999) / 1e3, percentile(1.0) / 1e3);
+    }
+}
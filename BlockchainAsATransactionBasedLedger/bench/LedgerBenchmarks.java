@@ -0,0 +1,411 @@
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks for the hot paths of the ledger. Parameters:
+ * <ul>
+ * <li>{@code txCount} - transactions handled per invocation (per block for {@code addBlock})</li>
+ * <li>{@code inputsPerTx} - inputs of every generated transaction</li>
+ * <li>{@code utxoSetSize} - UTXOs in the pool the transactions are validated against</li>
+ * <li>{@code threads} - parallelism of the pool {@code BlockValidator} validates its groups on</li>
+ * </ul>
+ * See {@link BenchmarkRunner} for the command line; for example
+ * {@code java LedgerBenchmarks -p txCount=100,1000 -o results.json TxHandler}.
+ */
+public class LedgerBenchmarks {
+
+    /** value of every funded UTXO */
+    private static final double FUND_VALUE = 10;
+
+    /** MaxFeeTxHandler searches every subset of the valid transactions, so it only sees this many */
+    private static final int MAX_FEE_TX_LIMIT = 16;
+
+    /** blocks on each of the two competing branches in the addBlock benchmark */
+    private static final int FORK_DEPTH = 3;
+
+    /** distinct addresses sharing the pool in the balance benchmarks */
+    private static final int BALANCE_ADDRESSES = 100;
+
+    private static final long SEED = 42;
+
+    private static KeyPair owner;
+    private static KeyPair recipient;
+
+    /** an Ed25519 key pair standing in for owner in the benchmarks that compare signature schemes */
+    private static KeyPair edOwner;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner(LedgerBenchmarks.class);
+        runner.param("txCount", 100, 1000);
+        runner.param("inputsPerTx", 1, 4);
+        runner.param("utxoSetSize", 10_000, 100_000);
+        runner.param("threads", 1, 2, 4);
+        register(runner);
+        runner.run(args);
+    }
+
+    static void register(BenchmarkRunner runner) {
+        runner.register("TxHandler.handleTxs.independent",
+                params -> handleTxs(params, false, false), "txCount", "inputsPerTx", "utxoSetSize");
+        runner.register("TxHandler.handleTxs.independent.ed25519",
+                params -> handleTxs(params, false, true), "txCount", "inputsPerTx", "utxoSetSize");
+        runner.register("TxHandler.handleTxs.chained",
+                params -> handleTxs(params, true, false), "txCount", "inputsPerTx", "utxoSetSize");
+        runner.register("MaxFeeTxHandler.handleTxs",
+                LedgerBenchmarks::maxFeeHandleTxs, "txCount", "inputsPerTx", "utxoSetSize");
+        runner.register("UTXOPool.copy", LedgerBenchmarks::utxoPoolCopy, "utxoSetSize");
+        runner.register("UTXOPool.lookup", LedgerBenchmarks::utxoPoolLookup, "txCount", "utxoSetSize");
+        runner.register("UTXOPool.getBalance.indexed", params -> balance(params, true), "utxoSetSize");
+        runner.register("UTXOPool.getBalance.scan", params -> balance(params, false), "utxoSetSize");
+        runner.register("Crypto.verifySignature", params -> verifySignature(params, false), "inputsPerTx");
+        runner.register("Crypto.verifySignature.ed25519", params -> verifySignature(params, true), "inputsPerTx");
+        runner.register("SignatureBatch.verify", params -> verifyBatch(params, false), "txCount");
+        runner.register("SignatureBatch.verify.ed25519", params -> verifyBatch(params, true), "txCount");
+        runner.register("Transaction.getRawTx", params -> {
+            Transaction tx = sampleTransaction(params.get("inputsPerTx"));
+            return tx::getRawTx;
+        }, "inputsPerTx");
+        runner.register("Transaction.finalize", params -> {
+            Transaction tx = sampleTransaction(params.get("inputsPerTx"));
+            return () -> {
+                tx.finalize();
+                return tx.getHash();
+            };
+        }, "inputsPerTx");
+        runner.register("TxHandler.isValidTx.view", params -> isValidWireTx(params, false), "inputsPerTx");
+        runner.register("TxHandler.isValidTx.materialized", params -> isValidWireTx(params, true), "inputsPerTx");
+        runner.register("BlockChain.addBlock.forks", LedgerBenchmarks::addBlockWithForks, "txCount", "inputsPerTx");
+        runner.register("BlockValidator.validate", LedgerBenchmarks::validateBlock,
+                "txCount", "inputsPerTx", "utxoSetSize", "threads");
+    }
+
+    private static synchronized void initKeys(LedgerFixtures fixtures) {
+        if (owner == null) {
+            owner = fixtures.newKeyPair();
+            recipient = fixtures.newKeyPair();
+            edOwner = fixtures.newKeyPair(LedgerFixtures.ED25519);
+        }
+    }
+
+    /** @return a pool of {@code utxoSetSize} UTXOs owned by {@code owner}, at least {@code minFunds} of them listed in {@code funds} */
+    private static UTXOPool fundedPool(LedgerFixtures fixtures, int utxoSetSize, int minFunds, List<UTXO> funds) {
+        return fundedPool(fixtures, utxoSetSize, minFunds, funds, owner);
+    }
+
+    /** Same as above with UTXOs owned by {@code payer} */
+    private static UTXOPool fundedPool(LedgerFixtures fixtures, int utxoSetSize, int minFunds, List<UTXO> funds,
+                                       KeyPair payer) {
+        UTXOPool utxoPool = new UTXOPool();
+        Transaction funding = fixtures.fundingTransaction(Math.max(minFunds, utxoSetSize), FUND_VALUE, payer.getPublic());
+        LedgerFixtures.addOutputs(funding, utxoPool);
+        funds.addAll(LedgerFixtures.fundsOf(funding));
+        return utxoPool;
+    }
+
+    /** Handles transactions spending the funds of owner, or of edOwner to sign with Ed25519 instead of RSA */
+    private static BenchmarkRunner.Operation handleTxs(Map<String, Integer> params, boolean chained, boolean ed25519) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        KeyPair payer = ed25519 ? edOwner : owner;
+        int txCount = params.get("txCount");
+        int inputsPerTx = params.get("inputsPerTx");
+        List<UTXO> funds = new ArrayList<>();
+        UTXOPool utxoPool = fundedPool(fixtures, params.get("utxoSetSize"), txCount * inputsPerTx, funds, payer);
+        List<Transaction> txs = chained
+                ? fixtures.chainedTransactions(funds, FUND_VALUE, payer, txCount, inputsPerTx)
+                : fixtures.independentTransactions(funds, FUND_VALUE, payer, txCount, inputsPerTx);
+        Transaction[] possibleTxs = txs.toArray(new Transaction[0]);
+
+        return new BenchmarkRunner.Operation() {
+            private TxHandler[] handlers;
+            private int next;
+
+            @Override
+            public void prepare(int invocations) {
+                handlers = new TxHandler[invocations];
+                for (int i = 0; i < invocations; i++) {
+                    handlers[i] = new TxHandler(new UTXOPool(utxoPool, false));
+                }
+                next = 0;
+            }
+
+            @Override
+            public Object run() {
+                return handlers[next++].handleTxs(possibleTxs);
+            }
+        };
+    }
+
+    private static BenchmarkRunner.Operation maxFeeHandleTxs(Map<String, Integer> params) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        int txCount = Math.min(params.get("txCount"), MAX_FEE_TX_LIMIT);
+        int inputsPerTx = params.get("inputsPerTx");
+        List<UTXO> funds = new ArrayList<>();
+        UTXOPool utxoPool = fundedPool(fixtures, params.get("utxoSetSize"), txCount * inputsPerTx, funds);
+        Transaction[] possibleTxs = fixtures.independentTransactions(funds, FUND_VALUE, owner, txCount, inputsPerTx)
+                .toArray(new Transaction[0]);
+
+        return new BenchmarkRunner.Operation() {
+            private MaxFeeTxHandler[] handlers;
+            private int next;
+
+            @Override
+            public void prepare(int invocations) {
+                handlers = new MaxFeeTxHandler[invocations];
+                for (int i = 0; i < invocations; i++) {
+                    handlers[i] = new MaxFeeTxHandler(new UTXOPool(utxoPool, false));
+                }
+                next = 0;
+            }
+
+            @Override
+            public Object run() {
+                return handlers[next++].handleTxs(possibleTxs);
+            }
+        };
+    }
+
+    private static BenchmarkRunner.Operation utxoPoolCopy(Map<String, Integer> params) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        UTXOPool utxoPool = fundedPool(fixtures, params.get("utxoSetSize"), 0, new ArrayList<>());
+        return () -> new UTXOPool(utxoPool);
+    }
+
+    private static BenchmarkRunner.Operation utxoPoolLookup(Map<String, Integer> params) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        List<UTXO> funds = new ArrayList<>();
+        UTXOPool utxoPool = fundedPool(fixtures, params.get("utxoSetSize"), 0, funds);
+
+        // half of the probes hit, the other half name outputs that were never created
+        Transaction unknown = fixtures.fundingTransaction(1, FUND_VALUE, owner.getPublic());
+        List<UTXO> probes = new ArrayList<>();
+        for (int i = 0; i < params.get("txCount"); i++) {
+            probes.add((i % 2 == 0)
+                    ? funds.get(fixtures.getRandom().nextInt(funds.size()))
+                    : new UTXO(unknown.getHash(), funds.size() + i));
+        }
+        Collections.shuffle(probes, fixtures.getRandom());
+
+        return () -> {
+            int found = 0;
+            for (UTXO probe : probes) {
+                if (utxoPool.contains(probe) && utxoPool.getTxOutput(probe) != null) {
+                    found++;
+                }
+            }
+            return found;
+        };
+    }
+
+    /**
+     * Looks up the balance of one of {@code BALANCE_ADDRESSES} addresses that share a pool of
+     * {@code utxoSetSize} UTXOs, either through the address index or by scanning every UTXO.
+     */
+    private static BenchmarkRunner.Operation balance(Map<String, Integer> params, boolean indexed) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED, 1024);
+        List<KeyPair> addresses = fixtures.newKeyPairs(BALANCE_ADDRESSES);
+        UTXOPool utxoPool = new UTXOPool();
+        int perAddress = Math.max(1, params.get("utxoSetSize") / BALANCE_ADDRESSES);
+        for (KeyPair address : addresses) {
+            LedgerFixtures.addOutputs(fixtures.fundingTransaction(perAddress, FUND_VALUE, address.getPublic()), utxoPool);
+        }
+        PublicKey target = addresses.get(0).getPublic();
+        utxoPool.getUTXOs(target);
+
+        if (indexed) {
+            return () -> utxoPool.getBalance(target);
+        }
+        return () -> {
+            double balance = 0;
+            for (UTXO utxo : utxoPool.getAllUTXO()) {
+                Transaction.Output txOut = utxoPool.getTxOutput(utxo);
+                if (txOut.address.equals(target)) {
+                    balance += txOut.value;
+                }
+            }
+            return balance;
+        };
+    }
+
+    private static BenchmarkRunner.Operation verifySignature(Map<String, Integer> params, boolean ed25519) {
+        Transaction tx = sampleTransaction(params.get("inputsPerTx"), ed25519);
+        byte[] message = tx.getRawDataToSign(0);
+        byte[] signature = tx.getInput(0).signature;
+        PublicKey key = (ed25519 ? edOwner : owner).getPublic();
+        return () -> Crypto.verifySignature(key, message, signature);
+    }
+
+    /** Verifies the signatures of {@code txCount} single-input transactions as one {@link SignatureBatch} */
+    private static BenchmarkRunner.Operation verifyBatch(Map<String, Integer> params, boolean ed25519) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        KeyPair payer = ed25519 ? edOwner : owner;
+        int txCount = params.get("txCount");
+        List<UTXO> funds = LedgerFixtures.fundsOf(fixtures.fundingTransaction(txCount, FUND_VALUE, payer.getPublic()));
+        List<Transaction> txs = fixtures.independentTransactions(funds, FUND_VALUE, payer, txCount, 1);
+        AddressTable.Entry address = AddressTable.get().intern(payer.getPublic());
+
+        return new BenchmarkRunner.Operation() {
+            private SignatureBatch[] batches;
+            private int next;
+
+            @Override
+            public void prepare(int invocations) {
+                batches = new SignatureBatch[invocations];
+                for (int i = 0; i < invocations; i++) {
+                    batches[i] = new SignatureBatch();
+                    for (Transaction tx : txs) {
+                        tx.addSignatureCheck(0, address, batches[i]);
+                    }
+                }
+                next = 0;
+            }
+
+            @Override
+            public Object run() {
+                SignatureBatch batch = batches[next++];
+                if (!batch.verify()) {
+                    throw new IllegalStateException("every signature should be valid");
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Validates a transaction received in wire format, either through a {@link TransactionView} or
+     * by building the {@link Transaction} first.
+     */
+    private static BenchmarkRunner.Operation isValidWireTx(Map<String, Integer> params, boolean materialize) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        Transaction funding = fixtures.fundingTransaction(params.get("inputsPerTx"), FUND_VALUE, owner.getPublic());
+        UTXOPool utxoPool = new UTXOPool();
+        LedgerFixtures.addOutputs(funding, utxoPool);
+        byte[] wire = fixtures.spend(LedgerFixtures.fundsOf(funding), FUND_VALUE, owner, recipient.getPublic(), 2, 0.001)
+                .toWire();
+        TxHandler handler = new TxHandler(utxoPool);
+
+        return () -> {
+            TransactionView view = TransactionView.wrap(ByteBuffer.wrap(wire));
+            boolean valid = materialize ? handler.isValidTx(view.materialize()) : handler.isValidTx(view);
+            if (!valid) {
+                throw new IllegalStateException("transaction should be valid");
+            }
+            return view;
+        };
+    }
+
+    /** @return a signed transaction with {@code inputsPerTx} inputs and two outputs */
+    private static Transaction sampleTransaction(int inputsPerTx) {
+        return sampleTransaction(inputsPerTx, false);
+    }
+
+    /** Same as above, spending funds of edOwner instead of owner if {@code ed25519} is set */
+    private static Transaction sampleTransaction(int inputsPerTx, boolean ed25519) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        KeyPair payer = ed25519 ? edOwner : owner;
+        Transaction funding = fixtures.fundingTransaction(inputsPerTx, FUND_VALUE, payer.getPublic());
+        return fixtures.spend(LedgerFixtures.fundsOf(funding), FUND_VALUE, payer, recipient.getPublic(), 2, 0.001);
+    }
+
+    /**
+     * Validates a block of {@code txCount} independent transactions against a pool of
+     * {@code utxoSetSize} UTXOs, which is what connecting a block costs, with the groups of the
+     * block checked on a pool of {@code threads} threads.
+     */
+    private static BenchmarkRunner.Operation validateBlock(Map<String, Integer> params) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        int txCount = params.get("txCount");
+        int inputsPerTx = params.get("inputsPerTx");
+        List<UTXO> funds = new ArrayList<>();
+        UTXOPool utxoPool = fundedPool(fixtures, params.get("utxoSetSize"), txCount * inputsPerTx, funds);
+        Transaction[] txs = fixtures.independentTransactions(funds, FUND_VALUE, owner, txCount, inputsPerTx)
+                .toArray(new Transaction[0]);
+        BlockValidator validator = new BlockValidator(utxoPool);
+        // parallel streams started from a task of this pool run on it rather than the common pool
+        ForkJoinPool threads = new ForkJoinPool(params.get("threads"));
+
+        return () -> {
+            UTXOPool validated = threads.submit(() -> validator.validate(txs)).join();
+            if (validated == null) {
+                throw new IllegalStateException("every transaction should be valid");
+            }
+            return validated;
+        };
+    }
+
+    /**
+     * Connects two competing branches of {@code FORK_DEPTH} blocks each to a fresh chain. Both
+     * branches spend the same funds, so every block of the second branch double-spends the first
+     * branch and must be validated against its own parent's UTXOPool.
+     */
+    private static BenchmarkRunner.Operation addBlockWithForks(Map<String, Integer> params) {
+        LedgerFixtures fixtures = new LedgerFixtures(SEED);
+        initKeys(fixtures);
+        int txCount = params.get("txCount");
+        int inputsPerTx = params.get("inputsPerTx");
+
+        Transaction funding = fixtures.fundingTransaction(FORK_DEPTH * txCount * inputsPerTx, FUND_VALUE, owner.getPublic());
+        Block genesis = new Block(null, owner.getPublic());
+        genesis.addTransaction(funding);
+        genesis.finalize();
+
+        List<UTXO> funds = LedgerFixtures.fundsOf(funding);
+        List<Block> blocks = new ArrayList<>();
+        for (KeyPair branchOwner : new KeyPair[] {owner, recipient}) {
+            Block parent = genesis;
+            for (int depth = 0; depth < FORK_DEPTH; depth++) {
+                Block block = new Block(parent.getHash(), branchOwner.getPublic());
+                int from = depth * txCount * inputsPerTx;
+                for (int i = 0; i < txCount; i++) {
+                    List<UTXO> inputs = funds.subList(from + i * inputsPerTx, from + (i + 1) * inputsPerTx);
+                    block.addTransaction(fixtures.spend(inputs, FUND_VALUE, owner, branchOwner.getPublic(), 2, 0.001));
+                }
+                block.finalize();
+                blocks.add(block);
+                parent = block;
+            }
+        }
+
+        return new BenchmarkRunner.Operation() {
+            private BlockChain[] blockChains;
+            private int next;
+
+            @Override
+            public void prepare(int invocations) {
+                blockChains = new BlockChain[invocations];
+                for (int i = 0; i < invocations; i++) {
+                    blockChains[i] = new BlockChain(genesis);
+                }
+                next = 0;
+            }
+
+            @Override
+            public Object run() {
+                BlockChain blockChain = blockChains[next++];
+                int added = 0;
+                for (Block block : blocks) {
+                    if (blockChain.addBlock(block)) {
+                        added++;
+                    }
+                }
+                if (added != blocks.size()) {
+                    throw new IllegalStateException("only " + added + " of " + blocks.size() + " blocks were added");
+                }
+                return blockChain.getMaxHeightBlock();
+            }
+        };
+    }
+}
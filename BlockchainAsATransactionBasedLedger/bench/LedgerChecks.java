@@ -0,0 +1,186 @@
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that hold a part of the ledger against a reference it must agree with. The module has no
+ * test harness, so they run as a program, which prints one line per check and exits with status 1
+ * if any of them failed.
+ *
+ * <pre>
+ * java LedgerChecks [regex]
+ * </pre>
+ */
+public class LedgerChecks {
+
+    /** A check; returns null if it passed, and what went wrong otherwise */
+    private interface Check {
+        String run() throws Exception;
+    }
+
+    private static final double FUND_VALUE = 10;
+
+    /** transactions in every block the validator checks are compared on, enough to validate in parallel */
+    private static final int BLOCK_TXS = Math.max(96, BlockValidator.PARALLEL_THRESHOLD);
+
+    /** seeds the blocks are built and shuffled with */
+    private static final int SEEDS = 3;
+
+    public static void main(String[] args) {
+        Map<String, Check> checks = new LinkedHashMap<>();
+        checks.put("BlockValidator.parallelMatchesSequential", LedgerChecks::parallelMatchesSequential);
+        checks.put("MuHash3072.coreTestVector", LedgerChecks::muHashCoreTestVector);
+        checks.put("MuHash3072.equalsAndHashCode", LedgerChecks::muHashEqualsAndHashCode);
+
+        Pattern filter = Pattern.compile((args.length > 0) ? args[0] : ".*");
+        int failed = 0;
+        for (Map.Entry<String, Check> check : checks.entrySet()) {
+            if (!filter.matcher(check.getKey()).find()) {
+                continue;
+            }
+            String failure;
+            try {
+                failure = check.getValue().run();
+            } catch (Exception e) {
+                failure = e.toString();
+            }
+            System.out.println(check.getKey() + ": " + ((failure == null) ? "ok" : "FAILED " + failure));
+            if (failure != null) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Validates blocks of valid, conflicting, dependent, duplicated and invalid transactions with
+     * {@link BlockValidator}, which checks them in groups, and with one {@link TxHandler} over a
+     * copy of the parent pool, which is what the validator stands for: both must accept the same
+     * blocks and leave the same UTXO set.
+     */
+    private static String parallelMatchesSequential() {
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            LedgerFixtures fixtures = new LedgerFixtures(seed, 1024);
+            KeyPair owner = fixtures.newKeyPair();
+            KeyPair other = fixtures.newKeyPair();
+            UTXOPool utxoPool = new UTXOPool();
+            Transaction funding = fixtures.fundingTransaction(2 * BLOCK_TXS, FUND_VALUE, owner.getPublic());
+            LedgerFixtures.addOutputs(funding, utxoPool);
+            List<UTXO> funds = LedgerFixtures.fundsOf(funding);
+
+            Map<String, List<Transaction>> blocks = new LinkedHashMap<>();
+            List<Transaction> independent = fixtures.independentTransactions(funds, FUND_VALUE, owner, BLOCK_TXS, 1);
+            blocks.put("independent", independent);
+
+            List<Transaction> mixed = new ArrayList<>(independent.subList(0, BLOCK_TXS - 16));
+            mixed.addAll(fixtures.chainedTransactions(funds.subList(BLOCK_TXS, funds.size()), FUND_VALUE, owner, 16, 1));
+            blocks.put("independent and chained", mixed);
+
+            List<Transaction> doubleSpend = new ArrayList<>(independent);
+            doubleSpend.add(fixtures.spend(funds.subList(0, 1), FUND_VALUE, owner, other.getPublic(), 1, 0.001));
+            blocks.put("double-spend", doubleSpend);
+
+            List<Transaction> duplicate = new ArrayList<>(independent);
+            duplicate.add(independent.get(BLOCK_TXS / 2));
+            blocks.put("duplicate", duplicate);
+
+            List<Transaction> badSignature = new ArrayList<>(independent);
+            Transaction forged = fixtures.spend(funds.subList(BLOCK_TXS, BLOCK_TXS + 1), FUND_VALUE, owner,
+                    other.getPublic(), 1, 0.001);
+            forged.getInput(0).signature[0] ^= 1;
+            badSignature.add(forged);
+            blocks.put("bad signature", badSignature);
+
+            List<Transaction> unknownInput = new ArrayList<>(independent);
+            Transaction stray = fixtures.fundingTransaction(1, FUND_VALUE, owner.getPublic());
+            unknownInput.add(fixtures.spend(LedgerFixtures.fundsOf(stray), FUND_VALUE, owner, other.getPublic(), 1, 0.001));
+            blocks.put("unknown input", unknownInput);
+
+            List<Transaction> overspend = new ArrayList<>(independent.subList(0, BLOCK_TXS - 1));
+            overspend.add(fixtures.spend(funds.subList(BLOCK_TXS, BLOCK_TXS + 1), FUND_VALUE, owner,
+                    other.getPublic(), 1, -1));
+            blocks.put("overspend", overspend);
+
+            for (Map.Entry<String, List<Transaction>> block : blocks.entrySet()) {
+                List<Transaction> txs = new ArrayList<>(block.getValue());
+                Collections.shuffle(txs, fixtures.getRandom());
+                String failure = compareValidation(utxoPool, txs.toArray(new Transaction[0]));
+                if (failure != null) {
+                    return block.getKey() + " block, seed " + seed + ": " + failure;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks {@link MuHash3072} against the test vector of Bitcoin Core's muhash_tests: the set
+     * {0, 1} minus {2}, each element 32 bytes with the number in the first. Core prints the digest
+     * as a uint256, so in reverse byte order.
+     */
+    private static String muHashCoreTestVector() {
+        MuHash3072 acc = new MuHash3072();
+        acc.insert(muHashElement(0));
+        acc.insert(muHashElement(1));
+        acc.remove(muHashElement(2));
+        byte[] digest = acc.digest();
+        StringBuilder hex = new StringBuilder();
+        for (int i = digest.length - 1; i >= 0; i--) {
+            hex.append(String.format("%02x", digest[i] & 0xff));
+        }
+        String expected = "10d312b100cbd32ada024a6646e40d3482fcff103668d2625f10002a607d5863";
+        return hex.toString().equals(expected) ? null : "digest " + hex + ", expected " + expected;
+    }
+
+    /** Accumulators of the same multiset, built in different orders, must be equal and hash alike */
+    private static String muHashEqualsAndHashCode() {
+        MuHash3072 a = new MuHash3072();
+        a.insert(muHashElement(1));
+        a.insert(muHashElement(2));
+        a.remove(muHashElement(3));
+        MuHash3072 b = new MuHash3072();
+        b.remove(muHashElement(3));
+        b.insert(muHashElement(4));
+        b.insert(muHashElement(2));
+        b.insert(muHashElement(1));
+        b.remove(muHashElement(4));
+        MuHash3072 copy = new MuHash3072(b);
+        if (!a.equals(b) || a.hashCode() != b.hashCode() || copy.hashCode() != a.hashCode()) {
+            return "equal multisets: equals " + a.equals(b) + ", hash codes " + a.hashCode() + ", "
+                    + b.hashCode() + " and " + copy.hashCode();
+        }
+        b.insert(muHashElement(5));
+        if (a.equals(b) || !a.equals(copy) || b.hashCode() == copy.hashCode()) {
+            return "inserting into an accumulator did not change it alone";
+        }
+        return null;
+    }
+
+    private static byte[] muHashElement(int i) {
+        byte[] element = new byte[32];
+        element[0] = (byte) i;
+        return element;
+    }
+
+    /** @return null if {@link BlockValidator} and a sequential TxHandler agree on {@code txs} */
+    private static String compareValidation(UTXOPool parent, Transaction[] txs) {
+        UTXOPool sequential = new UTXOPool(parent);
+        boolean sequentialValid = new TxHandler(sequential).handleTxs(txs).length == txs.length;
+        UTXOPool parallel = new BlockValidator(parent).validate(txs);
+        if ((parallel != null) != sequentialValid) {
+            return "parallel validation " + ((parallel != null) ? "accepted" : "rejected")
+                    + " a block sequential validation " + (sequentialValid ? "accepted" : "rejected");
+        }
+        if (parallel != null && (parallel.size() != sequential.size()
+                || !parallel.getCommitment().equals(sequential.getCommitment()))) {
+            return "parallel and sequential validation left different UTXO sets";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,178 @@
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds key pairs, funded UTXO sets and signed transactions for the benchmarks. All randomness
+ * comes from the {@code Random} handed to the constructor, so a workload can be rebuilt exactly.
+ */
+public class LedgerFixtures {
+
+    public static final int DEFAULT_KEY_SIZE = 2048;
+
+    /** key algorithms {@link #newKeyPair(String)} knows, one per {@link SignatureScheme} */
+    public static final String RSA = "RSA";
+    public static final String ED25519 = "Ed25519";
+
+    private final Random random;
+    private final int keySize;
+
+    public LedgerFixtures(long seed) {
+        this(seed, DEFAULT_KEY_SIZE);
+    }
+
+    public LedgerFixtures(long seed, int keySize) {
+        this.random = new Random(seed);
+        this.keySize = keySize;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /** @return a new RSA key pair of the fixtures' key size */
+    public KeyPair newKeyPair() {
+        return newKeyPair(RSA);
+    }
+
+    /** @return a new key pair for {@code algorithm}, {@link #RSA} or {@link #ED25519} */
+    public KeyPair newKeyPair(String algorithm) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+            if (algorithm.equals(RSA)) {
+                generator.initialize(keySize);
+            }
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public List<KeyPair> newKeyPairs(int count) {
+        List<KeyPair> keyPairs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keyPairs.add(newKeyPair());
+        }
+        return keyPairs;
+    }
+
+    /**
+     * @return a finalized transaction without inputs that pays {@code value} to {@code owner} in
+     *         each of its first {@code numOutputs} outputs; such a transaction is only accepted as
+     *         part of a genesis block or when added to a UTXOPool directly
+     */
+    public Transaction fundingTransaction(int numOutputs, double value, PublicKey owner) {
+        Transaction tx = new Transaction();
+        for (int i = 0; i < numOutputs; i++) {
+            tx.addOutput(value, owner);
+        }
+        // a trailing output of random dust keeps the hashes of separate funding transactions apart
+        tx.addOutputUnits(random.nextInt(1 << 20), owner);
+        tx.finalize();
+        return tx;
+    }
+
+    /** @return the UTXOs funded by {@code fundingTx}, without its trailing dust output */
+    public static List<UTXO> fundsOf(Transaction fundingTx) {
+        List<UTXO> utxos = outputsOf(fundingTx);
+        return utxos.subList(0, utxos.size() - 1);
+    }
+
+    /** @return the UTXOs of every output of {@code tx}, in output order */
+    public static List<UTXO> outputsOf(Transaction tx) {
+        List<UTXO> utxos = new ArrayList<>(tx.numOutputs());
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            utxos.add(new UTXO(tx.getHash(), i));
+        }
+        return utxos;
+    }
+
+    /** Adds every output of {@code tx} to {@code utxoPool} */
+    public static void addOutputs(Transaction tx, UTXOPool utxoPool) {
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            utxoPool.addUTXO(new UTXO(tx.getHash(), i), tx.getOutput(i));
+        }
+    }
+
+    /**
+     * @return a finalized transaction spending {@code inputs}, all owned by {@code owner}, into
+     *         {@code numOutputs} equal outputs to {@code recipient} that leave {@code fee} unspent,
+     *         and the base units that do not divide evenly between the outputs
+     */
+    public Transaction spend(List<UTXO> inputs, double inputValue, KeyPair owner, PublicKey recipient,
+                             int numOutputs, double fee) {
+        Transaction tx = new Transaction();
+        for (UTXO utxo : inputs) {
+            tx.addInput(utxo.getTxHash(), utxo.getIndex());
+        }
+        long outputUnits = (Amount.toExactUnits(inputValue) * inputs.size() - Amount.toExactUnits(fee)) / numOutputs;
+        for (int i = 0; i < numOutputs; i++) {
+            tx.addOutputUnits(outputUnits, recipient);
+        }
+        signAll(tx, owner.getPrivate());
+        tx.finalize();
+        return tx;
+    }
+
+    /** Signs every input of {@code tx} with {@code key} */
+    public static void signAll(Transaction tx, PrivateKey key) {
+        for (int i = 0; i < tx.numInputs(); i++) {
+            tx.addSignature(sign(key, tx.getRawDataToSign(i)), i);
+        }
+    }
+
+    /** @return the signature of {@code message} by {@code key}, SHA256withRSA or Ed25519 as the key calls for */
+    public static byte[] sign(PrivateKey key, byte[] message) {
+        try {
+            // Ed25519 keys call their algorithm EdDSA, under which the JDK also signs
+            Signature signature = Signature.getInstance(key.getAlgorithm().equals(RSA) ? "SHA256withRSA" : key.getAlgorithm());
+            signature.initSign(key);
+            signature.update(message);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return {@code txCount} transactions with {@code inputsPerTx} inputs each, spending disjoint
+     *         UTXOs taken from the front of {@code funds}, so that all of them are valid at once
+     */
+    public List<Transaction> independentTransactions(List<UTXO> funds, double fundValue, KeyPair owner,
+                                                     int txCount, int inputsPerTx) {
+        if (funds.size() < txCount * inputsPerTx) {
+            throw new IllegalArgumentException("need " + txCount * inputsPerTx + " funded UTXOs, have " + funds.size());
+        }
+        List<Transaction> txs = new ArrayList<>(txCount);
+        for (int i = 0; i < txCount; i++) {
+            List<UTXO> inputs = funds.subList(i * inputsPerTx, (i + 1) * inputsPerTx);
+            txs.add(spend(inputs, fundValue, owner, owner.getPublic(), 2, 0.001));
+        }
+        return txs;
+    }
+
+    /**
+     * @return {@code txCount} transactions where each one spends an output of the one before it,
+     *         starting from the first {@code inputsPerTx} UTXOs of {@code funds}; returned
+     *         newest first, so that {@code TxHandler.handleTxs} needs one pass per transaction
+     */
+    public List<Transaction> chainedTransactions(List<UTXO> funds, double fundValue, KeyPair owner,
+                                                 int txCount, int inputsPerTx) {
+        List<Transaction> txs = new ArrayList<>(txCount);
+        List<UTXO> inputs = funds.subList(0, inputsPerTx);
+        double inputValue = fundValue;
+        for (int i = 0; i < txCount; i++) {
+            Transaction tx = spend(inputs, inputValue, owner, owner.getPublic(), inputsPerTx, 0.001);
+            txs.add(0, tx);
+            inputs = outputsOf(tx);
+            inputValue = tx.getOutput(0).value;
+        }
+        return txs;
+    }
+}
@@ -0,0 +1,351 @@
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@code BlockHandler} with a sustained, synthetic load, entirely in-process. Wallets are
+ * funded from the genesis block and then pay each other at a target rate, with a mix of
+ * transactions spending confirmed coins (independent) and coins still waiting in the transaction
+ * pool (dependent). Double-spends of recent payments and competing blocks on the parent of the tip,
+ * some of which grow long enough to take over, are injected along the way. Reports throughput and
+ * the latency of transaction admission ({@code processTx}), mining ({@code assembleBlock}) and the
+ * connection of mined blocks to the tip and of competing blocks ({@code processBlock}).
+ *
+ * Transactions are sent on a fixed schedule, and admission latency is reported twice: the time
+ * {@code processTx} took, and, as {@code processTx (scheduled)}, the time from when the transaction
+ * was due to be sent until it returned. Only the second counts the wait of transactions held up behind a slow block or
+ * transaction, which is what a client sending at the target rate would see; it includes building
+ * and signing the transaction.
+ *
+ * <pre>
+ * java LedgerLoadGenerator [-duration 30] [-tps 200] [-wallets 50] [-coins 20] [-blockInterval 1000]
+ *                          [-dependent 0.3] [-doubleSpend 0.02] [-fork 0.1] [-reorg 0.2] [-keySize 1024] [-seed 1]
+ * </pre>
+ */
+public class LedgerLoadGenerator {
+
+    private static final double COIN_VALUE = 100;
+    /** the fee every payment leaves, 0.01 coins, in base units */
+    private static final long FEE_UNITS = Amount.UNITS_PER_COIN / 100;
+
+    /** pending coins whose transaction has not been confirmed within this many blocks are given up on */
+    private static final int PENDING_BLOCK_LIMIT = 3;
+
+    /** how many recent payments are kept around as double-spend targets */
+    private static final int RECENT_PAYMENTS = 256;
+
+    private int durationSeconds = 30;
+    private int targetTps = 200;
+    private int numWallets = 50;
+    private int coinsPerWallet = 20;
+    private long blockIntervalMillis = 1000;
+    private double dependentRatio = 0.3;
+    private double doubleSpendRate = 0.02;
+    private double forkRate = 0.1;
+    private double reorgRate = 0.2;
+    private int keySize = 1024;
+    private long seed = 1;
+
+    private Random random;
+    private LedgerFixtures fixtures;
+    private List<KeyPair> wallets;
+    private List<List<Coin>> coins;
+    private final List<Coin> recentlySpent = new ArrayList<>();
+    private BlockChain blockChain;
+    private BlockHandler blockHandler;
+    private int height;
+
+    private final LatencyRecorder admission = new LatencyRecorder("processTx");
+    private final LatencyRecorder scheduledAdmission = new LatencyRecorder("processTx (scheduled)");
+    private final LatencyRecorder mining = new LatencyRecorder("assembleBlock");
+    private final LatencyRecorder extension = new LatencyRecorder("processBlock (tip)");
+    private final LatencyRecorder connection = new LatencyRecorder("processBlock (forks)");
+
+    private long honestTxs;
+    private long dependentTxs;
+    private long doubleSpends;
+    private long skippedTxs;
+    private long confirmedTxs;
+    private long blocksMined;
+    private long forkBlocks;
+    private long forkBlocksAccepted;
+    private long reorgs;
+
+    /** an output owned by one of the wallets */
+    private static class Coin {
+        final UTXO utxo;
+        final long units;
+        final int owner;
+        boolean confirmed;
+        int createdAtHeight;
+
+        Coin(UTXO utxo, long units, int owner, boolean confirmed, int createdAtHeight) {
+            this.utxo = utxo;
+            this.units = units;
+            this.owner = owner;
+            this.confirmed = confirmed;
+            this.createdAtHeight = createdAtHeight;
+        }
+    }
+
+    public static void main(String[] args) {
+        LedgerLoadGenerator generator = new LedgerLoadGenerator();
+        generator.parseArgs(args);
+        generator.setUp();
+        generator.run();
+        generator.report();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-duration": durationSeconds = Integer.parseInt(value); break;
+                case "-tps": targetTps = Integer.parseInt(value); break;
+                case "-wallets": numWallets = Integer.parseInt(value); break;
+                case "-coins": coinsPerWallet = Integer.parseInt(value); break;
+                case "-blockInterval": blockIntervalMillis = Long.parseLong(value); break;
+                case "-dependent": dependentRatio = Double.parseDouble(value); break;
+                case "-doubleSpend": doubleSpendRate = Double.parseDouble(value); break;
+                case "-fork": forkRate = Double.parseDouble(value); break;
+                case "-reorg": reorgRate = Double.parseDouble(value); break;
+                case "-keySize": keySize = Integer.parseInt(value); break;
+                case "-seed": seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (numWallets < 2) {
+            throw new IllegalArgumentException("at least two wallets are required");
+        }
+    }
+
+    /** Creates the wallets and a chain whose genesis block funds each of them with {@code coinsPerWallet} coins */
+    private void setUp() {
+        random = new Random(seed);
+        fixtures = new LedgerFixtures(seed, keySize);
+        wallets = fixtures.newKeyPairs(numWallets);
+        coins = new ArrayList<>();
+
+        Block genesis = new Block(null, wallets.get(0).getPublic());
+        for (int w = 0; w < numWallets; w++) {
+            Transaction funding = fixtures.fundingTransaction(coinsPerWallet, COIN_VALUE, wallets.get(w).getPublic());
+            genesis.addTransaction(funding);
+            List<Coin> walletCoins = new ArrayList<>();
+            for (UTXO utxo : LedgerFixtures.fundsOf(funding)) {
+                walletCoins.add(new Coin(utxo, Amount.toExactUnits(COIN_VALUE), w, true, 0));
+            }
+            coins.add(walletCoins);
+        }
+        genesis.finalize();
+
+        blockChain = new BlockChain(genesis);
+        blockHandler = new BlockHandler(blockChain);
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        long end = start + durationSeconds * 1_000_000_000L;
+        long interval = 1_000_000_000L / targetTps;
+        long nextTx = start;
+        long nextBlock = start + blockIntervalMillis * 1_000_000L;
+
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            if (now >= nextBlock) {
+                mineBlock();
+                nextBlock += blockIntervalMillis * 1_000_000L;
+            } else if (now >= nextTx) {
+                if (!recentlySpent.isEmpty() && random.nextDouble() < doubleSpendRate) {
+                    submitDoubleSpend(nextTx);
+                } else {
+                    submitPayment(nextTx);
+                }
+                nextTx += interval;
+            } else {
+                LockSupport.parkNanos(Math.min(nextTx, nextBlock) - now);
+            }
+        }
+        durationSeconds = (int) Math.round((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Pays a random other wallet from a random wallet, preferring pending coins for dependent
+     * payments; {@code intended} is the time the payment was due to be sent
+     */
+    private void submitPayment(long intended) {
+        int owner = random.nextInt(numWallets);
+        Coin coin = takeCoin(owner, random.nextDouble() < dependentRatio);
+        if (coin == null) {
+            skippedTxs++;
+            return;
+        }
+
+        int payee = (owner + 1 + random.nextInt(numWallets - 1)) % numWallets;
+        long amount = (long) ((coin.units - FEE_UNITS) * (0.1 + 0.8 * random.nextDouble()));
+        Transaction tx = new Transaction();
+        tx.addInput(coin.utxo.getTxHash(), coin.utxo.getIndex());
+        tx.addOutputUnits(amount, wallets.get(payee).getPublic());
+        tx.addOutputUnits(coin.units - FEE_UNITS - amount, wallets.get(owner).getPublic());
+        LedgerFixtures.signAll(tx, wallets.get(owner).getPrivate());
+        tx.finalize();
+
+        submit(tx, intended);
+        honestTxs++;
+        if (!coin.confirmed) {
+            dependentTxs++;
+        }
+        coins.get(payee).add(new Coin(new UTXO(tx.getHash(), 0), amount, payee, false, height));
+        coins.get(owner).add(new Coin(new UTXO(tx.getHash(), 1), coin.units - FEE_UNITS - amount, owner, false, height));
+
+        if (recentlySpent.size() == RECENT_PAYMENTS) {
+            recentlySpent.set(random.nextInt(RECENT_PAYMENTS), coin);
+        } else {
+            recentlySpent.add(coin);
+        }
+    }
+
+    /** Spends a coin that an earlier payment already spent, paying it to a different wallet */
+    private void submitDoubleSpend(long intended) {
+        Coin coin = recentlySpent.get(random.nextInt(recentlySpent.size()));
+        int payee = random.nextInt(numWallets);
+        Transaction tx = new Transaction();
+        tx.addInput(coin.utxo.getTxHash(), coin.utxo.getIndex());
+        tx.addOutputUnits(coin.units - 2 * FEE_UNITS, wallets.get(payee).getPublic());
+        LedgerFixtures.signAll(tx, wallets.get(coin.owner).getPrivate());
+        tx.finalize();
+
+        submit(tx, intended);
+        doubleSpends++;
+    }
+
+    private void submit(Transaction tx, long intended) {
+        long start = System.nanoTime();
+        blockHandler.processTx(tx);
+        long end = System.nanoTime();
+        admission.record(end - start);
+        scheduledAdmission.record(end - intended);
+    }
+
+    /** @return a coin of {@code owner}, pending if {@code pending} and one is available, or null if the wallet is empty */
+    private Coin takeCoin(int owner, boolean pending) {
+        List<Coin> walletCoins = coins.get(owner);
+        if (walletCoins.isEmpty()) {
+            return null;
+        }
+        int index = random.nextInt(walletCoins.size());
+        for (int i = 0; i < walletCoins.size(); i++) {
+            int candidate = (index + i) % walletCoins.size();
+            if (walletCoins.get(candidate).confirmed != pending) {
+                index = candidate;
+                break;
+            }
+        }
+        Coin coin = walletCoins.get(index);
+        Collections.swap(walletCoins, index, walletCoins.size() - 1);
+        walletCoins.remove(walletCoins.size() - 1);
+        return coin;
+    }
+
+    /** Mines a block on the tip and, now and then, a competing block on the tip's parent */
+    private void mineBlock() {
+        Block parent = blockChain.getMaxHeightBlock();
+        KeyPair miner = wallets.get(random.nextInt(numWallets));
+
+        long start = System.nanoTime();
+        Block block = blockHandler.assembleBlock(miner.getPublic());
+        long assembled = System.nanoTime();
+        mining.record(assembled - start);
+        boolean accepted = blockHandler.processBlock(block);
+        extension.record(System.nanoTime() - assembled);
+        if (!accepted) {
+            return;
+        }
+        blocksMined++;
+        height++;
+        confirmedTxs += block.getTransactions().size();
+
+        if (parent.getPrevBlockHash() != null && random.nextDouble() < forkRate) {
+            // the same transactions in reverse order give a different block at the same height
+            List<Transaction> txs = new ArrayList<>(block.getTransactions());
+            Collections.reverse(txs);
+            Block competitor = competingBlock(parent.getHash(), txs, wallets.get(random.nextInt(numWallets)));
+            if (connect(competitor) && random.nextDouble() < reorgRate) {
+                Block extension = competingBlock(competitor.getHash(), new ArrayList<>(), miner);
+                if (connect(extension)) {
+                    reorgs++;
+                    height++;
+                }
+            }
+        }
+        reconcileCoins();
+    }
+
+    private Block competingBlock(byte[] parentHash, List<Transaction> txs, KeyPair miner) {
+        Block block = new Block(parentHash, miner.getPublic());
+        for (Transaction tx : txs) {
+            block.addTransaction(tx);
+        }
+        block.finalize();
+        return block;
+    }
+
+    private boolean connect(Block block) {
+        forkBlocks++;
+        long start = System.nanoTime();
+        boolean accepted = blockHandler.processBlock(block);
+        connection.record(System.nanoTime() - start);
+        if (accepted) {
+            forkBlocksAccepted++;
+        }
+        return accepted;
+    }
+
+    /**
+     * Brings the wallets in line with the tip: coins in its UTXOPool are confirmed, coins of pending
+     * transactions are kept for a few blocks, and everything else was lost to a double-spend.
+     */
+    private void reconcileCoins() {
+        UTXOPool utxoPool = blockChain.getMaxHeightUTXOPool();
+        TransactionPool txPool = blockChain.getTransactionPool();
+        for (List<Coin> walletCoins : coins) {
+            List<Coin> kept = new ArrayList<>(walletCoins.size());
+            for (Coin coin : walletCoins) {
+                if (utxoPool.contains(coin.utxo)) {
+                    coin.confirmed = true;
+                    kept.add(coin);
+                } else if (height - coin.createdAtHeight <= PENDING_BLOCK_LIMIT
+                        && txPool.getTransaction(coin.utxo.getTxHash()) != null) {
+                    coin.confirmed = false;
+                    kept.add(coin);
+                }
+            }
+            walletCoins.clear();
+            walletCoins.addAll(kept);
+        }
+    }
+
+    private void report() {
+        System.out.println("Load generator results");
+        System.out.printf(Locale.ROOT, "  duration             %d s, target %d tx/s%n", durationSeconds, targetTps);
+        System.out.printf(Locale.ROOT, "  submitted            %d payments (%d dependent), %d double-spends, %d skipped for lack of coins%n",
+                honestTxs, dependentTxs, doubleSpends, skippedTxs);
+        System.out.printf(Locale.ROOT, "  admission rate       %.1f tx/s%n", (honestTxs + doubleSpends) / (double) durationSeconds);
+        System.out.printf(Locale.ROOT, "  confirmed            %d tx in %d blocks, %.1f tx/s%n",
+                confirmedTxs, blocksMined, confirmedTxs / (double) durationSeconds);
+        System.out.printf(Locale.ROOT, "  competing blocks     %d processed, %d accepted, %d reorgs%n",
+                forkBlocks, forkBlocksAccepted, reorgs);
+        System.out.printf(Locale.ROOT, "  transaction pool     %d left unconfirmed%n", blockChain.getTransactionPool().getTransactions().size());
+        System.out.printf(Locale.ROOT, "  tip                  height %d, %d UTXOs%n", blockChain.getTipHeight(), blockChain.getTipUtxoCount());
+        System.out.println("  " + admission.summary());
+        System.out.println("  " + scheduledAdmission.summary());
+        System.out.println("  " + mining.summary());
+        System.out.println("  " + extension.summary());
+        System.out.println("  " + connection.summary());
+        System.out.println("Ledger metrics");
+        System.out.println("  " + LedgerMetrics.get().summary().replace("\n", "\n  "));
+    }
+}
@@ -0,0 +1,659 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a network of {@code BlockHandler} nodes in one process and reports how blocks and
+ * transactions spread through it. Every node owns a {@code BlockChain} and runs on its own virtual
+ * thread, taking messages from a {@link DelayQueue} inbox; no other thread touches its chain. Nodes
+ * dial random peers, and a message reaches a peer once the sender's uplink has sent it (the
+ * bandwidth model) and the link's one-way latency has passed (the latency model). Transactions and
+ * blocks travel in wire format and are relayed when first taken in; a block whose parent is not
+ * known yet waits until the parent is connected.
+ *
+ * <p>Blocks are found by a random node at random intervals averaging {@code blockInterval}, and
+ * mined on that node's own tip. Payments spending genesis coins enter at random nodes at
+ * {@code tps}. After {@code duration} seconds mining and payments stop, and the network gets up to
+ * {@code drain} seconds to settle. Reported are the time until 50%, 90% and all nodes have
+ * connected a block (or pooled a transaction), the share of mined blocks that are not on node 0's
+ * final chain, reorgs, how many nodes share node 0's tip and UTXO set (compared through
+ * {@link BlockChain#getUtxoCommitment}), the cost of connecting blocks, and per node the time
+ * spent handling messages, bytes sent and heap retained. Thread CPU time is not available for
+ * virtual threads, so busy time is taken with {@code System.nanoTime()} around each message;
+ * handling never blocks, so the two are close, and the process CPU time is printed next to their sum. Everything runs in real
+ * time, so delays only describe the modelled network while the machine keeps up; busy time well
+ * above the process CPU time, or messages left queued, show that it did not.
+ *
+ * <pre>
+ * java LedgerNetwork [-nodes 100] [-peers 4] [-duration 20] [-drain 5] [-tps 20] [-blockInterval 2000]
+ *                    [-latency uniform:20,200] [-bandwidth 10] [-keySize 1024] [-seed 1]
+ * </pre>
+ *
+ * {@code -latency} is {@code fixed:MS}, {@code uniform:MIN,MAX} or {@code lognormal:MEDIAN,SIGMA}
+ * in milliseconds, drawn once per link. {@code -bandwidth} is every node's uplink in Mbit/s, or
+ * {@code MIN,MAX} to draw one per node; 0 is unlimited.
+ */
+public class LedgerNetwork {
+
+    private static final double COIN_VALUE = 10;
+
+    private int numNodes = 100;
+    private int numPeers = 4;
+    private int durationSeconds = 20;
+    private int drainSeconds = 5;
+    private int targetTps = 20;
+    private long blockIntervalMillis = 2000;
+    private String latencySpec = "uniform:20,200";
+    private String bandwidthSpec = "10";
+    private int keySize = 1024;
+    private long seed = 1;
+
+    private Random random;
+    private LatencyModel latencyModel;
+    private Node[] nodes;
+    private Thread[] threads;
+    private List<Transaction> payments;
+    private int nextPayment;
+
+    /** when each block and payment entered the network, and when every node took it in */
+    private final Map<ByteArrayWrapper, Spread> blockSpreads = new ConcurrentHashMap<>();
+    private final Map<ByteArrayWrapper, Spread> txSpreads = new ConcurrentHashMap<>();
+
+    private long blocksFound;
+    private long skippedPayments;
+    private long setUpHeapBytes;
+    private long runNanos;
+    private long runCpuNanos;
+
+    private enum Kind { TX, BLOCK, MINE }
+
+    /** A message in a node's inbox, due at {@code deliverAt}; {@code from} is -1 if it came from outside the network */
+    private static final class Message implements Delayed {
+        final long deliverAt;
+        final Kind kind;
+        final int from;
+        final byte[] hash;
+        final byte[] wire;
+
+        Message(long deliverAt, Kind kind, int from, byte[] hash, byte[] wire) {
+            this.deliverAt = deliverAt;
+            this.kind = kind;
+            this.from = from;
+            this.hash = hash;
+            this.wire = wire;
+        }
+
+        int size() {
+            return (wire == null) ? 0 : wire.length;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deliverAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deliverAt, ((Message) other).deliverAt);
+        }
+    }
+
+    /** The delay from {@code origin} until each node took a block or transaction in, -1 while it has not */
+    private static final class Spread {
+        final long origin;
+        final long[] delays;
+
+        Spread(long origin, int numNodes) {
+            this.origin = origin;
+            this.delays = new long[numNodes];
+            Arrays.fill(delays, -1);
+        }
+
+        /** Called by node {@code node} only, so each slot has a single writer */
+        void arrive(int node) {
+            if (delays[node] < 0) {
+                delays[node] = System.nanoTime() - origin;
+            }
+        }
+    }
+
+    /** One-way link latencies in nanoseconds */
+    private interface LatencyModel {
+        long draw(Random random);
+
+        static LatencyModel parse(String spec) {
+            String[] parts = spec.split(":", 2);
+            double[] args = Arrays.stream(parts[parts.length - 1].split(",")).mapToDouble(Double::parseDouble).toArray();
+            switch (parts[0]) {
+                case "fixed":
+                    return r -> millis(args[0]);
+                case "uniform":
+                    return r -> millis(args[0] + (args[1] - args[0]) * r.nextDouble());
+                case "lognormal":
+                    return r -> millis(args[0] * Math.exp(args[1] * r.nextGaussian()));
+                default:
+                    throw new IllegalArgumentException("unknown latency model " + spec);
+            }
+        }
+
+        private static long millis(double millis) {
+            return (long) (millis * 1e6);
+        }
+    }
+
+    /**
+     * A node: its chain and everything else it knows is only touched by its own thread, apart from
+     * the inbox, which other nodes add to.
+     */
+    private final class Node implements Runnable {
+        final int id;
+        final DelayQueue<Message> inbox = new DelayQueue<>();
+        final BlockChain blockChain;
+        final BlockHandler blockHandler;
+        final PublicKey payoutAddress;
+        int[] peers;
+        long[] latencies;
+        /** nanoseconds the uplink takes per byte, 0 if it is unlimited */
+        final double uplinkNanosPerByte;
+        long uplinkFreeAt;
+
+        final Set<ByteArrayWrapper> seenTxs = new HashSet<>();
+        final Set<ByteArrayWrapper> seenBlocks = new HashSet<>();
+        /** blocks waiting for their parent, by the parent's hash */
+        final Map<ByteArrayWrapper, List<Message>> orphans = new HashMap<>();
+
+        final LatencyRecorder connection = new LatencyRecorder("processBlock");
+        final LatencyRecorder reorgConnection = new LatencyRecorder("processBlock (reorg)");
+        long busyNanos;
+        long messagesHandled;
+        long bytesSent;
+        long bytesReceived;
+        long reorgs;
+        /** the most blocks given up by one reorg */
+        int maxReorgDepth;
+        long blocksMined;
+
+        Node(int id, Block genesis, PublicKey payoutAddress, double uplinkMbps) {
+            this.id = id;
+            this.blockChain = new BlockChain(genesis);
+            this.blockHandler = new BlockHandler(blockChain);
+            this.payoutAddress = payoutAddress;
+            this.uplinkNanosPerByte = (uplinkMbps <= 0) ? 0 : 8e3 / uplinkMbps;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Message message;
+                try {
+                    message = inbox.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long start = System.nanoTime();
+                bytesReceived += message.size();
+                switch (message.kind) {
+                    case TX: receiveTx(message); break;
+                    case BLOCK: receiveBlock(message); break;
+                    case MINE: mine(); break;
+                }
+                messagesHandled++;
+                busyNanos += System.nanoTime() - start;
+            }
+        }
+
+        private void receiveTx(Message message) {
+            ByteArrayWrapper txId = new ByteArrayWrapper(message.hash);
+            if (!seenTxs.add(txId)) {
+                return;
+            }
+            if (blockHandler.processTx(TransactionView.wrap(ByteBuffer.wrap(message.wire)))) {
+                Spread spread = txSpreads.get(txId);
+                if (spread != null) {
+                    spread.arrive(id);
+                }
+                relay(message);
+            }
+        }
+
+        private void receiveBlock(Message message) {
+            if (seenBlocks.add(new ByteArrayWrapper(message.hash))) {
+                connect(message);
+            }
+        }
+
+        /** Connects the block in {@code message}, or parks it until its parent turns up */
+        private void connect(Message message) {
+            Block block = decodeBlock(message.wire);
+            Block oldTip = blockChain.getMaxHeightBlock();
+            long start = System.nanoTime();
+            if (!blockHandler.processBlock(block)) {
+                byte[] parent = block.getPrevBlockHash();
+                if (parent != null && blockChain.getBlockHeader(parent) == null) {
+                    orphans.computeIfAbsent(new ByteArrayWrapper(parent), k -> new ArrayList<>()).add(message);
+                }
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            connection.record(elapsed);
+            Block newTip = blockChain.getMaxHeightBlock();
+            if (newTip != oldTip && !Arrays.equals(newTip.getPrevBlockHash(), oldTip.getHash())) {
+                reorgs++;
+                reorgConnection.record(elapsed);
+                BlockHeader fork = blockChain.findForkPoint(oldTip.getHash(), newTip.getHash());
+                int depth = blockChain.getBlockHeader(oldTip.getHash()).getHeight() - fork.getHeight();
+                maxReorgDepth = Math.max(maxReorgDepth, depth);
+            }
+
+            ByteArrayWrapper blockId = new ByteArrayWrapper(block.getHash());
+            Spread spread = blockSpreads.get(blockId);
+            if (spread != null) {
+                spread.arrive(id);
+            }
+            relay(message);
+
+            List<Message> waiting = orphans.remove(blockId);
+            if (waiting != null) {
+                for (Message orphan : waiting) {
+                    connect(orphan);
+                }
+            }
+        }
+
+        private void mine() {
+            Block block = blockHandler.createBlock(payoutAddress);
+            if (block == null) {
+                return;
+            }
+            blocksMined++;
+            ByteArrayWrapper blockId = new ByteArrayWrapper(block.getHash());
+            seenBlocks.add(blockId);
+            // the block hash leaves out the coinbase, so two miners can find the same block
+            Spread spread = new Spread(System.nanoTime(), numNodes);
+            Spread found = blockSpreads.putIfAbsent(blockId, spread);
+            ((found == null) ? spread : found).arrive(id);
+            relay(new Message(0, Kind.BLOCK, -1, block.getHash(), encodeBlock(block)));
+        }
+
+        /** Sends {@code message} to every peer but the one it came from, one after another over the uplink */
+        private void relay(Message message) {
+            long now = System.nanoTime();
+            for (int p = 0; p < peers.length; p++) {
+                if (peers[p] == message.from) {
+                    continue;
+                }
+                uplinkFreeAt = Math.max(uplinkFreeAt, now) + (long) (message.size() * uplinkNanosPerByte);
+                bytesSent += message.size();
+                nodes[peers[p]].inbox.add(new Message(uplinkFreeAt + latencies[p], message.kind, id,
+                        message.hash, message.wire));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LedgerNetwork network = new LedgerNetwork();
+        network.parseArgs(args);
+        network.setUp();
+        network.run();
+        network.report();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-nodes": numNodes = Integer.parseInt(value); break;
+                case "-peers": numPeers = Integer.parseInt(value); break;
+                case "-duration": durationSeconds = Integer.parseInt(value); break;
+                case "-drain": drainSeconds = Integer.parseInt(value); break;
+                case "-tps": targetTps = Integer.parseInt(value); break;
+                case "-blockInterval": blockIntervalMillis = Long.parseLong(value); break;
+                case "-latency": latencySpec = value; break;
+                case "-bandwidth": bandwidthSpec = value; break;
+                case "-keySize": keySize = Integer.parseInt(value); break;
+                case "-seed": seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (numNodes < 2 || numPeers < 1 || numPeers >= numNodes) {
+            throw new IllegalArgumentException("need at least two nodes and 1 <= peers < nodes");
+        }
+        latencyModel = LatencyModel.parse(latencySpec);
+    }
+
+    /**
+     * Signs the payments, all spending outputs of one genesis funding transaction, and builds the
+     * nodes, each from its own copy of the genesis block decoded from the wire.
+     */
+    private void setUp() {
+        random = new Random(seed);
+        LedgerFixtures fixtures = new LedgerFixtures(seed, keySize);
+        KeyPair owner = fixtures.newKeyPair();
+        int numPayments = targetTps * durationSeconds;
+        Transaction funding = fixtures.fundingTransaction(numPayments, COIN_VALUE, owner.getPublic());
+        payments = fixtures.independentTransactions(LedgerFixtures.fundsOf(funding), COIN_VALUE, owner,
+                numPayments, 1);
+        Block genesis = new Block(null, owner.getPublic());
+        genesis.addTransaction(funding);
+        genesis.finalize();
+        byte[] genesisWire = encodeBlock(genesis);
+
+        long heapBefore = usedHeapAfterGc();
+        double[] bandwidth = Arrays.stream(bandwidthSpec.split(",")).mapToDouble(Double::parseDouble).toArray();
+        nodes = new Node[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            double uplinkMbps = (bandwidth.length == 1) ? bandwidth[0]
+                    : bandwidth[0] + (bandwidth[1] - bandwidth[0]) * random.nextDouble();
+            nodes[i] = new Node(i, decodeBlock(genesisWire), payoutAddress(), uplinkMbps);
+        }
+        connectPeers();
+        setUpHeapBytes = usedHeapAfterGc() - heapBefore;
+    }
+
+    /**
+     * Every node dials {@code numPeers} distinct others at random, and one earlier node first if
+     * it is not linked to one yet, so that the network is connected. Links carry traffic both ways
+     * with the same latency.
+     */
+    private void connectPeers() {
+        List<List<Integer>> peers = new ArrayList<>(numNodes);
+        List<List<Long>> latencies = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            peers.add(new ArrayList<>());
+            latencies.add(new ArrayList<>());
+        }
+        for (int i = 0; i < numNodes; i++) {
+            List<Integer> own = peers.get(i);
+            int node = i;
+            int dialed = 0;
+            if (i > 0 && own.stream().noneMatch(p -> p < node)) {
+                link(i, random.nextInt(i), peers, latencies);
+                dialed++;
+            }
+            while (dialed < numPeers && own.size() < numNodes - 1) {
+                int peer = random.nextInt(numNodes);
+                if (peer != i && !own.contains(peer)) {
+                    link(i, peer, peers, latencies);
+                    dialed++;
+                }
+            }
+        }
+        for (int i = 0; i < numNodes; i++) {
+            nodes[i].peers = peers.get(i).stream().mapToInt(Integer::intValue).toArray();
+            nodes[i].latencies = latencies.get(i).stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    private void link(int a, int b, List<List<Integer>> peers, List<List<Long>> latencies) {
+        long latency = latencyModel.draw(random);
+        peers.get(a).add(b);
+        latencies.get(a).add(latency);
+        peers.get(b).add(a);
+        latencies.get(b).add(latency);
+    }
+
+    /** Starts the nodes, feeds them payments and mining turns for the duration, then lets them drain */
+    private void run() throws InterruptedException {
+        long cpuStart = processCpuNanos();
+        threads = new Thread[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            threads[i] = Thread.ofVirtual().name("node-" + i).start(nodes[i]);
+        }
+
+        long start = System.nanoTime();
+        long end = start + durationSeconds * 1_000_000_000L;
+        long interval = 1_000_000_000L / targetTps;
+        long nextTx = start;
+        long nextBlock = start + nextBlockDelay();
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            if (now >= nextBlock) {
+                nodes[random.nextInt(numNodes)].inbox.add(new Message(now, Kind.MINE, -1, null, null));
+                blocksFound++;
+                nextBlock += nextBlockDelay();
+            } else if (now >= nextTx) {
+                submitPayment(now);
+                nextTx += interval;
+            } else {
+                LockSupport.parkNanos(Math.min(nextTx, nextBlock) - now);
+            }
+        }
+
+        long drainEnd = System.nanoTime() + drainSeconds * 1_000_000_000L;
+        while (System.nanoTime() < drainEnd && queuedMessages() > 0) {
+            Thread.sleep(50);
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        runNanos = System.nanoTime() - start;
+        runCpuNanos = processCpuNanos() - cpuStart;
+    }
+
+    /** @return an exponentially distributed wait for the next block, so blocks are found as a Poisson process */
+    private long nextBlockDelay() {
+        return (long) (-Math.log(1 - random.nextDouble()) * blockIntervalMillis * 1_000_000L);
+    }
+
+    private void submitPayment(long now) {
+        if (nextPayment == payments.size()) {
+            skippedPayments++;
+            return;
+        }
+        Transaction tx = payments.get(nextPayment++);
+        txSpreads.put(new ByteArrayWrapper(tx.getHash()), new Spread(now, numNodes));
+        nodes[random.nextInt(numNodes)].inbox.add(new Message(now, Kind.TX, -1, tx.getHash(), tx.toWire()));
+    }
+
+    private long queuedMessages() {
+        long queued = 0;
+        for (Node node : nodes) {
+            queued += node.inbox.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return an RSA public key with a random modulus, which no one can sign for; good enough as the
+     *         coinbase address of a node, and much cheaper than generating thousands of key pairs
+     */
+    private PublicKey payoutAddress() {
+        BigInteger modulus = new BigInteger(keySize, random).setBit(keySize - 1).setBit(0);
+        try {
+            return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, RSAKeyGenParameterSpec.F4));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return {@code block} as u16 previous hash length, previous hash, u16 coinbase address
+     *         length, coinbase address, int transaction count and then each transaction in wire
+     *         format behind its int length
+     */
+    private static byte[] encodeBlock(Block block) {
+        byte[] prevHash = (block.getPrevBlockHash() == null) ? new byte[0] : block.getPrevBlockHash();
+        AddressTable.Entry payout = block.getCoinbase().getOutput(0).addressEntry();
+        List<byte[]> txs = new ArrayList<>(block.getTransactions().size());
+        int length = 2 * Short.BYTES + prevHash.length + payout.encodedLength() + Integer.BYTES;
+        for (Transaction tx : block.getTransactions()) {
+            byte[] wire = tx.toWire();
+            txs.add(wire);
+            length += Integer.BYTES + wire.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort((short) prevHash.length).put(prevHash);
+        buffer.putShort((short) payout.encodedLength());
+        payout.writeEncoded(buffer);
+        buffer.putInt(txs.size());
+        for (byte[] wire : txs) {
+            buffer.putInt(wire.length).put(wire);
+        }
+        return buffer.array();
+    }
+
+    /** @return a finalized block decoded from {@link #encodeBlock(Block)}, with transactions of its own */
+    private static Block decodeBlock(byte[] wire) {
+        ByteBuffer buffer = ByteBuffer.wrap(wire);
+        byte[] prevHash = new byte[buffer.getShort() & 0xffff];
+        buffer.get(prevHash);
+        int addressLength = buffer.getShort() & 0xffff;
+        PublicKey payout = AddressTable.get().entryForEncoded(buffer.slice(buffer.position(), addressLength)).key;
+        buffer.position(buffer.position() + addressLength);
+        Block block = new Block((prevHash.length == 0) ? null : prevHash, payout);
+        int numTxs = buffer.getInt();
+        for (int i = 0; i < numTxs; i++) {
+            int length = buffer.getInt();
+            block.addTransaction(TransactionView.wrap(buffer.slice(buffer.position(), length)).materialize());
+            buffer.position(buffer.position() + length);
+        }
+        block.finalize();
+        return block;
+    }
+
+    /** @return the CPU time used by the whole process, or 0 if the platform does not tell */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return (os instanceof com.sun.management.OperatingSystemMXBean)
+                ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : 0;
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Records how long each spread took to reach half, 90% and all of the nodes
+     *
+     * @return the number of spreads that reached every node
+     */
+    private int recordSpreads(Iterable<Spread> spreads, LatencyRecorder half, LatencyRecorder most, LatencyRecorder all) {
+        int complete = 0;
+        for (Spread spread : spreads) {
+            long[] delays = Arrays.stream(spread.delays).filter(d -> d >= 0).sorted().toArray();
+            if (delays.length >= (numNodes + 1) / 2) {
+                half.record(delays[(numNodes + 1) / 2 - 1]);
+            }
+            int ninety = (int) Math.ceil(0.9 * numNodes);
+            if (delays.length >= ninety) {
+                most.record(delays[ninety - 1]);
+            }
+            if (delays.length == numNodes) {
+                all.record(delays[numNodes - 1]);
+                complete++;
+            }
+        }
+        return complete;
+    }
+
+    private void report() {
+        LatencyRecorder blockHalf = new LatencyRecorder("block to 50%");
+        LatencyRecorder blockMost = new LatencyRecorder("block to 90%");
+        LatencyRecorder blockAll = new LatencyRecorder("block to 100%");
+        int blocksEverywhere = recordSpreads(blockSpreads.values(), blockHalf, blockMost, blockAll);
+        LatencyRecorder txHalf = new LatencyRecorder("tx to 50%");
+        LatencyRecorder txMost = new LatencyRecorder("tx to 90%");
+        LatencyRecorder txAll = new LatencyRecorder("tx to 100%");
+        int txsEverywhere = recordSpreads(txSpreads.values(), txHalf, txMost, txAll);
+
+        // the final chain of node 0, walked back through its headers
+        BlockChain reference = nodes[0].blockChain;
+        Set<ByteArrayWrapper> mainChain = new HashSet<>();
+        for (BlockHeader header = reference.getBlockHeader(reference.getMaxHeightBlock().getHash());
+             header != null && header.getPrevBlockHash() != null;
+             header = reference.getBlockHeader(header.getPrevBlockHash())) {
+            mainChain.add(new ByteArrayWrapper(header.getHash()));
+        }
+        long stale = blockSpreads.keySet().stream().filter(b -> !mainChain.contains(b)).count();
+
+        LatencyRecorder connection = new LatencyRecorder("processBlock");
+        LatencyRecorder reorgConnection = new LatencyRecorder("processBlock (reorg)");
+        LatencyRecorder busy = new LatencyRecorder("busy per node");
+        long busyNanos = 0;
+        long messages = 0;
+        long reorgs = 0;
+        int maxReorgDepth = 0;
+        long orphans = 0;
+        long sameTip = 0;
+        long sameUtxos = 0;
+        byte[] tip = reference.getMaxHeightBlock().getHash();
+        byte[] referenceUtxos = reference.getUtxoCommitment(tip);
+        long maxBytesSent = 0;
+        long bytesSent = 0;
+        long minedBlocks = 0;
+        for (Node node : nodes) {
+            connection.addAll(node.connection);
+            reorgConnection.addAll(node.reorgConnection);
+            busy.record(node.busyNanos);
+            busyNanos += node.busyNanos;
+            messages += node.messagesHandled;
+            reorgs += node.reorgs;
+            maxReorgDepth = Math.max(maxReorgDepth, node.maxReorgDepth);
+            orphans += node.orphans.values().stream().mapToInt(List::size).sum();
+            bytesSent += node.bytesSent;
+            maxBytesSent = Math.max(maxBytesSent, node.bytesSent);
+            minedBlocks += node.blocksMined;
+            if (Arrays.equals(node.blockChain.getMaxHeightBlock().getHash(), tip)) {
+                sameTip++;
+                // the block hash leaves out the coinbase, so nodes on the same tip may still disagree
+                if (Arrays.equals(node.blockChain.getUtxoCommitment(tip), referenceUtxos)) {
+                    sameUtxos++;
+                }
+            }
+        }
+
+        long spreadBytes = (long) (blockSpreads.size() + txSpreads.size()) * numNodes * Long.BYTES;
+        long heapPerNode = (usedHeapAfterGc() - spreadBytes) / numNodes;
+        int links = Arrays.stream(nodes).mapToInt(n -> n.peers.length).sum() / 2;
+
+        System.out.println("Ledger network results");
+        System.out.printf(Locale.ROOT, "  network              %d nodes, %d links (mean degree %.1f), latency %s, uplink %s Mbit/s%n",
+                numNodes, links, 2.0 * links / numNodes, latencySpec, bandwidthSpec);
+        System.out.printf(Locale.ROOT, "  workload             %d s at %d tx/s (%d skipped), a block every %d ms on average%n",
+                durationSeconds, targetTps, skippedPayments, blockIntervalMillis);
+        System.out.printf(Locale.ROOT, "  blocks               %d turns, %d mined, %d distinct, %d reached every node%n",
+                blocksFound, minedBlocks, blockSpreads.size(), blocksEverywhere);
+        System.out.printf(Locale.ROOT, "  stale                %d of %d (%.1f%%) not on node 0's chain of height %d%n",
+                stale, blockSpreads.size(), 100.0 * stale / Math.max(1, blockSpreads.size()), mainChain.size());
+        System.out.printf(Locale.ROOT, "  reorgs               %d over all nodes (up to %d blocks deep), %d nodes on node 0's tip (%d with its UTXO set), %d orphans left%n",
+                reorgs, maxReorgDepth, sameTip, sameUtxos, orphans);
+        System.out.printf(Locale.ROOT, "  transactions         %d submitted, %d reached every node%n",
+                txSpreads.size(), txsEverywhere);
+        System.out.printf(Locale.ROOT, "  messages             %d handled, %d left queued, %,d bytes sent per node (max %,d)%n",
+                messages, queuedMessages(), bytesSent / numNodes, maxBytesSent);
+        System.out.printf(Locale.ROOT, "  cpu                  %.1f s busy over all nodes, %.1f s process cpu in %.1f s%n",
+                busyNanos / 1e9, runCpuNanos / 1e9, runNanos / 1e9);
+        System.out.printf(Locale.ROOT, "  heap                 %,d bytes per node after set-up, %,d at the end%n",
+                setUpHeapBytes / numNodes, heapPerNode);
+        for (LatencyRecorder recorder : List.of(blockHalf, blockMost, blockAll, txHalf, txMost, txAll,
+                connection, reorgConnection, busy)) {
+            System.out.println("  " + recorder.summary());
+        }
+    }
+}
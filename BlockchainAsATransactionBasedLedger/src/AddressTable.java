@@ -0,0 +1,240 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Interns the addresses (public keys) that outputs pay to. Every distinct key gets a small integer
+ * ID and one {@link Entry} holding the canonical key object, its encoding, its
+ * {@link SignatureScheme} and a ready-to-use verifier, so equal keys read from different places
+ * share all of them. Keys are interned only when an output paying to them enters a
+ * {@link UTXOPool}, and the output then holds its entry; the table only holds entries weakly, so
+ * an entry is dropped, and its ID handed out again, once no output holds it. The table is shared
+ * by every pool and chain in the process, and bounded by the addresses their outputs pay to, not
+ * by every key that has arrived over the wire. Keys that are not interned get a transient entry
+ * from {@link #entryFor} or {@link #entryForEncoded}, with the same contents and no ID.
+ */
+public final class AddressTable {
+
+    private static final AddressTable INSTANCE = new AddressTable();
+
+    private final ConcurrentHashMap<PublicKey, EntryRef> byKey = new ConcurrentHashMap<>();
+
+    /** entries by their encoding; a ByteBuffer compares and hashes by its remaining bytes */
+    private final ConcurrentHashMap<ByteBuffer, EntryRef> byEncoding = new ConcurrentHashMap<>();
+
+    /** entries by ID; replaced by a larger copy when full, written under the table's lock */
+    private volatile EntryRef[] byId = new EntryRef[1024];
+    private int size;
+
+    /** IDs of dropped entries, handed out again before new ones; used under the table's lock */
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+
+    /** references to entries no output holds any more, to be taken out of the maps */
+    private final ReferenceQueue<Entry> dropped = new ReferenceQueue<>();
+
+    public static AddressTable get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the entry of {@code key}, adding one if the key has not been seen before; only for
+     *         keys of outputs entering a UTXOPool, see the class comment
+     */
+    public Entry intern(PublicKey key) {
+        Entry entry = deref(byKey.get(key));
+        if (entry != null) {
+            return entry;
+        }
+        synchronized (this) {
+            expungeDropped();
+            entry = deref(byKey.get(key));
+            if (entry == null) {
+                int id = freeIds.isEmpty() ? size++ : freeIds.pop();
+                entry = new Entry(id, key);
+                if (id == byId.length) {
+                    EntryRef[] grown = new EntryRef[id * 2];
+                    System.arraycopy(byId, 0, grown, 0, id);
+                    byId = grown;
+                }
+                // a reference whose entry was dropped but not yet expunged is replaced here
+                EntryRef ref = new EntryRef(entry, dropped);
+                byId[id] = ref;
+                byEncoding.put(ref.encoding, ref);
+                byKey.put(key, ref);
+            }
+            return entry;
+        }
+    }
+
+    /** Takes the entries no output holds any more out of the maps and frees their IDs; under the lock */
+    private void expungeDropped() {
+        EntryRef ref;
+        while ((ref = (EntryRef) dropped.poll()) != null) {
+            byKey.remove(ref.key, ref);
+            byEncoding.remove(ref.encoding, ref);
+            if (byId[ref.id] == ref) {
+                byId[ref.id] = null;
+                freeIds.push(ref.id);
+            }
+        }
+    }
+
+    private static Entry deref(EntryRef ref) {
+        return (ref == null) ? null : ref.get();
+    }
+
+    /** @return the interned entry of {@code key}, or a transient one, with ID -1, if it has none */
+    public Entry entryFor(PublicKey key) {
+        Entry entry = deref(byKey.get(key));
+        return (entry != null) ? entry : new Entry(-1, key);
+    }
+
+    /**
+     * @return the interned entry of the key whose X.509 encoding is between the position and limit
+     *         of {@code encoding}, or a transient one, with ID -1, holding the decoded key if it
+     *         has none
+     * @throws IllegalArgumentException if the bytes are not a public key of a known {@link SignatureScheme}
+     */
+    public Entry entryForEncoded(ByteBuffer encoding) {
+        Entry entry = deref(byEncoding.get(encoding));
+        if (entry != null) {
+            return entry;
+        }
+        SignatureScheme scheme = Crypto.schemeForEncoded(encoding);
+        if (scheme == null) {
+            throw new IllegalArgumentException("not an encoded public key of a known signature scheme");
+        }
+        byte[] bytes = new byte[encoding.remaining()];
+        encoding.duplicate().get(bytes);
+        try {
+            return entryFor(scheme.decode(bytes));
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalArgumentException("not an encoded " + scheme.name() + " public key", e);
+        }
+    }
+
+    /** @return the entry of {@code key}, or null if no output paying to it is held in a UTXOPool */
+    public Entry lookup(PublicKey key) {
+        return deref(byKey.get(key));
+    }
+
+    /** @return the interned key equal to {@code key}, or {@code key} itself if there is none */
+    public PublicKey canonical(PublicKey key) {
+        Entry entry = deref(byKey.get(key));
+        return (entry != null) ? entry.key : key;
+    }
+
+    /** @return the entry with ID {@code id}, as handed out by {@link #intern}, or null if it was dropped */
+    public Entry get(int id) {
+        return deref(byId[id]);
+    }
+
+    /** @return the number of distinct addresses interned and not dropped */
+    public synchronized int size() {
+        expungeDropped();
+        return byKey.size();
+    }
+
+    /** A weak reference to an entry, with what is needed to take it out of the maps once it is dropped */
+    private static final class EntryRef extends WeakReference<Entry> {
+        final int id;
+        final PublicKey key;
+        /** the entry's encoding; a read-only view of the same bytes, so the entry is not held */
+        final ByteBuffer encoding;
+
+        EntryRef(Entry entry, ReferenceQueue<Entry> queue) {
+            super(entry, queue);
+            this.id = entry.id;
+            this.key = entry.key;
+            this.encoding = ByteBuffer.wrap(entry.encoded).asReadOnlyBuffer();
+        }
+    }
+
+    public static final class Entry {
+        /** the ID handed out by {@link #intern}, or -1 for a transient entry */
+        public final int id;
+        public final PublicKey key;
+
+        /** the scheme signatures under key are verified with; null if no known scheme accepts it */
+        public final SignatureScheme scheme;
+
+        private final byte[] encoded;
+
+        /** one idle verifier already initialised with key; taken while in use */
+        private final AtomicReference<Signature> verifier = new AtomicReference<>();
+
+        private Entry(int id, PublicKey key) {
+            this.id = id;
+            this.key = key;
+            this.scheme = Crypto.schemeFor(key);
+            this.encoded = key.getEncoded();
+        }
+
+        /** @return the length of the key's encoding */
+        public int encodedLength() {
+            return encoded.length;
+        }
+
+        /** @return a copy of the key's X.509 encoding */
+        public byte[] getEncoded() {
+            return encoded.clone();
+        }
+
+        /** Writes the key's encoding to {@code dest} */
+        public void writeEncoded(ByteBuffer dest) {
+            dest.put(encoded);
+        }
+
+        /**
+         * @return true if {@code signature} is a valid signature of {@code message} under this key
+         *         in its scheme. The initialised verifier is reused between calls; concurrent calls
+         *         for the same key each get their own.
+         */
+        boolean verify(byte[] message, byte[] signature)
+                throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+            Signature sig = takeVerifier();
+            sig.update(message);
+            boolean valid = sig.verify(signature);
+            verifier.compareAndSet(null, sig);
+            return valid;
+        }
+
+        /** Same as above, for a message made of the remaining bytes of {@code head} and then {@code tail} */
+        boolean verify(ByteBuffer head, ByteBuffer tail, ByteBuffer signature)
+                throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+            Signature sig = takeVerifier();
+            sig.update(head.duplicate());
+            sig.update(tail.duplicate());
+            boolean valid;
+            if (signature.hasArray()) {
+                valid = sig.verify(signature.array(), signature.arrayOffset() + signature.position(), signature.remaining());
+            } else {
+                byte[] bytes = new byte[signature.remaining()];
+                signature.duplicate().get(bytes);
+                valid = sig.verify(bytes);
+            }
+            verifier.compareAndSet(null, sig);
+            return valid;
+        }
+
+        private Signature takeVerifier() throws NoSuchAlgorithmException, InvalidKeyException {
+            Signature sig = verifier.getAndSet(null);
+            if (sig == null) {
+                if (scheme == null) {
+                    throw new NoSuchAlgorithmException("no signature scheme for " + key.getAlgorithm() + " keys");
+                }
+                sig = scheme.newVerifier(key);
+            }
+            return sig;
+        }
+    }
+}
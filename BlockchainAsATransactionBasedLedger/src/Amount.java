@@ -0,0 +1,66 @@
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point amounts: a long count of base units, {@link #UNITS_PER_COIN} to the coin. Output
+ * values are still serialized as doubles, so an amount in units is derived from the double: by
+ * {@link #toUnits(double)} for balances, and by {@link #toExactUnits(double)} where handlers check
+ * values as whole units, which they only do when asked to, as it turns down transactions the
+ * default double sums accept. Every amount up to {@link #MAX_UNITS} survives the round trip
+ * through a double exactly, so all nodes derive the same units, and a double that is not such an
+ * amount, like 0.500000004, is turned down by toExactUnits rather than rounded. Sums of units are
+ * meant to be taken with {@link Math#addExact(long, long)}.
+ */
+public final class Amount {
+
+    public static final long UNITS_PER_COIN = 100_000_000L;
+
+    /**
+     * the largest amount allowed, 21 million coins; below 2^51 units the two roundings of
+     * units / 1e8 * 1e8 stay within half a unit, so every amount converts to coins and back exactly
+     */
+    public static final long MAX_UNITS = 21_000_000L * UNITS_PER_COIN;
+
+    private Amount() {
+    }
+
+    /**
+     * @return {@code coins} in base units, rounded to the nearest unit
+     * @throws ArithmeticException if {@code coins} is not finite or beyond {@link #MAX_UNITS} units
+     */
+    public static long toUnits(double coins) {
+        double units = Math.rint(coins * UNITS_PER_COIN);
+        if (!(Math.abs(units) <= MAX_UNITS)) {
+            throw new ArithmeticException("not a representable amount: " + coins);
+        }
+        return (long) units;
+    }
+
+    /**
+     * @return {@code coins} in base units, which it must be a whole number of
+     * @throws ArithmeticException if {@code coins} is not finite, beyond {@link #MAX_UNITS} units or
+     *         not the double nearest to a whole number of units
+     */
+    public static long toExactUnits(double coins) {
+        long units = toUnits(coins);
+        if (toCoins(units) != coins) {
+            throw new ArithmeticException("not a whole number of units: " + coins);
+        }
+        return units;
+    }
+
+    /**
+     * @return {@code units} in coins
+     * @throws ArithmeticException if {@code units} is beyond {@link #MAX_UNITS}
+     */
+    public static double toCoins(long units) {
+        if (Math.abs(units) > MAX_UNITS) {
+            throw new ArithmeticException("not a representable amount: " + units + " units");
+        }
+        return units / (double) UNITS_PER_COIN;
+    }
+
+    /** @return {@code units} as a decimal number of coins with all eight places, e.g. 12.50000000 */
+    public static String format(long units) {
+        return BigDecimal.valueOf(units, 8).toPlainString();
+    }
+}
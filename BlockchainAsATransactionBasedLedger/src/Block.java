@@ -1,4 +1,5 @@
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
@@ -7,6 +8,7 @@ import java.util.ArrayList;
 public class Block {
 
     public static final double COINBASE = 25;
+    public static final long COINBASE_UNITS = 25 * Amount.UNITS_PER_COIN;
 
     private byte[] hash;
     private byte[] prevBlockHash;
@@ -45,20 +47,18 @@ public class Block {
     }
 
     public byte[] getRawBlock() {
-        ArrayList<Byte> rawBlock = new ArrayList<Byte>();
-        if (prevBlockHash != null)
-            for (int i = 0; i < prevBlockHash.length; i++)
-                rawBlock.add(prevBlockHash[i]);
+        byte[][] rawTxs = new byte[txs.size()][];
+        int length = (prevBlockHash != null) ? prevBlockHash.length : 0;
         for (int i = 0; i < txs.size(); i++) {
-            byte[] rawTx = txs.get(i).getRawTx();
-            for (int j = 0; j < rawTx.length; j++) {
-                rawBlock.add(rawTx[j]);
-            }
+            rawTxs[i] = txs.get(i).getRawTx();
+            length += rawTxs[i].length;
         }
-        byte[] raw = new byte[rawBlock.size()];
-        for (int i = 0; i < raw.length; i++)
-            raw[i] = rawBlock.get(i);
-        return raw;
+        ByteBuffer rawBlock = ByteBuffer.allocate(length);
+        if (prevBlockHash != null)
+            rawBlock.put(prevBlockHash);
+        for (byte[] rawTx : rawTxs)
+            rawBlock.put(rawTx);
+        return rawBlock.array();
     }
 
     public void finalize() {
@@ -1,34 +1,124 @@
 // Block Chain should maintain only limited block nodes to satisfy the functions
 // You should not have all the blocks added to the block chain in memory 
 // as it would cause a memory overflow.
-
+//
+// Blocks and their UTXO pools are pruned CUT_OFF_AGE + 40 heights below the tip. Their headers are
+// not: treeNodes keeps a TreeNode for every block ever added, so that ancestors, fork points,
+// locators and Merkle proofs can still be found for pruned blocks. That costs about 300 bytes per
+// block on a 64-bit JVM with compressed references (the map key and entry, the node, its header
+// and three 32-byte hashes), or about 300 MB per million blocks, and grows for as long as the
+// chain runs.
+
+import java.io.UncheckedIOException;
 import java.util.*;
 
 public class BlockChain {
     public class BlockData {
         public UTXOPool UtxoPool;
         public int Height;
+        /** hashes of the block's transactions in block order, for Merkle proofs */
+        public List<byte[]> TxHashes;
+        /** the commitment of UtxoPool, taken when the block was connected */
+        public MuHash3072 UtxoCommitment;
 
-        public BlockData (UTXOPool utxoPool, int height) {
+        public BlockData (UTXOPool utxoPool, int height, List<byte[]> txHashes) {
             this.UtxoPool = utxoPool;
             this.Height = height;
+            this.TxHashes = txHashes;
+            this.UtxoCommitment = utxoPool.getCommitment();
+        }
+    }
+
+    /**
+     * What is kept of every block ever added, after the block itself is pruned too: its header, its
+     * parent and one earlier ancestor to skip to. Skip heights are those of Bitcoin Core's block
+     * index, chosen so that any ancestor is reached in O(log n) steps.
+     */
+    private static final class TreeNode {
+        final BlockHeader header;
+        final TreeNode parent;
+        final TreeNode skip;
+
+        TreeNode(BlockHeader header, TreeNode parent) {
+            this.header = header;
+            this.parent = parent;
+            this.skip = (parent == null) ? null : parent.getAncestor(skipHeight(header.getHeight()));
+        }
+
+        int height() {
+            return header.getHeight();
+        }
+
+        /** @return the ancestor at {@code height}, this node itself at its own height; null above it */
+        TreeNode getAncestor(int height) {
+            if (height > height() || height < 0) {
+                return null;
+            }
+            TreeNode walk = this;
+            int walkHeight = height();
+            while (walkHeight > height) {
+                int skipHeight = skipHeight(walkHeight);
+                int prevSkipHeight = skipHeight(walkHeight - 1);
+                // take the skip unless the parent's skip gets closer without overshooting
+                if (walk.skip != null && (skipHeight == height || (skipHeight > height
+                        && !(prevSkipHeight < skipHeight - 2 && prevSkipHeight >= height)))) {
+                    walk = walk.skip;
+                    walkHeight = skipHeight;
+                } else {
+                    walk = walk.parent;
+                    walkHeight--;
+                }
+            }
+            return walk;
+        }
+
+        /** @return the height to skip to from {@code height}, always lower unless it is 0 */
+        static int skipHeight(int height) {
+            if (height < 2) {
+                return 0;
+            }
+            // clearing the lowest set bit once or twice keeps the jumps of neighbours apart
+            return ((height & 1) != 0) ? clearLowestBit(clearLowestBit(height - 1)) + 1 : clearLowestBit(height);
+        }
+
+        private static int clearLowestBit(int n) {
+            return n & (n - 1);
         }
     }
 
     public static final int CUT_OFF_AGE = 10;
 
+    /** how many of the most recent blocks a locator lists one by one before it starts doubling its steps */
+    public static final int LOCATOR_DENSE_BLOCKS = 10;
+
     private int maxBlockHeight;
     private Block maxHeightBlock;
+    /** the number of UTXOs after maxHeightBlock, set whenever the tip changes */
+    private int tipUtxoCount;
     private final Map<ByteArrayWrapper, BlockData> treeData;
     private final Map<Integer, Set<ByteArrayWrapper>> nodesAtHeight;
 
+    /** every block ever added, kept after the block itself is pruned; about 300 bytes each, see the top of the file */
+    private final Map<ByteArrayWrapper, TreeNode> treeNodes;
+
     private final TransactionPool transactionPool;
 
+    /** where the transactions of every connected block are recorded, or null */
+    private final TxIndex txIndex;
+
     /**
      * create an empty block chain with just a genesis block. Assume {@code genesisBlock} is a valid
      * block
      */
     public BlockChain(Block genesisBlock) {
+        this(genesisBlock, null);
+    }
+
+    /**
+     * Same as above, recording the transactions of the genesis block and every block added later
+     * in {@code txIndex}, if it is not null
+     */
+    public BlockChain(Block genesisBlock, TxIndex txIndex) {
         UTXOPool utxoPool = new UTXOPool();
         for (Transaction txn : genesisBlock.getTransactions()) {
             addOutputsToUtxoPool(txn, utxoPool);
@@ -39,14 +129,27 @@ public class BlockChain {
 
         this.maxBlockHeight = 0;
         this.maxHeightBlock = genesisBlock;
+        this.tipUtxoCount = utxoPool.size();
 
+        List<byte[]> txHashes = BlockHeader.txHashes(genesisBlock);
         this.treeData = new HashMap<>();
-        treeData.put(blockId, new BlockData(utxoPool, 0));
+        treeData.put(blockId, new BlockData(utxoPool, 0, txHashes));
+
+        this.treeNodes = new HashMap<>();
+        treeNodes.put(blockId, new TreeNode(new BlockHeader(genesisBlock.getHash(), genesisBlock.getPrevBlockHash(),
+                MerkleTree.root(txHashes), 0), null));
 
         this.nodesAtHeight = new HashMap<>();
         this.nodesAtHeight.computeIfAbsent(0, (k) -> new HashSet<>()).add(blockId);
 
         this.transactionPool = new TransactionPool();
+
+        this.txIndex = txIndex;
+        if (txIndex != null) {
+            txIndex.add(genesisBlock.getHash(), 0, txHashes);
+        }
+
+        LedgerMetrics.get().registerMBean();
     }
 
     private void addOutputsToUtxoPool (Transaction txn, UTXOPool utxoPool) {
@@ -61,11 +164,24 @@ public class BlockChain {
         return this.maxHeightBlock;
     }
 
-    /** Get the UTXOPool for mining a new block on top of max height block */
+    /** @return the height of the max height block, the tip of this chain */
+    public int getTipHeight() {
+        return this.maxBlockHeight;
+    }
+
+    /** @return the number of UTXOs after the max height block */
+    public int getTipUtxoCount() {
+        return this.tipUtxoCount;
+    }
+
+    /**
+     * Get the UTXOPool for mining a new block on top of max height block: a copy that does not
+     * keep a running commitment, see {@link UTXOPool#UTXOPool(UTXOPool, boolean)}
+     */
     public UTXOPool getMaxHeightUTXOPool() {
         ByteArrayWrapper maxHeightBlockId = new ByteArrayWrapper(maxHeightBlock.getHash());
         UTXOPool maxHeightBlockUtxoPool = treeData.get(maxHeightBlockId).UtxoPool;
-        return new UTXOPool(maxHeightBlockUtxoPool);
+        return new UTXOPool(maxHeightBlockUtxoPool, false);
     }
 
     /** Get the transaction pool to mine a new block */
@@ -86,54 +202,78 @@ public class BlockChain {
      * @return true if block is successfully added
      */
     public boolean addBlock(Block block) {
+        LedgerMetrics metrics = LedgerMetrics.get();
+        long start = metrics.startTimer();
+
         if (block.getPrevBlockHash() == null) {
+            metrics.blockRejected(start, LedgerMetrics.BlockRejectReason.NO_PARENT, block.getTransactions().size());
             return false;
         }
 
         ByteArrayWrapper prevBlockId = new ByteArrayWrapper(block.getPrevBlockHash());
         if (!this.treeData.containsKey(prevBlockId)) {
+            metrics.blockRejected(start, LedgerMetrics.BlockRejectReason.UNKNOWN_PARENT, block.getTransactions().size());
             return false;
         }
 
         BlockData prevBlockData = this.treeData.get(prevBlockId);
         if (prevBlockData.Height < maxBlockHeight - CUT_OFF_AGE) {
+            metrics.blockRejected(start, LedgerMetrics.BlockRejectReason.BELOW_CUT_OFF, block.getTransactions().size());
             return false;
         }
 
         // Check block validity
         Transaction[] possibleTransactions = block.getTransactions().toArray(new Transaction[0]);
 
-        UTXOPool updatedUtxoPool = new UTXOPool(prevBlockData.UtxoPool);
-        Transaction[] validTransactions = (new TxHandler(updatedUtxoPool)).handleTxs(possibleTransactions);
-        if (validTransactions.length < possibleTransactions.length) {
+        UTXOPool updatedUtxoPool = new BlockValidator(prevBlockData.UtxoPool).validate(possibleTransactions);
+        if (updatedUtxoPool == null) {
+            metrics.blockRejected(start, LedgerMetrics.BlockRejectReason.INVALID_TRANSACTIONS, possibleTransactions.length);
             return false;
         }
 
         // Updates
         updateUtxoPool(block.getCoinbase(), updatedUtxoPool);
 
-        BlockData newBlockData = new BlockData(updatedUtxoPool, prevBlockData.Height + 1);
+        List<byte[]> txHashes = BlockHeader.txHashes(block);
+        BlockData newBlockData = new BlockData(updatedUtxoPool, prevBlockData.Height + 1, txHashes);
         ByteArrayWrapper blockId = new ByteArrayWrapper(block.getHash());
         this.treeData.put(blockId, newBlockData);
+        this.treeNodes.put(blockId, new TreeNode(new BlockHeader(block.getHash(), block.getPrevBlockHash(),
+                MerkleTree.root(txHashes), newBlockData.Height), this.treeNodes.get(prevBlockId)));
         this.nodesAtHeight.computeIfAbsent(newBlockData.Height, (k) -> new HashSet<>()).add(blockId);
 
         if (newBlockData.Height > this.maxBlockHeight) {
             this.maxBlockHeight = newBlockData.Height;
             this.maxHeightBlock = block;
+            this.tipUtxoCount = updatedUtxoPool.size();
 
-            if (this.nodesAtHeight.containsKey(this.maxBlockHeight - CUT_OFF_AGE - 40)) {
-                for (ByteArrayWrapper blockIdentifier : this.nodesAtHeight.get(this.maxBlockHeight)) {
+            int pruneHeight = this.maxBlockHeight - CUT_OFF_AGE - 40;
+            if (this.nodesAtHeight.containsKey(pruneHeight)) {
+                for (ByteArrayWrapper blockIdentifier : this.nodesAtHeight.get(pruneHeight)) {
                     this.treeData.remove(blockIdentifier);
                 }
 
-                this.nodesAtHeight.remove(this.maxBlockHeight);
+                metrics.blocksPruned(pruneHeight, this.nodesAtHeight.remove(pruneHeight).size());
             }
         }
 
         for (Transaction txn : block.getTransactions()) {
             this.transactionPool.removeTransaction(txn.getHash());
         }
+        metrics.transactionPoolSize(this.transactionPool.size());
+
+        // last, once the block is connected: a segment that fails to write leaves the records
+        // buffered, where lookups still find them, and the next flush writes them again
+        if (this.txIndex != null) {
+            try {
+                this.txIndex.add(block.getHash(), newBlockData.Height, txHashes);
+            } catch (UncheckedIOException e) {
+                // the block stays connected; only writing the segment is put off
+            }
+        }
 
+        metrics.blockConnected(start, newBlockData.Height, possibleTransactions.length,
+                metrics.isEnabled() ? updatedUtxoPool.size() : 0);
         return true;
     }
 
@@ -162,9 +302,229 @@ public class BlockChain {
         return true;
     }
 
+    /**
+     * @return the digest of the commitment to the UTXO set after the block with hash
+     *         {@code blockHash}, see {@link UTXOPool#getCommitment()}, or null if the block is
+     *         unknown or has been pruned. Nodes, or a node and a checkpoint, that agree on it
+     *         agree on the whole UTXO set.
+     */
+    public byte[] getUtxoCommitment(byte[] blockHash) {
+        BlockData blockData = this.treeData.get(new ByteArrayWrapper(blockHash));
+        return (blockData == null) ? null : blockData.UtxoCommitment.digest();
+    }
+
+    /** @return the header of the block with hash {@code blockHash}, or null if it was never added */
+    public BlockHeader getBlockHeader(byte[] blockHash) {
+        TreeNode node = this.treeNodes.get(new ByteArrayWrapper(blockHash));
+        return (node == null) ? null : node.header;
+    }
+
+    /**
+     * @return the header of the ancestor at {@code height} of the block with hash {@code blockHash},
+     *         the block's own header at its own height, in O(log n) steps; null if the block was
+     *         never added or is lower than {@code height}. Pruned ancestors are found too.
+     */
+    public BlockHeader getAncestor(byte[] blockHash, int height) {
+        TreeNode node = this.treeNodes.get(new ByteArrayWrapper(blockHash));
+        TreeNode ancestor = (node == null) ? null : node.getAncestor(height);
+        return (ancestor == null) ? null : ancestor.header;
+    }
+
+    /**
+     * @return the header of the highest block that both the block with hash {@code a} and the one
+     *         with hash {@code b} descend from, or are; null if either was never added. When one
+     *         becomes the max height block in place of the other, the blocks above it are the ones
+     *         given up.
+     */
+    public BlockHeader findForkPoint(byte[] a, byte[] b) {
+        TreeNode nodeA = this.treeNodes.get(new ByteArrayWrapper(a));
+        TreeNode nodeB = this.treeNodes.get(new ByteArrayWrapper(b));
+        if (nodeA == null || nodeB == null) {
+            return null;
+        }
+        int height = Math.min(nodeA.height(), nodeB.height());
+        nodeA = nodeA.getAncestor(height);
+        nodeB = nodeB.getAncestor(height);
+        while (nodeA != nodeB) {
+            // at equal heights the skips are at equal heights too, and differ only below the fork
+            if (nodeA.skip != nodeB.skip) {
+                nodeA = nodeA.skip;
+                nodeB = nodeB.skip;
+            } else {
+                nodeA = nodeA.parent;
+                nodeB = nodeB.parent;
+            }
+        }
+        return nodeA.header;
+    }
+
+    /**
+     * @return hashes of blocks on the chain ending at the max height block, from it down to the
+     *         genesis block: the {@link #LOCATOR_DENSE_BLOCKS} highest one by one, then twice as far
+     *         apart at every step. Another node passes it to {@link #getHeaders(List, int)} to learn
+     *         what it is missing, wherever the two chains part.
+     */
+    public List<byte[]> getLocator() {
+        TreeNode tip = this.treeNodes.get(new ByteArrayWrapper(maxHeightBlock.getHash()));
+        List<byte[]> locator = new ArrayList<>();
+        int step = 1;
+        int height = tip.height();
+        while (height > 0) {
+            locator.add(tip.getAncestor(height).header.getHash());
+            if (locator.size() >= LOCATOR_DENSE_BLOCKS) {
+                step *= 2;
+            }
+            height -= step;
+        }
+        locator.add(tip.getAncestor(0).header.getHash());
+        return locator;
+    }
+
+    /**
+     * @return up to {@code max} headers of the chain ending at the max height block, starting right
+     *         after the block with hash {@code afterHash}, or with the genesis block if that hash is
+     *         null or not on this chain; for a light client catching up with a {@link HeaderChain}
+     */
+    public List<BlockHeader> getHeaders(byte[] afterHash, int max) {
+        return getHeaders((afterHash == null) ? Collections.emptyList() : Collections.singletonList(afterHash), max);
+    }
+
+    /**
+     * @return up to {@code max} headers of the chain ending at the max height block, starting right
+     *         after the first block of {@code locator} that is on this chain, or with the genesis
+     *         block if none is; see {@link #getLocator()}
+     */
+    public List<BlockHeader> getHeaders(List<byte[]> locator, int max) {
+        TreeNode tip = this.treeNodes.get(new ByteArrayWrapper(maxHeightBlock.getHash()));
+        int first = 0;
+        for (byte[] blockHash : locator) {
+            TreeNode node = this.treeNodes.get(new ByteArrayWrapper(blockHash));
+            if (node != null && tip.getAncestor(node.height()) == node) {
+                first = node.height() + 1;
+                break;
+            }
+        }
+        int last = (int) Math.min(tip.height(), (long) first + max - 1);
+        if (last < first) {
+            return new ArrayList<>();
+        }
+        BlockHeader[] chain = new BlockHeader[last - first + 1];
+        TreeNode node = tip.getAncestor(last);
+        for (int i = chain.length - 1; i >= 0; i--) {
+            chain[i] = node.header;
+            node = node.parent;
+        }
+        return new ArrayList<>(Arrays.asList(chain));
+    }
+
+    /**
+     * @return a proof that the transaction with hash {@code txHash} is in the block with hash
+     *         {@code blockHash}, or null if it is not or the block has been pruned
+     */
+    public MerkleProof getMerkleProof(byte[] blockHash, byte[] txHash) {
+        BlockData blockData = this.treeData.get(new ByteArrayWrapper(blockHash));
+        if (blockData == null) {
+            return null;
+        }
+        for (int i = 0; i < blockData.TxHashes.size(); i++) {
+            if (Arrays.equals(blockData.TxHashes.get(i), txHash)) {
+                return MerkleTree.proof(blockHash, blockData.TxHashes, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a proof for the transaction with hash {@code txHash} from the highest block on the chain
+     *         ending at the max height block that holds it, searching back until the first pruned
+     *         block; null if none does. With a transaction index the block is looked up instead.
+     */
+    public MerkleProof getMerkleProof(byte[] txHash) {
+        if (this.txIndex != null) {
+            TxIndex.Location location = getTransactionLocation(txHash);
+            return (location == null) ? null : getMerkleProof(location.getBlockHash(), txHash);
+        }
+        TreeNode node = this.treeNodes.get(new ByteArrayWrapper(maxHeightBlock.getHash()));
+        while (node != null && this.treeData.containsKey(new ByteArrayWrapper(node.header.getHash()))) {
+            MerkleProof proof = getMerkleProof(node.header.getHash(), txHash);
+            if (proof != null) {
+                return proof;
+            }
+            node = node.parent;
+        }
+        return null;
+    }
+
+    /**
+     * @return where the transaction with hash {@code txHash} was confirmed on the chain ending at
+     *         the max height block, pruned blocks included; null if it was not, or if this chain
+     *         has no transaction index
+     */
+    public TxIndex.Location getTransactionLocation(byte[] txHash) {
+        if (this.txIndex == null) {
+            return null;
+        }
+        for (TxIndex.Location location : this.txIndex.lookup(txHash)) {
+            if (isOnMaxHeightChain(location.getBlockHash(), location.getHeight())) {
+                return location;
+            }
+        }
+        return null;
+    }
+
+    private boolean isOnMaxHeightChain(byte[] blockHash, int height) {
+        BlockHeader ancestor = getAncestor(maxHeightBlock.getHash(), height);
+        return ancestor != null && Arrays.equals(ancestor.getHash(), blockHash);
+    }
+
     /** Add a transaction to the transaction pool */
     public void addTransaction(Transaction tx) {
         // IMPLEMENT THIS
         this.transactionPool.addTransaction(tx);
+        LedgerMetrics.get().transactionAdmitted(this.transactionPool.size());
+    }
+
+    /**
+     * Add a transaction received in wire format to the transaction pool. It is only materialized
+     * if it is not pooled yet, pays no negative values and spends outputs that are unspent at the
+     * max height block or created by pooled transactions; anything else is dropped as it is, and
+     * so is a transaction paying to an address that does not decode as a public key.
+     *
+     * @return true if the transaction was added
+     */
+    public boolean addTransaction(TransactionView tx) {
+        if (this.transactionPool.getTransaction(tx.getHash()) != null) {
+            return false;
+        }
+        for (int j = 0; j < tx.numOutputs(); j++) {
+            if (tx.getOutputValue(j) < 0) {
+                return false;
+            }
+        }
+
+        UTXOPool tipUtxoPool = this.treeData.get(new ByteArrayWrapper(maxHeightBlock.getHash())).UtxoPool;
+        for (int i = 0; i < tx.numInputs(); i++) {
+            byte[] prevTxHash = tx.getPrevTxHash(i);
+            int outputIndex = tx.getOutputIndex(i);
+            if (prevTxHash == null) {
+                return false;
+            }
+            if (!tipUtxoPool.mightContain(prevTxHash, outputIndex)
+                    || !tipUtxoPool.contains(new UTXO(prevTxHash, outputIndex))) {
+                Transaction parent = this.transactionPool.getTransaction(prevTxHash);
+                if (parent == null || outputIndex < 0 || outputIndex >= parent.numOutputs()) {
+                    return false;
+                }
+            }
+        }
+
+        Transaction materialized;
+        try {
+            materialized = tx.materialize();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        addTransaction(materialized);
+        return true;
     }
 }
\ No newline at end of file
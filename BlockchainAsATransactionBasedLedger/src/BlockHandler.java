@@ -22,6 +22,18 @@ public class BlockHandler {
 
     /** create a new {@code block} over the max height {@code block} */
     public Block createBlock(PublicKey myAddress) {
+        Block current = assembleBlock(myAddress);
+        if (blockChain.addBlock(current))
+            return current;
+        else
+            return null;
+    }
+
+    /**
+     * build the {@code block} {@link #createBlock} would create, without adding it to the block
+     * chain; {@link #processBlock} adds it
+     */
+    public Block assembleBlock(PublicKey myAddress) {
         Block parent = blockChain.getMaxHeightBlock();
         byte[] parentHash = parent.getHash();
 
@@ -36,14 +48,20 @@ public class BlockHandler {
             current.addTransaction(rTxs[i]);
 
         current.finalize();
-        if (blockChain.addBlock(current))
-            return current;
-        else
-            return null;
+        return current;
     }
 
     /** process a {@code Transaction} */
     public void processTx(Transaction tx) {
         blockChain.addTransaction(tx);
     }
+
+    /**
+     * process a {@code Transaction} received in wire format; it is only materialized if it is added
+     * 
+     * @return true if the transaction has been added to the transaction pool
+     */
+    public boolean processTx(TransactionView tx) {
+        return blockChain.addTransaction(tx);
+    }
 }
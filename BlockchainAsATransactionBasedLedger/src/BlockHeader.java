@@ -0,0 +1,53 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a light client keeps of a block: its hash, the hash of its parent, the Merkle root of its
+ * transactions and its height, about a hundred bytes. The block hash does not commit to the
+ * Merkle root (it is the hash of the previous hash and the raw transactions, see
+ * {@link Block#getRawBlock()}), so a header's root is as trustworthy as the node that served it.
+ */
+public class BlockHeader {
+
+    private final byte[] hash;
+    private final byte[] prevBlockHash;
+    private final byte[] merkleRoot;
+    private final int height;
+
+    public BlockHeader(byte[] hash, byte[] prevBlockHash, byte[] merkleRoot, int height) {
+        this.hash = hash;
+        this.prevBlockHash = prevBlockHash;
+        this.merkleRoot = merkleRoot;
+        this.height = height;
+    }
+
+    /** @return the header of {@code block} at {@code height}, with the Merkle root of its transactions */
+    public static BlockHeader of(Block block, int height) {
+        return new BlockHeader(block.getHash(), block.getPrevBlockHash(), MerkleTree.root(txHashes(block)), height);
+    }
+
+    /** @return the hashes of the transactions of {@code block}, the coinbase excluded, in block order */
+    public static List<byte[]> txHashes(Block block) {
+        List<byte[]> txHashes = new ArrayList<>(block.getTransactions().size());
+        for (Transaction tx : block.getTransactions()) {
+            txHashes.add(tx.getHash());
+        }
+        return txHashes;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public byte[] getPrevBlockHash() {
+        return prevBlockHash;
+    }
+
+    public byte[] getMerkleRoot() {
+        return merkleRoot;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Validates the transactions of a block against the UTXOPool of its parent. The transactions are
+ * partitioned into groups that share no outpoints and do not spend each other's outputs; every
+ * group is then checked by its own {@code TxHandler} over a read-only view of the parent pool, so
+ * the groups can run concurrently. The result is the same as running
+ * {@code TxHandler.handleTxs} over a copy of the parent pool.
+ */
+public class BlockValidator {
+
+    /** blocks with fewer transactions than this are validated sequentially on the calling thread */
+    public static final int PARALLEL_THRESHOLD = 64;
+
+    private final UTXOPool parentPool;
+    private final boolean wholeUnits;
+
+    /** {@code parentPool} is only read, never modified */
+    public BlockValidator(UTXOPool parentPool) {
+        this(parentPool, false);
+    }
+
+    /** Same as above, checking values as whole numbers of base units if {@code wholeUnits} is true */
+    public BlockValidator(UTXOPool parentPool, boolean wholeUnits) {
+        this.parentPool = parentPool;
+        this.wholeUnits = wholeUnits;
+    }
+
+    /**
+     * @return the UTXOPool obtained by applying all of {@code txs} on top of the parent pool, or
+     *         null if not every transaction in {@code txs} is valid
+     */
+    public UTXOPool validate(Transaction[] txs) {
+        if (txs.length < PARALLEL_THRESHOLD) {
+            UTXOPool utxoPool = new UTXOPool(parentPool);
+            Transaction[] validTxs = new TxHandler(utxoPool, wholeUnits).handleTxs(txs);
+            return (validTxs.length < txs.length) ? null : utxoPool;
+        }
+
+        List<List<Transaction>> groups = partition(txs);
+        GroupView[] views = new GroupView[groups.size()];
+        boolean allValid = IntStream.range(0, views.length).parallel().allMatch(g -> {
+            List<Transaction> group = groups.get(g);
+            views[g] = new GroupView(parentPool);
+            Transaction[] validTxs = new TxHandler(views[g], wholeUnits).handleTxs(group.toArray(new Transaction[0]));
+            return validTxs.length == group.size();
+        });
+        if (!allValid) {
+            return null;
+        }
+
+        // Groups touch disjoint outpoints, so their changes can be merged in any order
+        List<UTXO> removed = new ArrayList<>();
+        Map<UTXO, Transaction.Output> added = new HashMap<>();
+        for (GroupView view : views) {
+            removed.addAll(view.removed);
+            added.putAll(view.added);
+        }
+        UTXOPool utxoPool = new UTXOPool(parentPool);
+        utxoPool.applyUpdate(removed, added);
+        return utxoPool;
+    }
+
+    /**
+     * Splits {@code txs} into groups such that two transactions end up in the same group if they
+     * claim the same outpoint, share a hash, or one spends an output of the other.
+     */
+    static List<List<Transaction>> partition(Transaction[] txs) {
+        int[] parent = new int[txs.length];
+        for (int i = 0; i < txs.length; i++) {
+            parent[i] = i;
+        }
+
+        Map<ByteArrayWrapper, Integer> txIndexByHash = new HashMap<>();
+        for (int i = 0; i < txs.length; i++) {
+            Integer other = txIndexByHash.putIfAbsent(new ByteArrayWrapper(txs[i].getHash()), i);
+            if (other != null) {
+                union(parent, i, other);
+            }
+        }
+
+        Map<UTXO, Integer> claimedBy = new HashMap<>();
+        for (int i = 0; i < txs.length; i++) {
+            for (Transaction.Input input : txs[i].getInputs()) {
+                Integer other = claimedBy.putIfAbsent(new UTXO(input.prevTxHash, input.outputIndex), i);
+                if (other != null) {
+                    union(parent, i, other);
+                }
+
+                Integer creator = txIndexByHash.get(new ByteArrayWrapper(input.prevTxHash));
+                if (creator != null) {
+                    union(parent, i, creator);
+                }
+            }
+        }
+
+        Map<Integer, List<Transaction>> groupsByRoot = new HashMap<>();
+        for (int i = 0; i < txs.length; i++) {
+            groupsByRoot.computeIfAbsent(find(parent, i), (k) -> new ArrayList<>()).add(txs[i]);
+        }
+        return new ArrayList<>(groupsByRoot.values());
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /**
+     * The parent pool as one group sees it: lookups read through to the parent, and the group's
+     * own additions and removals are recorded here, leaving the parent untouched.
+     */
+    private static class GroupView implements UTXOLookup.Mutable {
+        private final UTXOPool parent;
+        private final HashMap<UTXO, Transaction.Output> added = new HashMap<>();
+        private final HashSet<UTXO> removed = new HashSet<>();
+
+        GroupView(UTXOPool parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public void addUTXO(UTXO utxo, Transaction.Output txOut) {
+            added.put(utxo, txOut);
+        }
+
+        @Override
+        public void removeUTXO(UTXO utxo) {
+            added.remove(utxo);
+            if (parent.contains(utxo)) {
+                removed.add(utxo);
+            }
+        }
+
+        @Override
+        public Transaction.Output getTxOutput(UTXO ut) {
+            Transaction.Output txOut = added.get(ut);
+            if (txOut != null || removed.contains(ut)) {
+                return txOut;
+            }
+            return parent.getTxOutput(ut);
+        }
+
+        @Override
+        public boolean mightContain(byte[] txHash, int index) {
+            // outputs the group removed are still reported as maybe there, which getTxOutput sorts out
+            return (!added.isEmpty() && added.containsKey(new UTXO(txHash, index)))
+                    || parent.mightContain(txHash, index);
+        }
+    }
+}
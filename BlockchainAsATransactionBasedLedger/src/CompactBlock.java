@@ -0,0 +1,360 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A block as relayed to peers that most likely hold its transactions already: the header, the
+ * coinbase address and a short ID per transaction instead of the transaction itself. A short ID
+ * is the SipHash-2-4 of the transaction hash, truncated to {@link #SHORT_ID_BYTES} bytes, keyed by
+ * the previous block hash and a salt the sender picks per block so that collisions cannot be
+ * prepared in advance. Transactions the sender expects peers to lack can be sent in full
+ * ("prefilled").
+ *
+ * A receiver calls {@link #reconstruct} with its transaction pool, asks the sender for the
+ * transactions still missing ({@link #getTransactions(Block, int[])}) and completes the block
+ * with them. The completed block's hash is checked, so a short ID collision costs a fallback to
+ * the full block rather than a wrong one.
+ */
+public class CompactBlock {
+
+    public static final int SHORT_ID_BYTES = 6;
+
+    private static final long SHORT_ID_MASK = (1L << (8 * SHORT_ID_BYTES)) - 1;
+
+    private final byte[] blockHash;
+    private final byte[] prevBlockHash;
+    private final byte[] coinbaseAddress;
+    private final long salt;
+    private final long[] shortIds;
+    private final int[] prefilledIndexes;
+    private final Transaction[] prefilled;
+
+    private final long k0;
+    private final long k1;
+
+    /**
+     * Compacts {@code block}, sending the transactions at {@code prefilledIndexes} (ascending) in full
+     * and a short ID for every other one.
+     */
+    public CompactBlock(Block block, long salt, int... prefilledIndexes) {
+        this.blockHash = block.getHash();
+        this.prevBlockHash = block.getPrevBlockHash();
+        this.coinbaseAddress = block.getCoinbase().getOutput(0).addressEntry().getEncoded();
+        this.salt = salt;
+        this.prefilledIndexes = prefilledIndexes.clone();
+        this.prefilled = new Transaction[prefilledIndexes.length];
+
+        long[] key = siphashKey(prevBlockHash, salt);
+        this.k0 = key[0];
+        this.k1 = key[1];
+
+        List<Transaction> txs = block.getTransactions();
+        this.shortIds = new long[txs.size() - prefilledIndexes.length];
+        int next = 0;
+        int p = 0;
+        for (int i = 0; i < txs.size(); i++) {
+            if (p < prefilledIndexes.length && prefilledIndexes[p] == i) {
+                prefilled[p++] = txs.get(i);
+            } else {
+                shortIds[next++] = shortId(k0, k1, txs.get(i).getHash());
+            }
+        }
+        if (p != prefilledIndexes.length) {
+            throw new IllegalArgumentException("prefilled indexes must be ascending and within the block");
+        }
+    }
+
+    private CompactBlock(byte[] blockHash, byte[] prevBlockHash, byte[] coinbaseAddress, long salt,
+                         long[] shortIds, int[] prefilledIndexes, Transaction[] prefilled) {
+        this.blockHash = blockHash;
+        this.prevBlockHash = prevBlockHash;
+        this.coinbaseAddress = coinbaseAddress;
+        this.salt = salt;
+        this.shortIds = shortIds;
+        this.prefilledIndexes = prefilledIndexes;
+        this.prefilled = prefilled;
+        long[] key = siphashKey(prevBlockHash, salt);
+        this.k0 = key[0];
+        this.k1 = key[1];
+    }
+
+    public byte[] getBlockHash() {
+        return blockHash;
+    }
+
+    public byte[] getPrevBlockHash() {
+        return prevBlockHash;
+    }
+
+    /** @return the number of transactions in the block, not counting the coinbase */
+    public int numTransactions() {
+        return shortIds.length + prefilled.length;
+    }
+
+    /** @return the short ID of the transaction with hash {@code txHash} in this block */
+    public long shortId(byte[] txHash) {
+        return shortId(k0, k1, txHash);
+    }
+
+    private static long shortId(long k0, long k1, byte[] txHash) {
+        return siphash24(k0, k1, txHash) & SHORT_ID_MASK;
+    }
+
+    /**
+     * <pre>
+     * u16 length, block hash | u16 length, previous block hash | u16 length, coinbase address
+     * long salt | int n, n x 6-byte short ID | int m, m x (int index, int length, transaction wire format)
+     * </pre>
+     */
+    public byte[] toWire() {
+        List<byte[]> prefilledWire = new ArrayList<>(prefilled.length);
+        int length = 3 * Short.BYTES + blockHash.length + lengthOf(prevBlockHash) + coinbaseAddress.length
+                + Long.BYTES + Integer.BYTES + shortIds.length * SHORT_ID_BYTES + Integer.BYTES;
+        for (Transaction tx : prefilled) {
+            byte[] wire = tx.toWire();
+            prefilledWire.add(wire);
+            length += 2 * Integer.BYTES + wire.length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        putBytes(buf, blockHash);
+        putBytes(buf, prevBlockHash);
+        putBytes(buf, coinbaseAddress);
+        buf.putLong(salt);
+        buf.putInt(shortIds.length);
+        for (long shortId : shortIds) {
+            buf.putShort((short) (shortId >>> 32));
+            buf.putInt((int) shortId);
+        }
+        buf.putInt(prefilled.length);
+        for (int p = 0; p < prefilled.length; p++) {
+            buf.putInt(prefilledIndexes[p]);
+            buf.putInt(prefilledWire.get(p).length);
+            buf.put(prefilledWire.get(p));
+        }
+        return buf.array();
+    }
+
+    /**
+     * Reads a compact block written by {@link #toWire()} from the position of {@code buf} onwards.
+     *
+     * @throws IllegalArgumentException if the bytes are not a compact block
+     */
+    public static CompactBlock fromWire(ByteBuffer buf) {
+        try {
+            byte[] blockHash = getBytes(buf);
+            byte[] prevBlockHash = getBytes(buf);
+            byte[] coinbaseAddress = getBytes(buf);
+            long salt = buf.getLong();
+            int n = buf.getInt();
+            if (n < 0 || (long) n * SHORT_ID_BYTES > buf.remaining()) {
+                throw new IllegalArgumentException("bad short ID count " + n);
+            }
+            long[] shortIds = new long[n];
+            for (int i = 0; i < n; i++) {
+                shortIds[i] = ((buf.getShort() & 0xffffL) << 32) | (buf.getInt() & 0xffffffffL);
+            }
+            int m = buf.getInt();
+            if (m < 0 || (long) m * 2 * Integer.BYTES > buf.remaining()) {
+                throw new IllegalArgumentException("bad prefilled count " + m);
+            }
+            int[] prefilledIndexes = new int[m];
+            Transaction[] prefilled = new Transaction[m];
+            for (int p = 0; p < m; p++) {
+                prefilledIndexes[p] = buf.getInt();
+                if (prefilledIndexes[p] < 0 || prefilledIndexes[p] >= n + m
+                        || (p > 0 && prefilledIndexes[p] <= prefilledIndexes[p - 1])) {
+                    throw new IllegalArgumentException("bad prefilled index " + prefilledIndexes[p]);
+                }
+                int length = buf.getInt();
+                ByteBuffer tx = buf.slice(buf.position(), length);
+                buf.position(buf.position() + length);
+                prefilled[p] = TransactionView.wrap(tx).materialize();
+            }
+            return new CompactBlock(blockHash, prevBlockHash, coinbaseAddress, salt, shortIds, prefilledIndexes, prefilled);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated compact block", e);
+        }
+    }
+
+    /**
+     * Fills in the block's transactions from {@code txPool}. A short ID that matches no pooled
+     * transaction, or more than one, leaves its transaction missing.
+     */
+    public Reconstruction reconstruct(TransactionPool.Snapshot txPool) {
+        Transaction[] txs = new Transaction[numTransactions()];
+        int[] slotOf = new int[shortIds.length];
+        Map<Long, Integer> slots = new HashMap<>(shortIds.length * 4 / 3 + 1);
+        int next = 0;
+        int p = 0;
+        for (int i = 0; i < txs.length; i++) {
+            if (p < prefilled.length && prefilledIndexes[p] == i) {
+                txs[i] = prefilled[p++];
+            } else {
+                slotOf[next] = i;
+                // two transactions of the block sharing a short ID are both fetched in full
+                if (slots.putIfAbsent(shortIds[next], i) != null) {
+                    slots.put(shortIds[next], -1);
+                }
+                next++;
+            }
+        }
+
+        boolean[] ambiguous = new boolean[txs.length];
+        txPool.stream().forEach(tx -> {
+            Integer slot = slots.get(shortId(tx.getHash()));
+            if (slot == null || slot < 0) {
+                return;
+            }
+            if (txs[slot] != null && !Arrays.equals(txs[slot].getHash(), tx.getHash())) {
+                ambiguous[slot] = true;
+            }
+            txs[slot] = tx;
+        });
+
+        int[] missing = new int[slotOf.length];
+        int numMissing = 0;
+        for (int i : slotOf) {
+            if (txs[i] == null || ambiguous[i]) {
+                txs[i] = null;
+                missing[numMissing++] = i;
+            }
+        }
+        return new Reconstruction(txs, Arrays.copyOf(missing, numMissing));
+    }
+
+    /** @return the transactions of {@code block} at {@code indexes}, for a peer that could not find them */
+    public static List<Transaction> getTransactions(Block block, int[] indexes) {
+        List<Transaction> txs = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            txs.add(block.getTransaction(index));
+        }
+        return txs;
+    }
+
+    /** A block being rebuilt from a compact block; complete once the missing transactions are in */
+    public final class Reconstruction {
+        private final Transaction[] txs;
+        private final int[] missing;
+
+        private Reconstruction(Transaction[] txs, int[] missing) {
+            this.txs = txs;
+            this.missing = missing;
+        }
+
+        /** @return the indexes of the transactions that were not found, in ascending order */
+        public int[] getMissing() {
+            return missing.clone();
+        }
+
+        public boolean isComplete() {
+            return missing.length == 0;
+        }
+
+        /**
+         * @return the block, with {@code missingTxs} (in the order of {@link #getMissing()}) in
+         *         place of the transactions that were not found, or null if its hash does not
+         *         match because a short ID picked the wrong transaction or the sender sent wrong ones
+         */
+        public Block complete(List<Transaction> missingTxs) {
+            if (missingTxs.size() != missing.length) {
+                throw new IllegalArgumentException(missing.length + " transactions missing, got " + missingTxs.size());
+            }
+            Transaction[] filled = txs.clone();
+            for (int m = 0; m < missing.length; m++) {
+                filled[missing[m]] = missingTxs.get(m);
+            }
+            PublicKey coinbase = AddressTable.get().entryForEncoded(ByteBuffer.wrap(coinbaseAddress)).key;
+            Block block = new Block(prevBlockHash, coinbase);
+            for (Transaction tx : filled) {
+                block.addTransaction(tx);
+            }
+            block.finalize();
+            return Arrays.equals(block.getHash(), blockHash) ? block : null;
+        }
+    }
+
+    private static int lengthOf(byte[] bytes) {
+        return (bytes == null) ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] bytes) {
+        buf.putShort((short) lengthOf(bytes));
+        if (bytes != null) {
+            buf.put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buf) {
+        int length = buf.getShort() & 0xffff;
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /** @return the two SipHash key words: the first 16 bytes of SHA-256(prevBlockHash || salt) */
+    private static long[] siphashKey(byte[] prevBlockHash, long salt) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            if (prevBlockHash != null) {
+                md.update(prevBlockHash);
+            }
+            md.update(ByteBuffer.allocate(Long.BYTES).putLong(salt).array());
+            ByteBuffer digest = ByteBuffer.wrap(md.digest()).order(ByteOrder.LITTLE_ENDIAN);
+            return new long[] {digest.getLong(), digest.getLong()};
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** SipHash-2-4 of {@code data} under the key (k0, k1) */
+    static long siphash24(long k0, long k1, byte[] data) {
+        long[] v = {
+            0x736f6d6570736575L ^ k0, 0x646f72616e646f6dL ^ k1, 0x6c7967656e657261L ^ k0, 0x7465646279746573L ^ k1
+        };
+        int blocks = data.length & ~7;
+        for (int i = 0; i < blocks; i += 8) {
+            compress(v, littleEndianLong(data, i, 8), 2);
+        }
+        compress(v, ((long) data.length << 56) | littleEndianLong(data, blocks, data.length - blocks), 2);
+        v[2] ^= 0xff;
+        sipRounds(v, 4);
+        return v[0] ^ v[1] ^ v[2] ^ v[3];
+    }
+
+    private static void compress(long[] v, long m, int rounds) {
+        v[3] ^= m;
+        sipRounds(v, rounds);
+        v[0] ^= m;
+    }
+
+    private static void sipRounds(long[] v, int rounds) {
+        long v0 = v[0], v1 = v[1], v2 = v[2], v3 = v[3];
+        for (int r = 0; r < rounds; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v[0] = v0; v[1] = v1; v[2] = v2; v[3] = v3;
+    }
+
+    private static long littleEndianLong(byte[] data, int offset, int length) {
+        long m = 0;
+        for (int b = 0; b < length; b++) {
+            m |= (data[offset + b] & 0xffL) << (8 * b);
+        }
+        return m;
+    }
+}
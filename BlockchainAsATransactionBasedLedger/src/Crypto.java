@@ -1,36 +1,86 @@
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Crypto {
 
+    /** the schemes addresses may use, asked in order; the first to accept a key verifies under it */
+    private static final List<SignatureScheme> SCHEMES =
+            new CopyOnWriteArrayList<>(List.of(SignatureScheme.RSA, SignatureScheme.ED25519));
+
+    /**
+     * Makes {@code scheme} available to addresses, ahead of the schemes already known. Keys that
+     * were interned before are not affected.
+     */
+    public static void registerScheme(SignatureScheme scheme) {
+        SCHEMES.add(0, scheme);
+    }
+
+    /** @return the scheme that verifies signatures under {@code key}, or null if none accepts it */
+    public static SignatureScheme schemeFor(PublicKey key) {
+        for (SignatureScheme scheme : SCHEMES) {
+            if (scheme.accepts(key)) {
+                return scheme;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the scheme of the key whose X.509 encoding is between the position and limit of
+     *         {@code encoding}, or null if none accepts it
+     */
+    public static SignatureScheme schemeForEncoded(ByteBuffer encoding) {
+        for (SignatureScheme scheme : SCHEMES) {
+            if (scheme.acceptsEncoded(encoding)) {
+                return scheme;
+            }
+        }
+        return null;
+    }
+
     /**
      * @return true is {@code signature} is a valid digital signature of {@code message} under the
-     *         key {@code pubKey}. Internally, this uses RSA signature, but the student does not
-     *         have to deal with any of the implementation details of the specific signature
-     *         algorithm
+     *         key {@code pubKey}. The signature scheme (RSA or Ed25519) follows from the type of
+     *         the key, but the student does not have to deal with any of the implementation
+     *         details of the specific signature algorithm
      */
     public static boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
-        Signature sig = null;
-        try {
-            sig = Signature.getInstance("SHA256withRSA");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
+        return verifySignature(AddressTable.get().entryFor(pubKey), message, signature);
+    }
+
+    /** Same as above for an address entry, whose initialised verifier is reused */
+    public static boolean verifySignature(AddressTable.Entry address, byte[] message, byte[] signature) {
         try {
-            sig.initVerify(pubKey);
-        } catch (InvalidKeyException e) {
+            boolean valid = address.verify(message, signature);
+            LedgerMetrics.get().signatureChecked(valid);
+            return valid;
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
             e.printStackTrace();
         }
+        LedgerMetrics.get().signatureChecked(false);
+        return false;
+    }
+
+    /**
+     * Same as above for a message held in two buffers, {@code message} followed by
+     * {@code messageTail}, so that signed data can be checked where it lies in a serialized
+     * transaction. The buffers' positions are left alone.
+     */
+    public static boolean verifySignature(AddressTable.Entry address, ByteBuffer message, ByteBuffer messageTail,
+                                          ByteBuffer signature) {
         try {
-            sig.update(message);
-            return sig.verify(signature);
-        } catch (SignatureException e) {
+            boolean valid = address.verify(message, messageTail, signature);
+            LedgerMetrics.get().signatureChecked(valid);
+            return valid;
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
             e.printStackTrace();
         }
+        LedgerMetrics.get().signatureChecked(false);
         return false;
-
     }
 }
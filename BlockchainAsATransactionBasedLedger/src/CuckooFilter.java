@@ -0,0 +1,176 @@
+/**
+ * A cuckoo filter over 64-bit hashes: it answers "maybe present" or "certainly absent", and unlike
+ * a Bloom filter it can remove what it holds. Every hash is kept as a fingerprint in one of two
+ * buckets of four slots, the second bucket being derived from the first and the fingerprint
+ * alone, so a stored fingerprint can be moved to make room without knowing its hash.
+ *
+ * <p>A lookup compares against the eight slots of both buckets, so the false positive rate is
+ * about {@code 8 * load / 2^f} for f-bit fingerprints. Only remove a hash that was added; adding a
+ * hash twice stores it twice. If {@link #add} fails the filter has dropped some fingerprint and
+ * must be rebuilt, larger, from the set it stands for. Not safe for concurrent use, though a
+ * lookup racing a write cannot fail, only give a wrong answer.
+ */
+final class CuckooFilter {
+
+    static final int SLOTS_PER_BUCKET = 4;
+
+    /** how many fingerprints an insertion may move before giving up */
+    private static final int MAX_KICKS = 500;
+
+    private final int fingerprintBits;
+    private final int fingerprintMask;
+    private final int bucketMask;
+
+    /** bucket b occupies slots[4b .. 4b + 3]; 0 marks an empty slot */
+    private final int[] slots;
+    private int size;
+    private int kickState = 0x2545F491;
+
+    /** Creates a filter with room for about {@code capacity} hashes, rounded up to whole buckets */
+    CuckooFilter(int capacity, int fingerprintBits) {
+        if (fingerprintBits < 1 || fingerprintBits > 32) {
+            throw new IllegalArgumentException("fingerprintBits must be between 1 and 32: " + fingerprintBits);
+        }
+        int buckets = Integer.highestOneBit(Math.max(1, (capacity + SLOTS_PER_BUCKET - 1) / SLOTS_PER_BUCKET - 1)) << 1;
+        this.fingerprintBits = fingerprintBits;
+        this.fingerprintMask = (fingerprintBits == 32) ? -1 : (1 << fingerprintBits) - 1;
+        this.bucketMask = buckets - 1;
+        this.slots = new int[buckets * SLOTS_PER_BUCKET];
+    }
+
+    private CuckooFilter(CuckooFilter other) {
+        this.fingerprintBits = other.fingerprintBits;
+        this.fingerprintMask = other.fingerprintMask;
+        this.bucketMask = other.bucketMask;
+        this.slots = other.slots.clone();
+        this.size = other.size;
+        this.kickState = other.kickState;
+    }
+
+    /**
+     * @return the fingerprint length that keeps the false positive rate of a full filter at or
+     *         below {@code falsePositiveRate}
+     */
+    static int fingerprintBits(double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("false positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        int bits = (int) Math.ceil(Math.log(2 * SLOTS_PER_BUCKET / falsePositiveRate) / Math.log(2));
+        return Math.max(1, Math.min(32, bits));
+    }
+
+    CuckooFilter copy() {
+        return new CuckooFilter(this);
+    }
+
+    /**
+     * Adds {@code hash}, moving other fingerprints to their alternate bucket if both of its
+     * buckets are full
+     *
+     * @return false if no room was found, in which case some other fingerprint has been dropped
+     */
+    boolean add(long hash) {
+        int fingerprint = fingerprint(hash);
+        int bucket = bucket(hash);
+        size++;
+        if (insert(bucket, fingerprint) || insert(alternate(bucket, fingerprint), fingerprint)) {
+            return true;
+        }
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            kickState ^= kickState << 13;
+            kickState ^= kickState >>> 17;
+            kickState ^= kickState << 5;
+            int slot = bucket * SLOTS_PER_BUCKET + (kickState & (SLOTS_PER_BUCKET - 1));
+            int evicted = slots[slot];
+            slots[slot] = fingerprint;
+            fingerprint = evicted;
+            bucket = alternate(bucket, fingerprint);
+            if (insert(bucket, fingerprint)) {
+                return true;
+            }
+        }
+        size--;
+        return false;
+    }
+
+    /** @return false if {@code hash} was certainly never added, or has been removed as often as added */
+    boolean mightContain(long hash) {
+        int fingerprint = fingerprint(hash);
+        int bucket = bucket(hash);
+        return find(bucket, fingerprint) >= 0 || find(alternate(bucket, fingerprint), fingerprint) >= 0;
+    }
+
+    /** Removes one copy of {@code hash}, which must have been added */
+    boolean remove(long hash) {
+        int fingerprint = fingerprint(hash);
+        int bucket = bucket(hash);
+        int slot = find(bucket, fingerprint);
+        if (slot < 0) {
+            slot = find(alternate(bucket, fingerprint), fingerprint);
+        }
+        if (slot < 0) {
+            return false;
+        }
+        slots[slot] = 0;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int fingerprintBits() {
+        return fingerprintBits;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /** @return the false positive rate to expect at the current load */
+    double expectedFalsePositiveRate() {
+        double load = size / (double) slots.length;
+        return 1 - Math.pow(1 - Math.pow(2, -fingerprintBits), 2 * SLOTS_PER_BUCKET * load);
+    }
+
+    /** @return the heap taken by the slots */
+    long sizeInBytes() {
+        return (long) slots.length * Integer.BYTES;
+    }
+
+    private int fingerprint(long hash) {
+        int fingerprint = (int) (hash >>> 32) & fingerprintMask;
+        return (fingerprint == 0) ? 1 : fingerprint;
+    }
+
+    private int bucket(long hash) {
+        return (int) hash & bucketMask;
+    }
+
+    /** The alternate bucket; applying it twice gives back the first */
+    private int alternate(int bucket, int fingerprint) {
+        return (bucket ^ (fingerprint * 0x5bd1e995)) & bucketMask;
+    }
+
+    private boolean insert(int bucket, int fingerprint) {
+        int base = bucket * SLOTS_PER_BUCKET;
+        for (int i = base; i < base + SLOTS_PER_BUCKET; i++) {
+            if (slots[i] == 0) {
+                slots[i] = fingerprint;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int find(int bucket, int fingerprint) {
+        int base = bucket * SLOTS_PER_BUCKET;
+        for (int i = base; i < base + SLOTS_PER_BUCKET; i++) {
+            if (slots[i] == fingerprint) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A headers-only view of the block chain for light clients. It checks that every header extends a
+ * known header at the next height, follows the highest header as the tip (the first one seen on a
+ * tie, like {@link BlockChain}) and answers whether a transaction is confirmed deep enough given a
+ * {@link MerkleProof} from a full node. It keeps every header it accepts, about a hundred bytes
+ * each, and no transactions or UTXOs.
+ */
+public class HeaderChain {
+
+    private final Map<ByteArrayWrapper, BlockHeader> headers = new HashMap<>();
+    private BlockHeader tip;
+
+    /** create a header chain holding just {@code genesis}, which is trusted as it is */
+    public HeaderChain(BlockHeader genesis) {
+        headers.put(new ByteArrayWrapper(genesis.getHash()), genesis);
+        tip = genesis;
+    }
+
+    /**
+     * Add {@code header} if its parent is known and it is exactly one block higher.
+     *
+     * @return true if the header was added
+     */
+    public boolean addHeader(BlockHeader header) {
+        if (header.getHash() == null || header.getPrevBlockHash() == null || header.getMerkleRoot() == null) {
+            return false;
+        }
+        ByteArrayWrapper id = new ByteArrayWrapper(header.getHash());
+        if (headers.containsKey(id)) {
+            return false;
+        }
+        BlockHeader parent = headers.get(new ByteArrayWrapper(header.getPrevBlockHash()));
+        if (parent == null || header.getHeight() != parent.getHeight() + 1) {
+            return false;
+        }
+        headers.put(id, header);
+        if (header.getHeight() > tip.getHeight()) {
+            tip = header;
+        }
+        return true;
+    }
+
+    public BlockHeader getTip() {
+        return tip;
+    }
+
+    public int getHeight() {
+        return tip.getHeight();
+    }
+
+    /** @return the header with hash {@code blockHash}, or null if it is not known */
+    public BlockHeader getHeader(byte[] blockHash) {
+        return headers.get(new ByteArrayWrapper(blockHash));
+    }
+
+    /** @return the number of headers held */
+    public int size() {
+        return headers.size();
+    }
+
+    /**
+     * @return the number of blocks from {@code blockHash} to the tip, both included, if that block
+     *         is on the chain ending at the tip; 0 if it is on a side branch or not known
+     */
+    public int getConfirmations(byte[] blockHash) {
+        BlockHeader header = getHeader(blockHash);
+        if (header == null) {
+            return 0;
+        }
+        BlockHeader current = tip;
+        while (current != null && current.getHeight() > header.getHeight()) {
+            current = headers.get(new ByteArrayWrapper(current.getPrevBlockHash()));
+        }
+        return (current == header) ? tip.getHeight() - header.getHeight() + 1 : 0;
+    }
+
+    /**
+     * @return true if {@code proof} shows that the transaction with hash {@code txHash} is in a
+     *         block on the chain ending at the tip with at least {@code minConfirmations}
+     *         confirmations (1 meaning it is in the tip)
+     */
+    public boolean isConfirmed(byte[] txHash, MerkleProof proof, int minConfirmations) {
+        BlockHeader header = getHeader(proof.getBlockHash());
+        if (header == null || !proof.verify(txHash, header.getMerkleRoot())) {
+            return false;
+        }
+        return getConfirmations(header.getHash()) >= minConfirmations;
+    }
+}
@@ -0,0 +1,80 @@
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * A {@link SignatureScheme} provided by the JDK's own security providers, recognising its keys by
+ * the algorithm identifier at the start of their X.509 encoding.
+ */
+final class JcaSignatureScheme implements SignatureScheme {
+
+    private static final byte DER_SEQUENCE = 0x30;
+    private static final byte DER_OID = 0x06;
+
+    private final String name;
+    private final String keyAlgorithm;
+    private final String signatureAlgorithm;
+
+    /** the contents of the key algorithm's object identifier, without tag and length */
+    private final byte[] oid;
+
+    JcaSignatureScheme(String name, String keyAlgorithm, String signatureAlgorithm, byte[] oid) {
+        this.name = name;
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.oid = oid;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public boolean acceptsEncoded(ByteBuffer encoding) {
+        // SubjectPublicKeyInfo ::= SEQUENCE { algorithm SEQUENCE { algorithm OID, ... }, ... }
+        int at = skipHeader(encoding, encoding.position(), DER_SEQUENCE);
+        at = skipHeader(encoding, at, DER_SEQUENCE);
+        if (at < 0 || at + 2 + oid.length > encoding.limit()
+                || encoding.get(at) != DER_OID || encoding.get(at + 1) != oid.length) {
+            return false;
+        }
+        return encoding.slice(at + 2, oid.length).equals(ByteBuffer.wrap(oid));
+    }
+
+    @Override
+    public PublicKey decode(byte[] encoding) throws InvalidKeySpecException {
+        try {
+            return KeyFactory.getInstance(keyAlgorithm).generatePublic(new X509EncodedKeySpec(encoding));
+        } catch (NoSuchAlgorithmException e) {
+            throw new InvalidKeySpecException(keyAlgorithm + " keys are not supported by this JDK", e);
+        }
+    }
+
+    @Override
+    public Signature newVerifier(PublicKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+        Signature sig = Signature.getInstance(signatureAlgorithm);
+        sig.initVerify(key);
+        return sig;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /** @return the offset of the contents of the DER element at {@code at} if it has tag {@code tag}, else -1 */
+    private static int skipHeader(ByteBuffer der, int at, byte tag) {
+        if (at < 0 || at + 2 > der.limit() || der.get(at) != tag) {
+            return -1;
+        }
+        int length = der.get(at + 1) & 0xff;
+        // short form holds the length itself, long form the number of length bytes that follow
+        return (length < 0x80) ? at + 2 : at + 2 + (length & 0x7f);
+    }
+}
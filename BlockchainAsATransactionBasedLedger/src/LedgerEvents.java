@@ -0,0 +1,83 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events emitted by {@code LedgerMetrics}. Each event keeps its
+ * {@code EventType} so callers can check whether a recording wants it before allocating one.
+ */
+public final class LedgerEvents {
+
+    private LedgerEvents() {
+    }
+
+    @Name("ledger.BlockConnect")
+    @Label("Block Connect")
+    @Category({"Ledger", "Blocks"})
+    @Description("A block passed to BlockChain.addBlock, whether it was connected or rejected")
+    @StackTrace(false)
+    public static class BlockConnectEvent extends Event {
+        static final EventType TYPE = EventType.getEventType(BlockConnectEvent.class);
+
+        @Label("Height")
+        public int height;
+
+        @Label("Transactions")
+        public int txCount;
+
+        @Label("Connected")
+        public boolean connected;
+
+        @Label("Reject Reason")
+        public String rejectReason;
+
+        @Label("UTXO Set Size")
+        public int utxoCount;
+
+        @Label("Validation Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long validationTime;
+    }
+
+    @Name("ledger.TxBatchValidation")
+    @Label("Transaction Batch Validation")
+    @Category({"Ledger", "Transactions"})
+    @Description("A call to handleTxs on TxHandler or MaxFeeTxHandler")
+    @StackTrace(false)
+    public static class TxBatchValidationEvent extends Event {
+        static final EventType TYPE = EventType.getEventType(TxBatchValidationEvent.class);
+
+        @Label("Handler")
+        public String handler;
+
+        @Label("Proposed")
+        public int proposed;
+
+        @Label("Accepted")
+        public int accepted;
+
+        @Label("Validation Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long validationTime;
+    }
+
+    @Name("ledger.BlocksPruned")
+    @Label("Blocks Pruned")
+    @Category({"Ledger", "Blocks"})
+    @Description("Blocks dropped from the in-memory block tree")
+    @StackTrace(false)
+    public static class BlocksPrunedEvent extends Event {
+        static final EventType TYPE = EventType.getEventType(BlocksPrunedEvent.class);
+
+        @Label("Height")
+        public int height;
+
+        @Label("Blocks")
+        public int blocks;
+    }
+}
@@ -0,0 +1,430 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters, gauges and latency histograms for the hot paths of the ledger, exposed over JMX and,
+ * while a recording asks for them, as JDK Flight Recorder events ({@code LedgerEvents}).
+ *
+ * <p>
+ * The recording methods are called unconditionally from {@code BlockChain}, the handlers and the
+ * pools. When metrics are disabled every one of them returns after a single volatile read, and
+ * {@link #startTimer()} returns 0 without reading the clock; timed methods ignore a start of 0.
+ * Nothing allocates on the recording path unless a JFR recording has enabled the corresponding
+ * event. Metrics are enabled unless the
+ * system property {@code ledger.metrics} is {@code false}.
+ *
+ * <p>
+ * The metrics are shared by every chain in the process, so they hold sums over all of them; what
+ * belongs to one chain, like the height of its tip, is kept by its {@code BlockChain}.
+ */
+public final class LedgerMetrics implements LedgerMetricsMXBean {
+
+    public static final String OBJECT_NAME = "ledger:type=LedgerMetrics";
+
+    /** Why {@code BlockChain.addBlock} turned a block down */
+    public enum BlockRejectReason {
+        /** the block has no previous block hash */
+        NO_PARENT,
+        /** the previous block is not in the block tree */
+        UNKNOWN_PARENT,
+        /** the block would be at or below {@code maxHeight - CUT_OFF_AGE} */
+        BELOW_CUT_OFF,
+        /** not every transaction in the block is valid */
+        INVALID_TRANSACTIONS
+    }
+
+    private static final LedgerMetrics INSTANCE = new LedgerMetrics();
+
+    private volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("ledger.metrics"));
+    private volatile boolean registered;
+
+    private final LongAdder blocksConnected = new LongAdder();
+    private final LongAdder[] blocksRejected = new LongAdder[BlockRejectReason.values().length];
+    private final LongAdder blocksPruned = new LongAdder();
+    private final LongAdder transactionsAdmitted = new LongAdder();
+    private final LongAdder transactionPoolCopies = new LongAdder();
+    private final LongAdder txValidations = new LongAdder();
+    private final LongAdder txValidationFailures = new LongAdder();
+    private final LongAdder signatureChecks = new LongAdder();
+    private final LongAdder signatureFailures = new LongAdder();
+    private final LongAdder utxoAdds = new LongAdder();
+    private final LongAdder utxoRemoves = new LongAdder();
+    private final LongAdder utxoPoolCopies = new LongAdder();
+    private final LongAdder utxoFilterRejections = new LongAdder();
+    private final LongAdder utxoFilterFalsePositives = new LongAdder();
+
+    private volatile int transactionPoolSize;
+
+    private final LatencyHistogram addBlockLatency = new LatencyHistogram();
+    private final LatencyHistogram isValidTxLatency = new LatencyHistogram();
+    private final LatencyHistogram handleTxsLatency = new LatencyHistogram();
+    private final LatencyHistogram maxFeeHandleTxsLatency = new LatencyHistogram();
+    private final LatencyHistogram utxoPoolCopyLatency = new LatencyHistogram();
+
+    private LedgerMetrics() {
+        for (int i = 0; i < blocksRejected.length; i++) {
+            blocksRejected[i] = new LongAdder();
+        }
+    }
+
+    public static LedgerMetrics get() {
+        return INSTANCE;
+    }
+
+    /** Registers the metrics with the platform MBean server under {@link #OBJECT_NAME}, once */
+    public void registerMBean() {
+        if (registered) {
+            return;
+        }
+        synchronized (this) {
+            if (registered) {
+                return;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            } catch (InstanceAlreadyExistsException e) {
+                // registered by another class loader; keep going with this instance unexposed
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            registered = true;
+        }
+    }
+
+    /** @return {@code System.nanoTime()} when metrics are enabled, 0 otherwise */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // ---- recording, called from the ledger ----
+
+    public void blockConnected(long start, int height, int txCount, int utxoCount) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        blocksConnected.increment();
+        addBlockLatency.record(elapsed);
+        if (LedgerEvents.BlockConnectEvent.TYPE.isEnabled()) {
+            LedgerEvents.BlockConnectEvent event = new LedgerEvents.BlockConnectEvent();
+            event.height = height;
+            event.txCount = txCount;
+            event.connected = true;
+            event.utxoCount = utxoCount;
+            event.validationTime = elapsed;
+            event.commit();
+        }
+    }
+
+    public void blockRejected(long start, BlockRejectReason reason, int txCount) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        blocksRejected[reason.ordinal()].increment();
+        addBlockLatency.record(elapsed);
+        if (LedgerEvents.BlockConnectEvent.TYPE.isEnabled()) {
+            LedgerEvents.BlockConnectEvent event = new LedgerEvents.BlockConnectEvent();
+            event.txCount = txCount;
+            event.connected = false;
+            event.rejectReason = reason.name();
+            event.validationTime = elapsed;
+            event.commit();
+        }
+    }
+
+    public void blocksPruned(int height, int count) {
+        if (!enabled) {
+            return;
+        }
+        blocksPruned.add(count);
+        if (LedgerEvents.BlocksPrunedEvent.TYPE.isEnabled()) {
+            LedgerEvents.BlocksPrunedEvent event = new LedgerEvents.BlocksPrunedEvent();
+            event.height = height;
+            event.blocks = count;
+            event.commit();
+        }
+    }
+
+    public void transactionAdmitted(int poolSize) {
+        if (!enabled) {
+            return;
+        }
+        transactionsAdmitted.increment();
+        transactionPoolSize = poolSize;
+    }
+
+    public void transactionPoolSize(int poolSize) {
+        if (enabled) {
+            transactionPoolSize = poolSize;
+        }
+    }
+
+    public void transactionPoolCopied() {
+        if (enabled) {
+            transactionPoolCopies.increment();
+        }
+    }
+
+    public void txValidated(long start, boolean valid) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        isValidTxLatency.record(System.nanoTime() - start);
+        txValidations.increment();
+        if (!valid) {
+            txValidationFailures.increment();
+        }
+    }
+
+    /** {@code maxFee} tells whether the batch went through {@code MaxFeeTxHandler} rather than {@code TxHandler} */
+    public void txBatchHandled(long start, boolean maxFee, int proposed, int accepted) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        (maxFee ? maxFeeHandleTxsLatency : handleTxsLatency).record(elapsed);
+        if (LedgerEvents.TxBatchValidationEvent.TYPE.isEnabled()) {
+            LedgerEvents.TxBatchValidationEvent event = new LedgerEvents.TxBatchValidationEvent();
+            event.handler = maxFee ? "MaxFeeTxHandler" : "TxHandler";
+            event.proposed = proposed;
+            event.accepted = accepted;
+            event.validationTime = elapsed;
+            event.commit();
+        }
+    }
+
+    public void signatureChecked(boolean valid) {
+        if (!enabled) {
+            return;
+        }
+        signatureChecks.increment();
+        if (!valid) {
+            signatureFailures.increment();
+        }
+    }
+
+    public void utxoAdded(int count) {
+        if (enabled) {
+            utxoAdds.add(count);
+        }
+    }
+
+    public void utxoRemoved(int count) {
+        if (enabled) {
+            utxoRemoves.add(count);
+        }
+    }
+
+    /** an outpoint lookup was answered by a UTXOPool filter alone: certainly absent */
+    public void utxoFilterRejected() {
+        if (enabled) {
+            utxoFilterRejections.increment();
+        }
+    }
+
+    /** a UTXOPool filter let an outpoint through that the table then did not have */
+    public void utxoFilterFalsePositive() {
+        if (enabled) {
+            utxoFilterFalsePositives.increment();
+        }
+    }
+
+    public void utxoPoolCopied(long start) {
+        if (!enabled || start == 0) {
+            return;
+        }
+        utxoPoolCopies.increment();
+        utxoPoolCopyLatency.record(System.nanoTime() - start);
+    }
+
+    // ---- LedgerMetricsMXBean ----
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getBlocksConnected() {
+        return blocksConnected.sum();
+    }
+
+    @Override
+    public long getBlocksRejected() {
+        long sum = 0;
+        for (LongAdder rejected : blocksRejected) {
+            sum += rejected.sum();
+        }
+        return sum;
+    }
+
+    @Override
+    public Map<String, Long> getBlocksRejectedByReason() {
+        Map<String, Long> byReason = new LinkedHashMap<>();
+        for (BlockRejectReason reason : BlockRejectReason.values()) {
+            byReason.put(reason.name(), blocksRejected[reason.ordinal()].sum());
+        }
+        return byReason;
+    }
+
+    @Override
+    public long getBlocksPruned() {
+        return blocksPruned.sum();
+    }
+
+    @Override
+    public long getTransactionsAdmitted() {
+        return transactionsAdmitted.sum();
+    }
+
+    @Override
+    public int getTransactionPoolSize() {
+        return transactionPoolSize;
+    }
+
+    @Override
+    public long getTransactionPoolCopies() {
+        return transactionPoolCopies.sum();
+    }
+
+    @Override
+    public long getTxValidations() {
+        return txValidations.sum();
+    }
+
+    @Override
+    public long getTxValidationFailures() {
+        return txValidationFailures.sum();
+    }
+
+    @Override
+    public long getSignatureChecks() {
+        return signatureChecks.sum();
+    }
+
+    @Override
+    public long getSignatureFailures() {
+        return signatureFailures.sum();
+    }
+
+    @Override
+    public long getUtxoAdds() {
+        return utxoAdds.sum();
+    }
+
+    @Override
+    public long getUtxoRemoves() {
+        return utxoRemoves.sum();
+    }
+
+    @Override
+    public long getUtxoPoolCopies() {
+        return utxoPoolCopies.sum();
+    }
+
+    @Override
+    public long getUtxoFilterRejections() {
+        return utxoFilterRejections.sum();
+    }
+
+    @Override
+    public long getUtxoFilterFalsePositives() {
+        return utxoFilterFalsePositives.sum();
+    }
+
+    @Override
+    public double getUtxoFilterFalsePositiveRate() {
+        long falsePositives = utxoFilterFalsePositives.sum();
+        long absent = falsePositives + utxoFilterRejections.sum();
+        return (absent == 0) ? 0 : falsePositives / (double) absent;
+    }
+
+    @Override
+    public Map<String, Long> getAddBlockLatency() {
+        return addBlockLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getIsValidTxLatency() {
+        return isValidTxLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getHandleTxsLatency() {
+        return handleTxsLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getMaxFeeHandleTxsLatency() {
+        return maxFeeHandleTxsLatency.snapshot();
+    }
+
+    @Override
+    public Map<String, Long> getUtxoPoolCopyLatency() {
+        return utxoPoolCopyLatency.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        blocksConnected.reset();
+        for (LongAdder rejected : blocksRejected) {
+            rejected.reset();
+        }
+        blocksPruned.reset();
+        transactionsAdmitted.reset();
+        transactionPoolCopies.reset();
+        txValidations.reset();
+        txValidationFailures.reset();
+        signatureChecks.reset();
+        signatureFailures.reset();
+        utxoAdds.reset();
+        utxoRemoves.reset();
+        utxoPoolCopies.reset();
+        utxoFilterRejections.reset();
+        utxoFilterFalsePositives.reset();
+        transactionPoolSize = 0;
+        addBlockLatency.reset();
+        isValidTxLatency.reset();
+        handleTxsLatency.reset();
+        maxFeeHandleTxsLatency.reset();
+        utxoPoolCopyLatency.reset();
+    }
+
+    /** @return a multi-line, human readable dump of every counter and histogram */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("blocks connected=").append(getBlocksConnected())
+                .append(" rejected=").append(getBlocksRejectedByReason())
+                .append(" pruned=").append(getBlocksPruned()).append('\n');
+        summary.append("transactions admitted=").append(getTransactionsAdmitted())
+                .append(" poolSize=").append(getTransactionPoolSize())
+                .append(" poolCopies=").append(getTransactionPoolCopies()).append('\n');
+        summary.append("validations=").append(getTxValidations())
+                .append(" failed=").append(getTxValidationFailures())
+                .append(" signatureChecks=").append(getSignatureChecks())
+                .append(" badSignatures=").append(getSignatureFailures()).append('\n');
+        summary.append("utxo adds=").append(getUtxoAdds())
+                .append(" removes=").append(getUtxoRemoves())
+                .append(" poolCopies=").append(getUtxoPoolCopies())
+                .append(" filterRejections=").append(getUtxoFilterRejections())
+                .append(" filterFalsePositives=").append(getUtxoFilterFalsePositives())
+                .append(String.format(" filterFpRate=%.5f", getUtxoFilterFalsePositiveRate())).append('\n');
+        summary.append("addBlock ").append(getAddBlockLatency()).append('\n');
+        summary.append("isValidTx ").append(getIsValidTxLatency()).append('\n');
+        summary.append("handleTxs ").append(getHandleTxsLatency()).append('\n');
+        summary.append("maxFeeHandleTxs ").append(getMaxFeeHandleTxsLatency()).append('\n');
+        summary.append("utxoPoolCopy ").append(getUtxoPoolCopyLatency());
+        return summary.toString();
+    }
+}
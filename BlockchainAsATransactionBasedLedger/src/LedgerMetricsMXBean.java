@@ -0,0 +1,63 @@
+import java.util.Map;
+
+/**
+ * The JMX view of {@code LedgerMetrics}, registered as {@value LedgerMetrics#OBJECT_NAME}. Latency
+ * attributes hold the count, mean and percentiles of a histogram, in nanoseconds.
+ */
+public interface LedgerMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getBlocksConnected();
+
+    long getBlocksRejected();
+
+    /** rejected blocks, keyed by {@code LedgerMetrics.BlockRejectReason} name */
+    Map<String, Long> getBlocksRejectedByReason();
+
+    long getBlocksPruned();
+
+    long getTransactionsAdmitted();
+
+    int getTransactionPoolSize();
+
+    long getTransactionPoolCopies();
+
+    long getTxValidations();
+
+    long getTxValidationFailures();
+
+    long getSignatureChecks();
+
+    long getSignatureFailures();
+
+    long getUtxoAdds();
+
+    long getUtxoRemoves();
+
+    long getUtxoPoolCopies();
+
+    /** outpoint lookups that a UTXOPool filter answered alone, as certainly absent */
+    long getUtxoFilterRejections();
+
+    /** outpoint lookups that a UTXOPool filter passed on and the table then did not find */
+    long getUtxoFilterFalsePositives();
+
+    /** the share of lookups of absent outpoints that the filters let through */
+    double getUtxoFilterFalsePositiveRate();
+
+    Map<String, Long> getAddBlockLatency();
+
+    Map<String, Long> getIsValidTxLatency();
+
+    Map<String, Long> getHandleTxsLatency();
+
+    Map<String, Long> getMaxFeeHandleTxsLatency();
+
+    Map<String, Long> getUtxoPoolCopyLatency();
+
+    /** clears every counter and histogram */
+    void reset();
+}
@@ -37,6 +37,7 @@ class Pair<K, V> {
 
 public class MaxFeeTxHandler {
     private UTXOPool utxoPool;
+    private final boolean wholeUnits;
 
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
@@ -45,7 +46,16 @@ public class MaxFeeTxHandler {
      */
     public MaxFeeTxHandler(UTXOPool utxoPool) {
         // IMPLEMENT THIS
+        this(utxoPool, false);
+    }
+
+    /**
+     * Same as above; if {@code wholeUnits} is true, values are checked as whole numbers of base
+     * units, see {@link #isValidTx(Transaction)}.
+     */
+    public MaxFeeTxHandler(UTXOPool utxoPool, boolean wholeUnits) {
         this.utxoPool = utxoPool;
+        this.wholeUnits = wholeUnits;
     }
     
     /**
@@ -56,29 +66,53 @@ public class MaxFeeTxHandler {
      * (4) all of {@code tx}s output values are non-negative, and
      * (5) the sum of {@code tx}s input values is greater than or equal to the sum of its output
      *     values; and false otherwise.
+     *
+     * Values are summed as doubles, as in {@link TxHandler}, unless the handler was made with
+     * {@code wholeUnits}; then they are checked as whole numbers of base units ({@link Amount}).
      */
     public boolean isValidTx(Transaction tx) {
+        LedgerMetrics metrics = LedgerMetrics.get();
+        long start = metrics.startTimer();
+        boolean valid;
+        try {
+            valid = checkTx(tx);
+        } catch (ArithmeticException e) {
+            valid = false;
+        }
+        metrics.txValidated(start, valid);
+        return valid;
+    }
+
+    private boolean checkTx(Transaction tx) {
         // IMPLEMENT THIS
         Set<UTXO> usedTransactions = new HashSet<>();
+        SignatureBatch signatures = new SignatureBatch();
         List<Transaction.Input> inputs = tx.getInputs();
         
         for (int  i = 0; i < inputs.size(); i++) {
             Transaction.Input input = inputs.get(i);
-            UTXO utxoId = new UTXO(input.prevTxHash, input.outputIndex);
-            
-            if (!utxoPool.contains(utxoId) ||  usedTransactions.contains(utxoId)) {
+            if (!utxoPool.mightContain(input.prevTxHash, input.outputIndex)) {
                 return false;
             }
+            UTXO utxoId = new UTXO(input.prevTxHash, input.outputIndex);
             
             Transaction.Output inputAsPrevTransactionOutput = utxoPool.getTxOutput(utxoId);
-            if (!Crypto.verifySignature(inputAsPrevTransactionOutput.address, tx.getRawDataToSign(i), input.signature)) {
+            if (inputAsPrevTransactionOutput == null || usedTransactions.contains(utxoId)) {
                 return false;
             }
             
+            tx.addSignatureCheck(i, inputAsPrevTransactionOutput.addressEntry(), signatures);
             usedTransactions.add(utxoId);
         }
         
-        return findTxnFee(tx) >= 0;
+        for (Transaction.Output output : tx.getOutputs()) {
+            if (output.value < 0) {
+                return false;
+            }
+        }
+        
+        // signatures last, as they cost more than all the other checks together
+        return findTxnFee(tx) >= 0 && signatures.verify();
     }
 
     /**
@@ -88,14 +122,19 @@ public class MaxFeeTxHandler {
      */
     public Transaction[] handleTxs(Transaction[] possibleTxs) {
         // IMPLEMENT THIS
+        long start = LedgerMetrics.get().startTimer();
         int n = possibleTxs.length;
         boolean[] validTxns = new boolean[n];
+        double[] fees = new double[n];
         
         for (int i = 0; i < n; i++) {
             validTxns[i] = isValidTx(possibleTxs[i]);
+            if (validTxns[i]) {
+                fees[i] = findTxnFee(possibleTxs[i]);
+            }
         }
         
-        List<Integer> mutuallyExclusiveValidTransactions = findMutuallyExclusiveTransactions(0, validTxns, new HashSet<UTXO>(), possibleTxs).getKey();
+        List<Integer> mutuallyExclusiveValidTransactions = findMutuallyExclusiveTransactions(0, validTxns, fees, new HashSet<UTXO>(), possibleTxs).getKey();
         
         Transaction[] result = new Transaction[mutuallyExclusiveValidTransactions.size()];
         int i = 0;
@@ -103,10 +142,11 @@ public class MaxFeeTxHandler {
             result[result.length - i - 1] = possibleTxs[txnIndex];
         }
         
+        LedgerMetrics.get().txBatchHandled(start, true, n, result.length);
         return result;
     }
     
-    private Pair<List<Integer>, Double> findMutuallyExclusiveTransactions (int i, boolean[] isValid, Set<UTXO> usedTxns, Transaction[] possibleTxs){
+    private Pair<List<Integer>, Double> findMutuallyExclusiveTransactions (int i, boolean[] isValid, double[] fees, Set<UTXO> usedTxns, Transaction[] possibleTxs){
         int n = possibleTxs.length;
         Pair<List<Integer>, Double> result = new Pair(new ArrayList<>(), (double) 0);
         
@@ -114,15 +154,15 @@ public class MaxFeeTxHandler {
             return result;
         } 
         else if (!isValid[i] || !areMutuallyExclusive(possibleTxs[i].getInputs(), usedTxns)) {
-            result = findMutuallyExclusiveTransactions(i + 1, isValid, usedTxns, possibleTxs);
+            result = findMutuallyExclusiveTransactions(i + 1, isValid, fees, usedTxns, possibleTxs);
         }
         else {
-            Pair<List<Integer>, Double> withoutCurrentTransaction = findMutuallyExclusiveTransactions(i + 1, isValid, usedTxns, possibleTxs);
+            Pair<List<Integer>, Double> withoutCurrentTransaction = findMutuallyExclusiveTransactions(i + 1, isValid, fees, usedTxns, possibleTxs);
 
             addAllInputsToSet(possibleTxs[i].getInputs(), usedTxns);
-            Pair<List<Integer>, Double> withCurrentTransaction = findMutuallyExclusiveTransactions(i + 1, isValid, usedTxns, possibleTxs);
+            Pair<List<Integer>, Double> withCurrentTransaction = findMutuallyExclusiveTransactions(i + 1, isValid, fees, usedTxns, possibleTxs);
             withCurrentTransaction.getKey().add(i);
-            withCurrentTransaction = new Pair(withCurrentTransaction.getKey(), withCurrentTransaction.getValue() + findTxnFee(possibleTxs[i]));
+            withCurrentTransaction = new Pair(withCurrentTransaction.getKey(), withCurrentTransaction.getValue() + fees[i]);
             removeAllInputsFromSet(possibleTxs[i].getInputs(), usedTxns);
             
             result = (withCurrentTransaction.getValue() > withoutCurrentTransaction.getValue()) ? withCurrentTransaction : withoutCurrentTransaction;
@@ -131,7 +171,25 @@ public class MaxFeeTxHandler {
         return result;
     }
     
+    /**
+     * @return the fee of {@code txn} in coins; with wholeUnits, taken exactly in base units, and
+     *         throws ArithmeticException for values that are not whole units
+     */
     private double findTxnFee (Transaction txn) {
+        if (wholeUnits) {
+            long inputUnits = 0;
+            for (Transaction.Input input : txn.getInputs()) {
+                inputUnits = Math.addExact(inputUnits, utxoPool.getTxOutput(new UTXO(input.prevTxHash, input.outputIndex)).getExactUnits());
+            }
+            
+            long outputUnits = 0;
+            for (Transaction.Output output : txn.getOutputs()) {
+                outputUnits = Math.addExact(outputUnits, output.getExactUnits());
+            }
+            
+            return (inputUnits - outputUnits) / (double) Amount.UNITS_PER_COIN;
+        }
+        
         double inputSum = 0;
         for (Transaction.Input input : txn.getInputs()) {
             inputSum += utxoPool.getTxOutput(new UTXO(input.prevTxHash, input.outputIndex)).value;
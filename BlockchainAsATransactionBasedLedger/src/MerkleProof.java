@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The path from one transaction to the Merkle root of the block holding it: the position of the
+ * transaction, the number of transactions in the block and the sibling hashes from the leaf
+ * upwards. Levels where the path's node is carried up without a sibling have no entry.
+ */
+public class MerkleProof {
+
+    private final byte[] blockHash;
+    private final int index;
+    private final int leafCount;
+    private final List<byte[]> siblings;
+
+    public MerkleProof(byte[] blockHash, int index, int leafCount, List<byte[]> siblings) {
+        this.blockHash = blockHash;
+        this.index = index;
+        this.leafCount = leafCount;
+        this.siblings = Collections.unmodifiableList(new ArrayList<>(siblings));
+    }
+
+    /** @return the hash of the block whose Merkle root the proof leads to */
+    public byte[] getBlockHash() {
+        return blockHash;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public List<byte[]> getSiblings() {
+        return siblings;
+    }
+
+    /** @return the Merkle root that {@code txHash} leads to along this path, or null if the path is malformed */
+    public byte[] computeRoot(byte[] txHash) {
+        if (index < 0 || index >= leafCount) {
+            return null;
+        }
+        byte[] hash = MerkleTree.leaf(txHash);
+        int position = index;
+        int width = leafCount;
+        int next = 0;
+        while (width > 1) {
+            int sibling = position ^ 1;
+            if (sibling < width) {
+                if (next == siblings.size()) {
+                    return null;
+                }
+                byte[] other = siblings.get(next++);
+                hash = ((position & 1) == 0) ? MerkleTree.node(hash, other) : MerkleTree.node(other, hash);
+            }
+            position >>>= 1;
+            width = (width + 1) / 2;
+        }
+        return (next == siblings.size()) ? hash : null;
+    }
+
+    /** @return true if this path leads from {@code txHash} to {@code merkleRoot} */
+    public boolean verify(byte[] txHash, byte[] merkleRoot) {
+        byte[] root = computeRoot(txHash);
+        return root != null && Arrays.equals(root, merkleRoot);
+    }
+}
@@ -0,0 +1,92 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merkle trees over transaction hashes. Leaves and inner nodes are hashed with different prefixes
+ * (SHA-256 of 0x00 || leaf and of 0x01 || left || right) so that a node can never pass for a leaf,
+ * and the last node of a level with an odd width is carried up unchanged rather than paired with
+ * itself. The root of an empty tree is the SHA-256 of nothing.
+ */
+public final class MerkleTree {
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private MerkleTree() {
+    }
+
+    /** @return the Merkle root of {@code txHashes} */
+    public static byte[] root(List<byte[]> txHashes) {
+        if (txHashes.isEmpty()) {
+            return sha256().digest();
+        }
+        List<byte[]> level = leaves(txHashes);
+        while (level.size() > 1) {
+            level = parents(level);
+        }
+        return level.get(0);
+    }
+
+    /** @return the proof that {@code txHashes[index]} is part of the tree over {@code txHashes} */
+    public static MerkleProof proof(byte[] blockHash, List<byte[]> txHashes, int index) {
+        if (index < 0 || index >= txHashes.size()) {
+            throw new IndexOutOfBoundsException("leaf " + index + " of " + txHashes.size());
+        }
+        List<byte[]> siblings = new ArrayList<>();
+        List<byte[]> level = leaves(txHashes);
+        int position = index;
+        while (level.size() > 1) {
+            int sibling = position ^ 1;
+            if (sibling < level.size()) {
+                siblings.add(level.get(sibling));
+            }
+            level = parents(level);
+            position >>>= 1;
+        }
+        return new MerkleProof(blockHash, index, txHashes.size(), siblings);
+    }
+
+    static byte[] leaf(byte[] txHash) {
+        MessageDigest md = sha256();
+        md.update(LEAF_PREFIX);
+        md.update(txHash);
+        return md.digest();
+    }
+
+    static byte[] node(byte[] left, byte[] right) {
+        MessageDigest md = sha256();
+        md.update(NODE_PREFIX);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+    private static List<byte[]> leaves(List<byte[]> txHashes) {
+        List<byte[]> leaves = new ArrayList<>(txHashes.size());
+        for (byte[] txHash : txHashes) {
+            leaves.add(leaf(txHash));
+        }
+        return leaves;
+    }
+
+    private static List<byte[]> parents(List<byte[]> level) {
+        List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+        for (int i = 0; i + 1 < level.size(); i += 2) {
+            parents.add(node(level.get(i), level.get(i + 1)));
+        }
+        if (level.size() % 2 == 1) {
+            parents.add(level.get(level.size() - 1));
+        }
+        return parents;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A hash of a multiset of byte strings that can be updated one element at a time, in any order:
+ * MuHash over the integers modulo the prime 2^3072 - 1103717, as Bitcoin Core uses for its UTXO
+ * set hash. Every element is hashed to a number, with SHA-256 and then 384 bytes of ChaCha20
+ * keystream read as a little-endian integer, and the set hashes to the product of its elements.
+ *
+ * <p>Insertions multiply a numerator and removals a denominator, so neither needs a modular
+ * inverse; the one inverse is taken, and cached until the next change, by {@link #digest()} and
+ * {@link #hashCode()}. Two accumulators are compared without it, by cross-multiplying. An
+ * accumulator is not safe for concurrent changes, but copying one is cheap, as it only holds
+ * immutable numbers.
+ */
+public final class MuHash3072 {
+
+    public static final int BITS = 3072;
+    public static final int BYTES = BITS / 8;
+
+    /** 2^3072 is congruent to C modulo the prime, which is what makes reduction cheap */
+    private static final BigInteger C = BigInteger.valueOf(1103717);
+    public static final BigInteger PRIME = BigInteger.ONE.shiftLeft(BITS).subtract(C);
+
+    private BigInteger numerator = BigInteger.ONE;
+    private BigInteger denominator = BigInteger.ONE;
+    /** numerator / denominator below the prime, or null until asked for after a change */
+    private BigInteger value = BigInteger.ONE;
+
+    /** Creates the hash of the empty set */
+    public MuHash3072() {
+    }
+
+    /** Creates a copy of {@code other}, which later changes to either do not affect */
+    public MuHash3072(MuHash3072 other) {
+        this.numerator = other.numerator;
+        this.denominator = other.denominator;
+        this.value = other.value;
+    }
+
+    /** Adds {@code element} to the set; adding it twice counts it twice */
+    public void insert(byte[] element) {
+        numerator = multiply(numerator, toNumber(element));
+        value = null;
+    }
+
+    /** Takes {@code element} out of the set; it should have been inserted before */
+    public void remove(byte[] element) {
+        denominator = multiply(denominator, toNumber(element));
+        value = null;
+    }
+
+    /** Adds every element of the set hashed by {@code other} */
+    public void combine(MuHash3072 other) {
+        numerator = multiply(numerator, other.numerator);
+        denominator = multiply(denominator, other.denominator);
+        value = null;
+    }
+
+    /** @return the SHA-256 hash of the set's number, 384 bytes little-endian */
+    public byte[] digest() {
+        byte[] bigEndian = value().toByteArray();
+        byte[] littleEndian = new byte[BYTES];
+        // toByteArray may add a leading sign byte or leave out leading zeros
+        for (int i = 0; i < BYTES && i < bigEndian.length; i++) {
+            littleEndian[i] = bigEndian[bigEndian.length - 1 - i];
+        }
+        return sha256(littleEndian);
+    }
+
+    /** @return true if {@code obj} is a MuHash3072 of the same multiset */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MuHash3072)) {
+            return false;
+        }
+        MuHash3072 other = (MuHash3072) obj;
+        return multiply(numerator, other.denominator).equals(multiply(other.numerator, denominator));
+    }
+
+    /** @return a hash of the set's number, the same for all accumulators of the same multiset */
+    @Override
+    public int hashCode() {
+        return value().hashCode();
+    }
+
+    /** @return the set's number, below the prime; the same for all accumulators of the same multiset */
+    private BigInteger value() {
+        BigInteger v = value;
+        if (v == null) {
+            // like String.hashCode, racing readers at worst compute the same number twice
+            v = multiply(numerator, denominator.modInverse(PRIME));
+            value = v;
+        }
+        return v;
+    }
+
+    private static BigInteger multiply(BigInteger a, BigInteger b) {
+        return reduce(a.multiply(b));
+    }
+
+    /** @return x modulo the prime, folding the bits above 3072 back in times C */
+    private static BigInteger reduce(BigInteger x) {
+        while (x.bitLength() > BITS) {
+            BigInteger high = x.shiftRight(BITS);
+            x = high.multiply(C).add(x.subtract(high.shiftLeft(BITS)));
+        }
+        return (x.compareTo(PRIME) >= 0) ? x.subtract(PRIME) : x;
+    }
+
+    /** @return the number {@code element} stands for, below 2^3072 but not necessarily below the prime */
+    private static BigInteger toNumber(byte[] element) {
+        int[] key = new int[8];
+        byte[] hash = sha256(element);
+        for (int i = 0; i < key.length; i++) {
+            key[i] = littleEndianInt(hash, 4 * i);
+        }
+        // 384 bytes of keystream, read as a little-endian number: reverse into big-endian order
+        byte[] bigEndian = new byte[BYTES + 1];
+        int[] block = new int[16];
+        for (int counter = 0; counter < BYTES / 64; counter++) {
+            chacha20Block(key, counter, block);
+            for (int w = 0; w < 16; w++) {
+                for (int b = 0; b < 4; b++) {
+                    bigEndian[BYTES - (counter * 64 + w * 4 + b)] = (byte) (block[w] >>> (8 * b));
+                }
+            }
+        }
+        return new BigInteger(bigEndian);
+    }
+
+    /** Writes ChaCha20 block {@code counter} of the keystream for {@code key} and a zero nonce, RFC 8439 */
+    private static void chacha20Block(int[] key, int counter, int[] out) {
+        int[] x = new int[16];
+        x[0] = 0x61707865;
+        x[1] = 0x3320646e;
+        x[2] = 0x79622d32;
+        x[3] = 0x6b206574;
+        System.arraycopy(key, 0, x, 4, 8);
+        x[12] = counter;
+        int[] initial = x.clone();
+        for (int round = 0; round < 10; round++) {
+            quarterRound(x, 0, 4, 8, 12);
+            quarterRound(x, 1, 5, 9, 13);
+            quarterRound(x, 2, 6, 10, 14);
+            quarterRound(x, 3, 7, 11, 15);
+            quarterRound(x, 0, 5, 10, 15);
+            quarterRound(x, 1, 6, 11, 12);
+            quarterRound(x, 2, 7, 8, 13);
+            quarterRound(x, 3, 4, 9, 14);
+        }
+        for (int i = 0; i < 16; i++) {
+            out[i] = x[i] + initial[i];
+        }
+    }
+
+    private static void quarterRound(int[] x, int a, int b, int c, int d) {
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 8);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 7);
+    }
+
+    private static int littleEndianInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
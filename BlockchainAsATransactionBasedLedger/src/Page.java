@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One page of a paged read over a {@link UTXOPool.Snapshot} or {@link TransactionPool.Snapshot}.
+ * A snapshot is read as a sequence of tables (one per UTXOPool shard), and a page ends at a slot
+ * within one of them. That position is available as an opaque resume token, which only means
+ * something to the snapshot the page was read from.
+ */
+public final class Page<T> {
+
+    private final List<T> items;
+    private final int table;
+    private final int slot;
+    private final boolean hasNext;
+
+    private Page(List<T> items, int table, int slot, boolean hasNext) {
+        this.items = Collections.unmodifiableList(items);
+        this.table = table;
+        this.slot = slot;
+        this.hasNext = hasNext;
+    }
+
+    /** @return the items on this page, at most the requested limit */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /** @return true if the snapshot has items after this page */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /** @return a token to resume reading after this page, or null if this is the last page */
+    public String getResumeToken() {
+        return hasNext ? table + ":" + slot : null;
+    }
+
+    /**
+     * The tables of a snapshot laid out for paging: the first page read from a table copies its
+     * items into an array, once for the snapshot, so a page starting at any slot of it is read
+     * in time proportional to its length. Safe for use by several threads.
+     */
+    static final class Slots<T> {
+        private final List<? extends Collection<T>> tables;
+        private final AtomicReferenceArray<Object[]> arrays;
+
+        Slots(List<? extends Collection<T>> tables) {
+            this.tables = tables;
+            this.arrays = new AtomicReferenceArray<>(tables.size());
+        }
+
+        int tables() {
+            return tables.size();
+        }
+
+        int size(int table) {
+            return tables.get(table).size();
+        }
+
+        /** @return the items of {@code table} in iteration order; the table must no longer change */
+        Object[] array(int table) {
+            Object[] array = arrays.get(table);
+            if (array == null) {
+                // two threads may both copy the table; they get equal arrays
+                array = tables.get(table).toArray();
+                arrays.set(table, array);
+            }
+            return array;
+        }
+    }
+
+    static <T> Page<T> first(Slots<T> slots, int limit) {
+        return read(slots, 0, 0, limit);
+    }
+
+    /** Reads the page following {@code previous} */
+    static <T> Page<T> after(Slots<T> slots, Page<T> previous, int limit) {
+        if (!previous.hasNext) {
+            return read(slots, slots.tables(), 0, limit);
+        }
+        return read(slots, previous.table, previous.slot, limit);
+    }
+
+    /** Reads the page starting at {@code token} */
+    static <T> Page<T> resume(Slots<T> slots, String token, int limit) {
+        int separator = (token == null) ? -1 : token.indexOf(':');
+        int table;
+        int slot;
+        try {
+            table = Integer.parseInt(token.substring(0, separator));
+            slot = Integer.parseInt(token.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("not a resume token: " + token);
+        }
+        if (table < 0 || table >= slots.tables() || slot < 0 || slot > slots.size(table)) {
+            throw new IllegalArgumentException("resume token out of range: " + token);
+        }
+        return read(slots, table, slot, limit);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Page<T> read(Slots<T> slots, int table, int slot, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        List<T> items = new ArrayList<>(Math.min(limit, 1024));
+        while (table < slots.tables()) {
+            if (slot == slots.size(table)) {
+                table++;
+                slot = 0;
+                continue;
+            }
+            if (items.size() == limit) {
+                break;
+            }
+            Object[] array = slots.array(table);
+            int end = Math.min(array.length, slot + limit - items.size());
+            for (; slot < end; slot++) {
+                items.add((T) array[slot]);
+            }
+        }
+        return new Page<>(items, table, slot, table < slots.tables());
+    }
+}
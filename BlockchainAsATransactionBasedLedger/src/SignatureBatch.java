@@ -0,0 +1,91 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Signature checks gathered so they can be run together, after everything cheaper about a
+ * transaction has been checked. A batch of {@link #PARALLEL_THRESHOLD} or more checks is spread
+ * over the common fork-join pool; verification is independent per signature, since the JDK
+ * offers no combined check, and a batch fails as soon as one signature is found invalid.
+ * Not safe for use by several threads while checks are being added.
+ */
+public final class SignatureBatch {
+
+    /** smaller batches are verified on the calling thread, where forking would cost more than it saves */
+    public static final int PARALLEL_THRESHOLD = 4;
+
+    private final List<Check> checks = new ArrayList<>();
+
+    /** Adds a check that {@code signature} is a valid signature of {@code message} under {@code address} */
+    public void add(AddressTable.Entry address, byte[] message, byte[] signature) {
+        checks.add(new Check(address, message, signature));
+    }
+
+    /**
+     * Adds a check of a signature of the remaining bytes of {@code message} followed by those of
+     * {@code messageTail}, as in {@link Crypto#verifySignature(AddressTable.Entry, ByteBuffer,
+     * ByteBuffer, ByteBuffer)}; the buffers must not change until the batch is verified
+     */
+    public void add(AddressTable.Entry address, ByteBuffer message, ByteBuffer messageTail, ByteBuffer signature) {
+        checks.add(new Check(address, message, messageTail, signature));
+    }
+
+    /** @return the number of checks added */
+    public int size() {
+        return checks.size();
+    }
+
+    /** @return true if every signature in the batch is valid, and true for an empty batch */
+    public boolean verify() {
+        if (checks.size() < PARALLEL_THRESHOLD) {
+            for (Check check : checks) {
+                if (!check.verify()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return checks.parallelStream().allMatch(Check::verify);
+    }
+
+    /** Removes every check, so the batch can be filled again */
+    public void clear() {
+        checks.clear();
+    }
+
+    private static final class Check {
+        private final AddressTable.Entry address;
+        private final byte[] message;
+        private final byte[] signature;
+
+        /** set instead of message and signature for a check on buffers */
+        private final ByteBuffer head;
+        private final ByteBuffer tail;
+        private final ByteBuffer signatureBuffer;
+
+        Check(AddressTable.Entry address, byte[] message, byte[] signature) {
+            this(address, message, signature, null, null, null);
+        }
+
+        Check(AddressTable.Entry address, ByteBuffer head, ByteBuffer tail, ByteBuffer signatureBuffer) {
+            this(address, null, null, head, tail, signatureBuffer);
+        }
+
+        private Check(AddressTable.Entry address, byte[] message, byte[] signature,
+                      ByteBuffer head, ByteBuffer tail, ByteBuffer signatureBuffer) {
+            this.address = address;
+            this.message = message;
+            this.signature = signature;
+            this.head = head;
+            this.tail = tail;
+            this.signatureBuffer = signatureBuffer;
+        }
+
+        boolean verify() {
+            if (head == null) {
+                return Crypto.verifySignature(address, message, signature);
+            }
+            return Crypto.verifySignature(address, head, tail, signatureBuffer);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.InvalidKeySpecException;
+
+/**
+ * A digital signature algorithm that addresses can use. An address is a public key, and the
+ * scheme that verifies signatures under it is picked by the key's type: {@link Crypto#schemeFor}
+ * finds it for a key object and {@link Crypto#schemeForEncoded} for an X.509 encoding read off
+ * the wire, so outputs paying to RSA and Ed25519 keys can sit side by side in one ledger.
+ */
+public interface SignatureScheme {
+
+    /** SHA256withRSA, the scheme every address used before there was a choice */
+    SignatureScheme RSA = new JcaSignatureScheme("RSA", "RSA", "SHA256withRSA",
+            new byte[] {0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01});
+
+    /** Ed25519 (RFC 8032): 44-byte encoded keys and 64-byte signatures, against 294 and 256 for RSA-2048 */
+    SignatureScheme ED25519 = new JcaSignatureScheme("Ed25519", "Ed25519", "Ed25519", new byte[] {0x2b, 0x65, 0x70});
+
+    String name();
+
+    /** @return true if the X.509 encoding between the position and limit of {@code encoding} is a key of this scheme */
+    boolean acceptsEncoded(ByteBuffer encoding);
+
+    /** @return true if {@code key} is a key of this scheme */
+    default boolean accepts(PublicKey key) {
+        byte[] encoded = key.getEncoded();
+        return encoded != null && acceptsEncoded(ByteBuffer.wrap(encoded));
+    }
+
+    /** @return the key with X.509 encoding {@code encoding} */
+    PublicKey decode(byte[] encoding) throws InvalidKeySpecException;
+
+    /** @return a verifier initialised with {@code key}, which must be accepted by this scheme */
+    Signature newVerifier(PublicKey key) throws NoSuchAlgorithmException, InvalidKeyException;
+}
@@ -0,0 +1,93 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over a run of tables that no longer change, such as the shards of a
+ * {@link UTXOPool.Snapshot}. It splits by table while more than one is left, and then hands the
+ * split over to the spliterator of the last table.
+ */
+class TableSpliterator<T> implements Spliterator<T> {
+
+    private final List<? extends Collection<T>> tables;
+    private int lo;
+    private final int hi;
+
+    /** the table being read, once its spliterator has been taken */
+    private Spliterator<T> current;
+
+    TableSpliterator(List<? extends Collection<T>> tables) {
+        this(tables, 0, tables.size());
+    }
+
+    private TableSpliterator(List<? extends Collection<T>> tables, int lo, int hi) {
+        this.tables = tables;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (true) {
+            if (current == null) {
+                if (lo >= hi) {
+                    return false;
+                }
+                current = tables.get(lo++).spliterator();
+            }
+            if (current.tryAdvance(action)) {
+                return true;
+            }
+            current = null;
+        }
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        if (current != null) {
+            current.forEachRemaining(action);
+            current = null;
+        }
+        for (; lo < hi; lo++) {
+            tables.get(lo).forEach(action);
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (hi - lo >= 2) {
+            int mid = (lo + hi) >>> 1;
+            Spliterator<T> prefix = new TableSpliterator<>(tables, lo, mid);
+            lo = mid;
+            return prefix;
+        }
+        if (current == null && lo < hi) {
+            current = tables.get(lo++).spliterator();
+        }
+        if (current == null) {
+            return null;
+        }
+        if (lo == hi) {
+            return current.trySplit();
+        }
+        // one table left besides the current one: hand that table off whole
+        Spliterator<T> last = new TableSpliterator<>(tables, lo, hi);
+        lo = hi;
+        return last;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = (current == null) ? 0 : current.estimateSize();
+        for (int i = lo; i < hi; i++) {
+            size += tables.get(i).size();
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL | IMMUTABLE;
+    }
+}
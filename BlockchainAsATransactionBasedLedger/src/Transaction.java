@@ -32,21 +32,100 @@ public class Transaction {
     }
 
     public class Output {
-        /** value in bitcoins of the output */
+        /**
+         * value in bitcoins of the output; not to be changed once the output is made, as its
+         * units are taken from it then
+         */
         public double value;
-        /** the address or public key of the recipient */
+        /**
+         * the address or public key of the recipient; the key interned in the {@link AddressTable}
+         * if there was one when the output was created
+         */
         public PublicKey address;
 
+        /** {@code value} in base units, rounded, or NOT_AN_AMOUNT if it is beyond MAX_UNITS or not finite */
+        private final long units;
+
+        /** true if {@code value} is exactly {@code units} */
+        private final boolean wholeUnits;
+
+        /** the interned entry of {@code address}, set when the output enters a UTXOPool; holds it in the table */
+        private AddressTable.Entry internedEntry;
+
+        /** the entry of {@code address} resolved for an output in no pool yet */
+        private AddressTable.Entry entry;
+
         public Output(double v, PublicKey addr) {
             value = v;
-            address = addr;
+            address = (addr == null) ? null : AddressTable.get().canonical(addr);
+            long u;
+            try {
+                u = Amount.toUnits(v);
+            } catch (ArithmeticException e) {
+                u = NOT_AN_AMOUNT;
+            }
+            units = u;
+            wholeUnits = (u != NOT_AN_AMOUNT) && Amount.toCoins(u) == v;
+        }
+
+        /**
+         * @return {@code value} in base units, rounded to the nearest unit, see {@link Amount#toUnits(double)}
+         * @throws ArithmeticException if the value is not a representable amount
+         */
+        public long getUnits() {
+            if (units == NOT_AN_AMOUNT) {
+                throw new ArithmeticException("not a representable amount: " + value);
+            }
+            return units;
+        }
+
+        /**
+         * @return {@code value} in base units, which it must be a whole number of, see
+         *         {@link Amount#toExactUnits(double)}
+         * @throws ArithmeticException if the value is not a representable amount or not whole units
+         */
+        public long getExactUnits() {
+            if (!wholeUnits) {
+                throw new ArithmeticException("not a whole number of units: " + value);
+            }
+            return units;
+        }
+
+        /**
+         * @return the interned entry of {@code address}, which every output in a UTXOPool has, or
+         *         a transient one, resolved once and kept
+         */
+        AddressTable.Entry addressEntry() {
+            AddressTable.Entry e = internedEntry;
+            if (e == null) {
+                e = entry;
+                if (e == null) {
+                    e = AddressTable.get().entryFor(address);
+                    entry = e;
+                }
+            }
+            return e;
+        }
+
+        /** @return the interned entry of {@code address}, interning it if needed; the output keeps it */
+        AddressTable.Entry internAddress() {
+            AddressTable.Entry e = internedEntry;
+            if (e == null) {
+                e = AddressTable.get().intern(address);
+                internedEntry = e;
+            }
+            return e;
         }
     }
 
+    /** units of an output whose value is no amount at all */
+    private static final long NOT_AN_AMOUNT = Long.MIN_VALUE;
+
     /** hash of the transaction, its unique id */
     private byte[] hash;
     private ArrayList<Input> inputs;
     private ArrayList<Output> outputs;
+    private boolean coinbase;
 
     public Transaction() {
         inputs = new ArrayList<Input>();
@@ -57,6 +136,20 @@ public class Transaction {
         hash = tx.hash.clone();
         inputs = new ArrayList<Input>(tx.inputs);
         outputs = new ArrayList<Output>(tx.outputs);
+        coinbase = tx.coinbase;
+    }
+
+    /** create a coinbase transaction of value {@code coin} and calls finalize on it */
+    public Transaction(double coin, PublicKey address) {
+        coinbase = true;
+        inputs = new ArrayList<Input>();
+        outputs = new ArrayList<Output>();
+        outputs.add(new Output(coin, address));
+        computeHash();
+    }
+
+    public boolean isCoinbase() {
+        return coinbase;
     }
 
     public void addInput(byte[] prevTxHash, int outputIndex) {
@@ -69,6 +162,14 @@ public class Transaction {
         outputs.add(op);
     }
 
+    /**
+     * Adds an output of {@code units} base units. Not an overload of {@link #addOutput}, where an
+     * int literal would otherwise silently turn from coins into units.
+     */
+    public void addOutputUnits(long units, PublicKey address) {
+        addOutput(Amount.toCoins(units), address);
+    }
+
     public void removeInput(int index) {
         inputs.remove(index);
     }
@@ -86,82 +187,118 @@ public class Transaction {
 
     public byte[] getRawDataToSign(int index) {
         // ith input and all outputs
-        ArrayList<Byte> sigData = new ArrayList<Byte>();
         if (index > inputs.size())
             return null;
         Input in = inputs.get(index);
-        byte[] prevTxHash = in.prevTxHash;
-        ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-        b.putInt(in.outputIndex);
-        byte[] outputIndex = b.array();
-        if (prevTxHash != null)
-            for (int i = 0; i < prevTxHash.length; i++)
-                sigData.add(prevTxHash[i]);
-        for (int i = 0; i < outputIndex.length; i++)
-            sigData.add(outputIndex[i]);
-        for (Output op : outputs) {
-            ByteBuffer bo = ByteBuffer.allocate(Double.SIZE / 8);
-            bo.putDouble(op.value);
-            byte[] value = bo.array();
-            byte[] addressBytes = op.address.getEncoded();
-            for (int i = 0; i < value.length; i++)
-                sigData.add(value[i]);
-
-            for (int i = 0; i < addressBytes.length; i++)
-                sigData.add(addressBytes[i]);
-        }
-        byte[] sigD = new byte[sigData.size()];
-        int i = 0;
-        for (Byte sb : sigData)
-            sigD[i++] = sb;
-        return sigD;
+        int length = lengthOf(in.prevTxHash) + Integer.BYTES + outputsLength();
+        ByteBuffer sigData = ByteBuffer.allocate(length);
+        if (in.prevTxHash != null)
+            sigData.put(in.prevTxHash);
+        sigData.putInt(in.outputIndex);
+        putOutputs(sigData);
+        return sigData.array();
     }
 
     public void addSignature(byte[] signature, int index) {
         inputs.get(index).addSignature(signature);
     }
 
+    /**
+     * @return true if input {@code index} carries a valid signature by {@code address} of
+     *         {@link #getRawDataToSign(int)}, in the address's signature scheme
+     */
+    public boolean verifySignature(int index, AddressTable.Entry address) {
+        return Crypto.verifySignature(address, getRawDataToSign(index), inputs.get(index).signature);
+    }
+
+    /** Adds the check {@link #verifySignature} makes to {@code batch}, to be run with others later */
+    public void addSignatureCheck(int index, AddressTable.Entry address, SignatureBatch batch) {
+        batch.add(address, getRawDataToSign(index), inputs.get(index).signature);
+    }
+
     public byte[] getRawTx() {
-        ArrayList<Byte> rawTx = new ArrayList<Byte>();
+        return rawTx();
+    }
+
+    private byte[] rawTx() {
+        int length = outputsLength();
+        for (Input in : inputs)
+            length += lengthOf(in.prevTxHash) + Integer.BYTES + lengthOf(in.signature);
+        ByteBuffer rawTx = ByteBuffer.allocate(length);
         for (Input in : inputs) {
-            byte[] prevTxHash = in.prevTxHash;
-            ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-            b.putInt(in.outputIndex);
-            byte[] outputIndex = b.array();
-            byte[] signature = in.signature;
-            if (prevTxHash != null)
-                for (int i = 0; i < prevTxHash.length; i++)
-                    rawTx.add(prevTxHash[i]);
-            for (int i = 0; i < outputIndex.length; i++)
-                rawTx.add(outputIndex[i]);
-            if (signature != null)
-                for (int i = 0; i < signature.length; i++)
-                    rawTx.add(signature[i]);
+            if (in.prevTxHash != null)
+                rawTx.put(in.prevTxHash);
+            rawTx.putInt(in.outputIndex);
+            if (in.signature != null)
+                rawTx.put(in.signature);
         }
-        for (Output op : outputs) {
-            ByteBuffer b = ByteBuffer.allocate(Double.SIZE / 8);
-            b.putDouble(op.value);
-            byte[] value = b.array();
-            byte[] addressBytes = op.address.getEncoded();
-            for (int i = 0; i < value.length; i++) {
-                rawTx.add(value[i]);
-            }
-            for (int i = 0; i < addressBytes.length; i++) {
-                rawTx.add(addressBytes[i]);
-            }
+        putOutputs(rawTx);
+        return rawTx.array();
+    }
 
+    /** @return the transaction in the framed wire format read by {@link TransactionView} */
+    public byte[] toWire() {
+        int length = 2 * Integer.BYTES + inputs.size() * 2 * Short.BYTES + outputs.size() * Short.BYTES + outputsLength();
+        for (Input in : inputs)
+            length += lengthOf(in.prevTxHash) + Integer.BYTES + lengthOf(in.signature);
+        ByteBuffer wire = ByteBuffer.allocate(length);
+        wire.putInt(inputs.size());
+        wire.putInt(outputs.size());
+        for (Input in : inputs) {
+            wire.putShort(shortLength(in.prevTxHash));
+            wire.putShort(shortLength(in.signature));
+        }
+        for (Output op : outputs)
+            wire.putShort(shortLength(op.addressEntry().encodedLength()));
+        for (Input in : inputs) {
+            if (in.prevTxHash != null)
+                wire.put(in.prevTxHash);
+            wire.putInt(in.outputIndex);
+            if (in.signature != null)
+                wire.put(in.signature);
+        }
+        putOutputs(wire);
+        return wire.array();
+    }
+
+    private static short shortLength(byte[] bytes) {
+        return shortLength(lengthOf(bytes));
+    }
+
+    private static short shortLength(int length) {
+        if (length > 0xffff)
+            throw new IllegalStateException("field of " + length + " bytes does not fit the wire format");
+        return (short) length;
+    }
+
+    private static int lengthOf(byte[] bytes) {
+        return (bytes == null) ? 0 : bytes.length;
+    }
+
+    /** @return the serialized length of the outputs: each one's value and encoded address */
+    private int outputsLength() {
+        int length = 0;
+        for (Output op : outputs)
+            length += Double.BYTES + op.addressEntry().encodedLength();
+        return length;
+    }
+
+    private void putOutputs(ByteBuffer buffer) {
+        for (Output op : outputs) {
+            buffer.putDouble(op.value);
+            op.addressEntry().writeEncoded(buffer);
         }
-        byte[] tx = new byte[rawTx.size()];
-        int i = 0;
-        for (Byte b : rawTx)
-            tx[i++] = b;
-        return tx;
     }
 
     public void finalize() {
+        computeHash();
+    }
+
+    /** Sets the hash from the raw transaction; what finalize does, safe to call from a constructor */
+    private void computeHash() {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(getRawTx());
+            md.update(rawTx());
             hash = md.digest();
         } catch (NoSuchAlgorithmException x) {
             x.printStackTrace(System.err);
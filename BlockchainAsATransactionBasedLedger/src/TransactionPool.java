@@ -1,27 +1,42 @@
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class TransactionPool {
 
     private HashMap<ByteArrayWrapper, Transaction> H;
 
+    /** true while a copy or snapshot may still read H, which is then copied before the next write */
+    private boolean shared;
+
     public TransactionPool() {
         H = new HashMap<ByteArrayWrapper, Transaction>();
     }
 
+    /** Creates a copy of {@code txPool} that shares its transactions until either pool changes */
     public TransactionPool(TransactionPool txPool) {
-        H = new HashMap<ByteArrayWrapper, Transaction>(txPool.H);
+        H = txPool.H;
+        shared = true;
+        txPool.shared = true;
+        LedgerMetrics.get().transactionPoolCopied();
     }
 
     public void addTransaction(Transaction tx) {
         ByteArrayWrapper hash = new ByteArrayWrapper(tx.getHash());
-        H.put(hash, tx);
+        writable().put(hash, tx);
     }
 
     public void removeTransaction(byte[] txHash) {
         ByteArrayWrapper hash = new ByteArrayWrapper(txHash);
-        H.remove(hash);
+        if (H.containsKey(hash)) {
+            writable().remove(hash);
+        }
     }
 
     public Transaction getTransaction(byte[] txHash) {
@@ -29,10 +44,80 @@ public class TransactionPool {
         return H.get(hash);
     }
 
+    public int size() {
+        return H.size();
+    }
+
     public ArrayList<Transaction> getTransactions() {
         ArrayList<Transaction> T = new ArrayList<Transaction>();
         for (Transaction tx : H.values())
             T.add(tx);
         return T;
     }
+
+    /**
+     * @return a read-only view of the pool as it is now, taken without copying; the pool copies
+     *         its map on the next change instead. The snapshot can be handed to another thread and
+     *         read there while this pool keeps changing.
+     */
+    public Snapshot snapshot() {
+        shared = true;
+        return new Snapshot(H);
+    }
+
+    private HashMap<ByteArrayWrapper, Transaction> writable() {
+        if (shared) {
+            H = new HashMap<ByteArrayWrapper, Transaction>(H);
+            shared = false;
+        }
+        return H;
+    }
+
+    /** The transactions of a pool at the moment {@link TransactionPool#snapshot()} was called */
+    public static final class Snapshot {
+        private final HashMap<ByteArrayWrapper, Transaction> H;
+        private final List<Collection<Transaction>> values;
+        private final Page.Slots<Transaction> slots;
+
+        private Snapshot(HashMap<ByteArrayWrapper, Transaction> H) {
+            this.H = H;
+            this.values = Collections.singletonList(Collections.unmodifiableCollection(H.values()));
+            this.slots = new Page.Slots<>(values);
+        }
+
+        public int size() {
+            return H.size();
+        }
+
+        public Transaction getTransaction(byte[] txHash) {
+            return H.get(new ByteArrayWrapper(txHash));
+        }
+
+        public Spliterator<Transaction> spliterator() {
+            return new TableSpliterator<>(values);
+        }
+
+        public Stream<Transaction> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        public Stream<Transaction> parallelStream() {
+            return StreamSupport.stream(spliterator(), true);
+        }
+
+        /** @return the first {@code limit} transactions, and the position after them */
+        public Page<Transaction> firstPage(int limit) {
+            return Page.first(slots, limit);
+        }
+
+        /** @return the {@code limit} transactions following {@code previous}, a page of this snapshot */
+        public Page<Transaction> nextPage(Page<Transaction> previous, int limit) {
+            return Page.after(slots, previous, limit);
+        }
+
+        /** @return the {@code limit} transactions from {@code resumeToken}, taken from a page of this snapshot */
+        public Page<Transaction> resume(String resumeToken, int limit) {
+            return Page.resume(slots, resumeToken, limit);
+        }
+    }
 }
@@ -0,0 +1,273 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A read-only view of a transaction in the wire format written by {@link Transaction#toWire()}.
+ * Fields are read from the buffer when asked for; nothing is copied up front, output addresses
+ * are not decoded unless asked for, and a {@link Transaction} is only built by
+ * {@link #materialize()}. Reading a hash or signature still copies it into an array of its own,
+ * and the checks handed to a signature batch hold new buffers over the same bytes: what a view
+ * saves is the Input and Output objects and the decoding of keys. Like a ByteBuffer, a view is
+ * not safe for use by several threads.
+ *
+ * <pre>
+ * int   numInputs
+ * int   numOutputs
+ * numInputs  x (u16 prevTxHash length, u16 signature length)
+ * numOutputs x (u16 address length)
+ * numInputs  x (prevTxHash, int outputIndex, signature)
+ * numOutputs x (double value, encoded address)
+ * </pre>
+ *
+ * The two body sections together are exactly {@link Transaction#getRawTx()}, so the hash and the
+ * data each input signs are slices of the buffer. Empty hashes and signatures stand for null, and
+ * the coinbase flag is not carried: coinbase transactions are never relayed.
+ */
+public final class TransactionView {
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int INPUT_ENTRY_BYTES = 2 * Short.BYTES;
+    private static final int OUTPUT_ENTRY_BYTES = Short.BYTES;
+
+    private final ByteBuffer buf;
+    private final int numInputs;
+    private final int numOutputs;
+    private final int outputTable;
+    private final int inputsStart;
+    private final int outputsStart;
+
+    /** body offset of input cursorInput and output cursorOutput, so walking in order is O(1) per step */
+    private int cursorInput;
+    private int cursorInputOffset;
+    private int cursorOutput;
+    private int cursorOutputOffset;
+
+    private byte[] hash;
+
+    private TransactionView(ByteBuffer buf, int numInputs, int numOutputs, int outputsStart) {
+        this.buf = buf;
+        this.numInputs = numInputs;
+        this.numOutputs = numOutputs;
+        this.outputTable = HEADER_BYTES + numInputs * INPUT_ENTRY_BYTES;
+        this.inputsStart = outputTable + numOutputs * OUTPUT_ENTRY_BYTES;
+        this.outputsStart = outputsStart;
+        this.cursorInputOffset = inputsStart;
+        this.cursorOutputOffset = outputsStart;
+    }
+
+    /**
+     * Wraps the bytes between the position and limit of {@code buffer}, which must hold exactly one
+     * transaction. The buffer's position is left alone, and its contents must not change while
+     * the view is in use.
+     *
+     * @throws IllegalArgumentException if the lengths in the tables don't add up to the buffer
+     */
+    public static TransactionView wrap(ByteBuffer buffer) {
+        ByteBuffer buf = buffer.slice();
+        int size = buf.remaining();
+        if (size < HEADER_BYTES) {
+            throw new IllegalArgumentException("truncated transaction: " + size + " bytes");
+        }
+        int numInputs = buf.getInt(0);
+        int numOutputs = buf.getInt(Integer.BYTES);
+        long tables = HEADER_BYTES + (long) numInputs * INPUT_ENTRY_BYTES + (long) numOutputs * OUTPUT_ENTRY_BYTES;
+        if (numInputs < 0 || numOutputs < 0 || tables > size) {
+            throw new IllegalArgumentException("bad input/output counts: " + numInputs + "/" + numOutputs);
+        }
+        long body = 0;
+        for (int i = 0; i < numInputs; i++) {
+            int entry = HEADER_BYTES + i * INPUT_ENTRY_BYTES;
+            body += unsignedShort(buf, entry) + Integer.BYTES + unsignedShort(buf, entry + Short.BYTES);
+        }
+        long outputsStart = tables + body;
+        int outputTable = HEADER_BYTES + numInputs * INPUT_ENTRY_BYTES;
+        for (int j = 0; j < numOutputs; j++) {
+            body += Double.BYTES + unsignedShort(buf, outputTable + j * OUTPUT_ENTRY_BYTES);
+        }
+        if (tables + body != size) {
+            throw new IllegalArgumentException("transaction of " + size + " bytes declares " + (tables + body));
+        }
+        return new TransactionView(buf, numInputs, numOutputs, (int) outputsStart);
+    }
+
+    public int numInputs() {
+        return numInputs;
+    }
+
+    public int numOutputs() {
+        return numOutputs;
+    }
+
+    /** @return the number of bytes the transaction takes on the wire */
+    public int size() {
+        return buf.limit();
+    }
+
+    /** @return the hash of the transaction whose output input {@code i} spends, or null if it has none */
+    public byte[] getPrevTxHash(int i) {
+        int length = prevTxHashLength(i);
+        if (length == 0) {
+            return null;
+        }
+        byte[] prevTxHash = new byte[length];
+        buf.get(inputOffset(i), prevTxHash);
+        return prevTxHash;
+    }
+
+    /** @return the index of the output that input {@code i} spends */
+    public int getOutputIndex(int i) {
+        return buf.getInt(inputOffset(i) + prevTxHashLength(i));
+    }
+
+    /** @return the UTXO that input {@code i} spends */
+    public UTXO getOutpoint(int i) {
+        byte[] prevTxHash = getPrevTxHash(i);
+        return new UTXO((prevTxHash == null) ? new byte[0] : prevTxHash, getOutputIndex(i));
+    }
+
+    /** @return the signature of input {@code i}, or null if it is unsigned */
+    public byte[] getSignature(int i) {
+        int length = signatureLength(i);
+        if (length == 0) {
+            return null;
+        }
+        byte[] signature = new byte[length];
+        buf.get(inputOffset(i) + prevTxHashLength(i) + Integer.BYTES, signature);
+        return signature;
+    }
+
+    public double getOutputValue(int j) {
+        return buf.getDouble(outputOffset(j));
+    }
+
+    /**
+     * @return the value of output {@code j} in base units, which it must be a whole number of
+     * @throws ArithmeticException if it is not a representable amount or not whole units
+     */
+    public long getOutputUnits(int j) {
+        return Amount.toExactUnits(getOutputValue(j));
+    }
+
+    /**
+     * @return the address output {@code j} pays to: its interned entry, or a transient one holding
+     *         the decoded key if no output paying to it is in a UTXOPool
+     * @throws IllegalArgumentException if the bytes are not a public key of a known scheme
+     */
+    public AddressTable.Entry getOutputAddress(int j) {
+        return AddressTable.get().entryForEncoded(buf.slice(outputOffset(j) + Double.BYTES, addressLength(j)));
+    }
+
+    /**
+     * @return true if input {@code i} carries a valid signature by {@code address} of its own
+     *         outpoint and all outputs, the same data as {@link Transaction#getRawDataToSign(int)}
+     */
+    public boolean verifySignature(int i, AddressTable.Entry address) {
+        int offset = inputOffset(i);
+        int signed = prevTxHashLength(i) + Integer.BYTES;
+        return Crypto.verifySignature(address,
+                buf.slice(offset, signed),
+                buf.slice(outputsStart, buf.limit() - outputsStart),
+                buf.slice(offset + signed, signatureLength(i)));
+    }
+
+    /**
+     * Adds the check {@link #verifySignature} makes to {@code batch}, to be run with others later;
+     * the batch reads this view's buffer, which must not change until then
+     */
+    public void addSignatureCheck(int i, AddressTable.Entry address, SignatureBatch batch) {
+        int offset = inputOffset(i);
+        int signed = prevTxHashLength(i) + Integer.BYTES;
+        batch.add(address,
+                buf.slice(offset, signed),
+                buf.slice(outputsStart, buf.limit() - outputsStart),
+                buf.slice(offset + signed, signatureLength(i)));
+    }
+
+    /** @return a read-only view of the raw transaction, the bytes {@link #getHash()} is taken of */
+    public ByteBuffer rawTx() {
+        return buf.slice(inputsStart, buf.limit() - inputsStart).asReadOnlyBuffer();
+    }
+
+    /** @return the SHA-256 hash of the raw transaction, computed on first use */
+    public byte[] getHash() {
+        if (hash == null) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update(rawTx());
+                hash = md.digest();
+            } catch (NoSuchAlgorithmException x) {
+                x.printStackTrace(System.err);
+            }
+        }
+        return hash;
+    }
+
+    /** @return a {@link Transaction} with the same inputs, outputs and hash */
+    public Transaction materialize() {
+        Transaction tx = new Transaction();
+        for (int i = 0; i < numInputs; i++) {
+            tx.addInput(getPrevTxHash(i), getOutputIndex(i));
+            tx.addSignature(getSignature(i), i);
+        }
+        for (int j = 0; j < numOutputs; j++) {
+            tx.addOutput(getOutputValue(j), getOutputAddress(j).key);
+        }
+        tx.setHash(getHash().clone());
+        return tx;
+    }
+
+    private int prevTxHashLength(int i) {
+        return unsignedShort(buf, HEADER_BYTES + checkInput(i) * INPUT_ENTRY_BYTES);
+    }
+
+    private int signatureLength(int i) {
+        return unsignedShort(buf, HEADER_BYTES + checkInput(i) * INPUT_ENTRY_BYTES + Short.BYTES);
+    }
+
+    private int addressLength(int j) {
+        return unsignedShort(buf, outputTable + checkOutput(j) * OUTPUT_ENTRY_BYTES);
+    }
+
+    private int inputOffset(int i) {
+        checkInput(i);
+        if (i < cursorInput) {
+            cursorInput = 0;
+            cursorInputOffset = inputsStart;
+        }
+        for (; cursorInput < i; cursorInput++) {
+            cursorInputOffset += prevTxHashLength(cursorInput) + Integer.BYTES + signatureLength(cursorInput);
+        }
+        return cursorInputOffset;
+    }
+
+    private int outputOffset(int j) {
+        checkOutput(j);
+        if (j < cursorOutput) {
+            cursorOutput = 0;
+            cursorOutputOffset = outputsStart;
+        }
+        for (; cursorOutput < j; cursorOutput++) {
+            cursorOutputOffset += Double.BYTES + addressLength(cursorOutput);
+        }
+        return cursorOutputOffset;
+    }
+
+    private int checkInput(int i) {
+        if (i < 0 || i >= numInputs) {
+            throw new IndexOutOfBoundsException("input " + i + " of " + numInputs);
+        }
+        return i;
+    }
+
+    private int checkOutput(int j) {
+        if (j < 0 || j >= numOutputs) {
+            throw new IndexOutOfBoundsException("output " + j + " of " + numOutputs);
+        }
+        return j;
+    }
+
+    private static int unsignedShort(ByteBuffer buf, int index) {
+        return buf.getShort(index) & 0xffff;
+    }
+}
@@ -4,7 +4,8 @@ import java.util.List;
 import java.util.Set;
 
 public class TxHandler {
-    private UTXOPool utxoPool;
+    private UTXOLookup.Mutable utxoPool;
+    private final boolean wholeUnits;
 
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
@@ -13,7 +14,21 @@ public class TxHandler {
      */
     public TxHandler(UTXOPool utxoPool) {
         // IMPLEMENT THIS
-        this.utxoPool = utxoPool;
+        this(utxoPool, false);
+    }
+
+    /**
+     * Same as above; if {@code wholeUnits} is true, values are checked as whole numbers of base
+     * units, see {@link #isValidTx(Transaction)}.
+     */
+    public TxHandler(UTXOPool utxoPool, boolean wholeUnits) {
+        this((UTXOLookup.Mutable) utxoPool, wholeUnits);
+    }
+
+    /** Same as above over any set of UTXOs, such as a view that leaves the pool it reads unchanged */
+    TxHandler(UTXOLookup.Mutable utxos, boolean wholeUnits) {
+        this.utxoPool = utxos;
+        this.wholeUnits = wholeUnits;
     }
     
     /**
@@ -24,42 +39,136 @@ public class TxHandler {
      * (4) all of {@code tx}s output values are non-negative, and
      * (5) the sum of {@code tx}s input values is greater than or equal to the sum of its output
      *     values; and false otherwise.
+     *
+     * Values are summed as doubles. A handler made with {@code wholeUnits} checks them as whole
+     * numbers of base units ({@link Amount}) instead: a value that is not one, like 0.500000004,
+     * makes the transaction invalid, and sums are exact, so an input of 0.3 can pay outputs of 0.1
+     * and 0.2, which a sum of doubles turns down. All nodes must check with the same rule.
      */
     public boolean isValidTx(Transaction tx) {
+        LedgerMetrics metrics = LedgerMetrics.get();
+        long start = metrics.startTimer();
+        boolean valid;
+        try {
+            valid = checkTx(tx);
+        } catch (ArithmeticException e) {
+            // with wholeUnits, a value that is no amount, or sums past the largest one
+            valid = false;
+        }
+        metrics.txValidated(start, valid);
+        return valid;
+    }
+
+    private boolean checkTx(Transaction tx) {
         // IMPLEMENT THIS
         Set<UTXO> usedTransactions = new HashSet<>();
+        SignatureBatch signatures = new SignatureBatch();
         List<Transaction.Input> inputs = tx.getInputs();
         
         double inputSum = 0;
+        long inputUnits = 0;
         for (int  i = 0; i < inputs.size(); i++) {
             Transaction.Input input = inputs.get(i);
-            UTXO utxoId = new UTXO(input.prevTxHash, input.outputIndex);
-            
-            if (!utxoPool.contains(utxoId) ||  usedTransactions.contains(utxoId)) {
+            if (!utxoPool.mightContain(input.prevTxHash, input.outputIndex)) {
                 return false;
             }
+            UTXO utxoId = new UTXO(input.prevTxHash, input.outputIndex);
             
             Transaction.Output inputAsPrevTransactionOutput = utxoPool.getTxOutput(utxoId);
-            if (!Crypto.verifySignature(inputAsPrevTransactionOutput.address, tx.getRawDataToSign(i), input.signature)) {
+            if (inputAsPrevTransactionOutput == null || usedTransactions.contains(utxoId)) {
                 return false;
             }
             
+            tx.addSignatureCheck(i, inputAsPrevTransactionOutput.addressEntry(), signatures);
             usedTransactions.add(utxoId);
-            inputSum += inputAsPrevTransactionOutput.value;
+            if (wholeUnits) {
+                inputUnits = Math.addExact(inputUnits, inputAsPrevTransactionOutput.getExactUnits());
+            } else {
+                inputSum += inputAsPrevTransactionOutput.value;
+            }
         }
         
         double outputSum = 0;
+        long outputUnits = 0;
         for (Transaction.Output output : tx.getOutputs()) {
             if (output.value < 0) {
                 return false;
             }
             
-            outputSum += output.value;
+            if (wholeUnits) {
+                outputUnits = Math.addExact(outputUnits, output.getExactUnits());
+            } else {
+                outputSum += output.value;
+            }
         }
         
-        return (inputSum >= outputSum);
+        // signatures last, as they cost more than all the other checks together
+        return (wholeUnits ? inputUnits >= outputUnits : inputSum >= outputSum) && signatures.verify();
+    }
+
+
+    /**
+     * Same checks as {@link #isValidTx(Transaction)} on a transaction still in wire format. Output
+     * addresses are not decoded and nothing but the spent UTXOs is built.
+     */
+    public boolean isValidTx(TransactionView tx) {
+        LedgerMetrics metrics = LedgerMetrics.get();
+        long start = metrics.startTimer();
+        boolean valid;
+        try {
+            valid = checkTx(tx);
+        } catch (ArithmeticException e) {
+            valid = false;
+        }
+        metrics.txValidated(start, valid);
+        return valid;
     }
 
+    private boolean checkTx(TransactionView tx) {
+        Set<UTXO> usedTransactions = new HashSet<>();
+        SignatureBatch signatures = new SignatureBatch();
+
+        double inputSum = 0;
+        long inputUnits = 0;
+        for (int i = 0; i < tx.numInputs(); i++) {
+            byte[] prevTxHash = tx.getPrevTxHash(i);
+            int outputIndex = tx.getOutputIndex(i);
+            if (prevTxHash == null || !utxoPool.mightContain(prevTxHash, outputIndex)) {
+                return false;
+            }
+            UTXO utxoId = new UTXO(prevTxHash, outputIndex);
+
+            Transaction.Output inputAsPrevTransactionOutput = utxoPool.getTxOutput(utxoId);
+            if (inputAsPrevTransactionOutput == null || usedTransactions.contains(utxoId)) {
+                return false;
+            }
+
+            tx.addSignatureCheck(i, inputAsPrevTransactionOutput.addressEntry(), signatures);
+            usedTransactions.add(utxoId);
+            if (wholeUnits) {
+                inputUnits = Math.addExact(inputUnits, inputAsPrevTransactionOutput.getExactUnits());
+            } else {
+                inputSum += inputAsPrevTransactionOutput.value;
+            }
+        }
+
+        double outputSum = 0;
+        long outputUnits = 0;
+        for (int j = 0; j < tx.numOutputs(); j++) {
+            double value = tx.getOutputValue(j);
+            if (value < 0) {
+                return false;
+            }
+
+            if (wholeUnits) {
+                outputUnits = Math.addExact(outputUnits, tx.getOutputUnits(j));
+            } else {
+                outputSum += value;
+            }
+        }
+
+        return (wholeUnits ? inputUnits >= outputUnits : inputSum >= outputSum) && signatures.verify();
+    }
 
     /**
      * Handles each epoch by receiving an unordered array of proposed transactions, checking each
@@ -67,6 +176,7 @@ public class TxHandler {
      * updating the current UTXO pool as appropriate.
      */
     public Transaction[] handleTxs(Transaction[] possibleTxs) {
+        long start = LedgerMetrics.get().startTimer();
         List<Transaction> result = new ArrayList<>();
 
         boolean atleast1Considered;
@@ -81,6 +191,7 @@ public class TxHandler {
             }
         } while (atleast1Considered);
 
+        LedgerMetrics.get().txBatchHandled(start, false, possibleTxs.length, result.size());
         return result.toArray(new Transaction[0]);
     }
 
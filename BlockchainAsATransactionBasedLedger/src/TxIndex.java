@@ -0,0 +1,563 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent index from transaction hash to the blocks holding the transaction. Records are
+ * buffered in memory and written out in batches as immutable segment files, each sorted by
+ * transaction hash and memory-mapped for reading, so a lookup is a binary search per segment.
+ * When there are more than {@code maxSegments} segments, segments of about the same size are
+ * merged: sizes are split into tiers {@link #TIER_FANOUT} times apart, and the smallest tier
+ * holding that many segments, or else the smallest holding two, is merged into one. A record is
+ * thus rewritten about once per tier rather than by every merge after it was written. A segment
+ * merged away is unmapped once no lookup reads it any more.
+ *
+ * <p>A segment is a 16-byte header (int magic, int version, long record count) followed by
+ * 72-byte records: transaction hash, block hash, int height and int position in the block.
+ * Segments are written to a temporary file and renamed into place, so a crash loses at most the
+ * records not flushed yet. A transaction can be in blocks on several branches; the index keeps
+ * every location, and which one is on the main chain is up to the caller.
+ */
+public final class TxIndex implements Closeable {
+
+    public static final int HASH_BYTES = 32;
+    public static final int RECORD_BYTES = 2 * HASH_BYTES + 2 * Integer.BYTES;
+    public static final int DEFAULT_BATCH_SIZE = 1 << 16;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+    /** how many times larger the segments of a tier are than those of the tier below */
+    public static final int TIER_FANOUT = 4;
+
+    private static final int MAGIC = 0x54584958; // "TXIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final String SUFFIX = ".txidx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** a segment is mapped as one buffer, so it must stay below 2 GB */
+    private static final long MAX_SEGMENT_RECORDS = (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES;
+
+    private final Path directory;
+    private final int batchSize;
+    private final int maxSegments;
+
+    /** the mapped segments, newest first; replaced as a whole, so readers need no lock */
+    private volatile Segment[] segments;
+    private long nextSegmentNumber;
+
+    /** records not written yet, and their locations by transaction hash; guarded by this */
+    private final List<byte[]> pendingRecords = new ArrayList<>();
+    private final Map<ByteArrayWrapper, List<Location>> pending = new HashMap<>();
+
+    /** Where a transaction was found: the block, its height and the transaction's position in it */
+    public static final class Location {
+        private final byte[] blockHash;
+        private final int height;
+        private final int position;
+
+        public Location(byte[] blockHash, int height, int position) {
+            this.blockHash = blockHash;
+            this.height = height;
+            this.position = position;
+        }
+
+        public byte[] getBlockHash() {
+            return blockHash;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /** @return the index of the transaction in {@link Block#getTransactions()} */
+        public int getPosition() {
+            return position;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Location)) {
+                return false;
+            }
+            Location location = (Location) other;
+            return height == location.height && position == location.position
+                    && Arrays.equals(blockHash, location.blockHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Arrays.hashCode(blockHash) + height) + position;
+        }
+    }
+
+    private TxIndex(Path directory, int batchSize, int maxSegments, Segment[] segments, long nextSegmentNumber) {
+        this.directory = directory;
+        this.batchSize = batchSize;
+        this.maxSegments = maxSegments;
+        this.segments = segments;
+        this.nextSegmentNumber = nextSegmentNumber;
+    }
+
+    public static TxIndex open(Path directory) throws IOException {
+        return open(directory, DEFAULT_BATCH_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Opens the index in {@code directory}, creating the directory if needed, mapping the segments
+     * already there and removing temporary files left by an interrupted write.
+     *
+     * @param batchSize   how many records are buffered before they are written as a segment
+     * @param maxSegments how many segments may pile up before they are merged
+     * @throws IOException if a segment cannot be read or is not a segment
+     */
+    public static TxIndex open(Path directory, int batchSize, int maxSegments) throws IOException {
+        if (batchSize < 1 || maxSegments < 1) {
+            throw new IllegalArgumentException("batchSize and maxSegments must be positive");
+        }
+        Files.createDirectories(directory);
+        List<Segment> found = new ArrayList<>();
+        long nextNumber = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.delete(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    Segment segment = Segment.map(file, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                    found.add(segment);
+                    nextNumber = Math.max(nextNumber, segment.number + 1);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("unexpected segment name in " + directory, e);
+        }
+        found.sort((a, b) -> Long.compare(b.number, a.number));
+        return new TxIndex(directory, batchSize, maxSegments, found.toArray(new Segment[0]), nextNumber);
+    }
+
+    /**
+     * Records that the block with hash {@code blockHash} at {@code height} holds the transactions
+     * {@code txHashes}, in block order. Writes a segment once a batch is full.
+     *
+     * @throws UncheckedIOException if writing a segment fails; the records stay buffered
+     */
+    public synchronized void add(byte[] blockHash, int height, List<byte[]> txHashes) {
+        checkHash(blockHash);
+        for (int i = 0; i < txHashes.size(); i++) {
+            byte[] txHash = txHashes.get(i);
+            checkHash(txHash);
+            Location location = new Location(blockHash, height, i);
+            pending.computeIfAbsent(new ByteArrayWrapper(txHash), k -> new ArrayList<>(1)).add(location);
+            pendingRecords.add(record(txHash, location));
+        }
+        if (pendingRecords.size() >= batchSize) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** @return every location of the transaction with hash {@code txHash}, lowest height first */
+    public List<Location> lookup(byte[] txHash) {
+        checkHash(txHash);
+        List<Location> locations = new ArrayList<>(1);
+        synchronized (this) {
+            List<Location> buffered = pending.get(new ByteArrayWrapper(txHash));
+            if (buffered != null) {
+                locations.addAll(buffered);
+            }
+        }
+        long[] key = key(ByteBuffer.wrap(txHash), 0);
+        int buffered = locations.size();
+        while (!collect(segments, key, locations)) {
+            // a segment was merged away and may be unmapped; its records are in the newer array
+            locations.subList(buffered, locations.size()).clear();
+        }
+        if (locations.size() > 1) {
+            // a block connected again after a restart, or a merge that could not remove its inputs
+            List<Location> distinct = new ArrayList<>(new LinkedHashSet<>(locations));
+            distinct.sort((a, b) -> Integer.compare(a.height, b.height));
+            return distinct;
+        }
+        return locations;
+    }
+
+    /** @return false if one of {@code current} was released before it could be read */
+    private static boolean collect(Segment[] current, long[] key, List<Location> locations) {
+        for (Segment segment : current) {
+            if (!segment.acquire()) {
+                return false;
+            }
+            try {
+                segment.collect(key, locations);
+            } finally {
+                segment.release();
+            }
+        }
+        return true;
+    }
+
+    /** @return the number of records written to segments, counting any that are stored twice */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /** @return the number of records buffered in memory */
+    public synchronized int pendingSize() {
+        return pendingRecords.size();
+    }
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /** Writes the buffered records as a new segment, and merges segments if there are too many */
+    public synchronized void flush() throws IOException {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        pendingRecords.sort(Arrays::compareUnsigned);
+        Segment segment = write(pendingRecords.iterator(), pendingRecords.size());
+        pendingRecords.clear();
+        pending.clear();
+
+        Segment[] current = segments;
+        Segment[] updated = new Segment[current.length + 1];
+        updated[0] = segment;
+        System.arraycopy(current, 0, updated, 1, current.length);
+        segments = updated;
+        if (updated.length > maxSegments) {
+            merge();
+        }
+    }
+
+    /** Flushes the buffered records and unmaps the segments; lookups find nothing afterwards */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        Segment[] current = segments;
+        segments = new Segment[0];
+        for (Segment segment : current) {
+            segment.release();
+        }
+    }
+
+    /**
+     * Merges the segments of one size tier, as many as fit in one segment, and removes their
+     * files. A segment is read through its mapping, which outlives its file, and is unmapped only
+     * when the last lookup reading it is done, so lookups running during a merge still see every
+     * record.
+     */
+    private void merge() throws IOException {
+        Segment[] current = segments;
+        List<List<Segment>> tiers = new ArrayList<>();
+        for (Segment segment : current) {
+            int tier = tier(segment.count);
+            while (tiers.size() <= tier) {
+                tiers.add(new ArrayList<>());
+            }
+            tiers.get(tier).add(segment);
+        }
+        List<Segment> tier = smallestTier(tiers, TIER_FANOUT);
+        if (tier == null) {
+            tier = smallestTier(tiers, 2);
+        }
+        if (tier == null) {
+            return;
+        }
+        List<Segment> inputs = new ArrayList<>();
+        long records = 0;
+        for (Segment segment : tier) {
+            if (records + segment.count <= MAX_SEGMENT_RECORDS) {
+                inputs.add(segment);
+                records += segment.count;
+            }
+        }
+        if (inputs.size() < 2) {
+            return;
+        }
+        Segment merged = write(new MergeIterator(inputs), records);
+
+        Segment[] updated = new Segment[current.length - inputs.size() + 1];
+        updated[0] = merged;
+        int next = 1;
+        for (Segment segment : current) {
+            if (!inputs.contains(segment)) {
+                updated[next++] = segment;
+            }
+        }
+        segments = updated;
+        for (Segment input : inputs) {
+            input.release();
+            Files.deleteIfExists(input.path);
+        }
+    }
+
+    /** @return the tier of a segment of {@code count} records: 0 below TIER_FANOUT batches, 1 below TIER_FANOUT^2, ... */
+    private int tier(int count) {
+        int tier = 0;
+        for (long bound = (long) batchSize * TIER_FANOUT; count >= bound; bound *= TIER_FANOUT) {
+            tier++;
+        }
+        return tier;
+    }
+
+    private static List<Segment> smallestTier(List<List<Segment>> tiers, int minSegments) {
+        for (List<Segment> tier : tiers) {
+            if (tier.size() >= minSegments) {
+                return tier;
+            }
+        }
+        return null;
+    }
+
+    /** Writes {@code records}, sorted and at most {@code maxCount}, as the next segment and maps it; repeats are written once */
+    private Segment write(Iterator<byte[]> records, long maxCount) throws IOException {
+        long number = nextSegmentNumber++;
+        Path file = directory.resolve(String.format("%016d%s", number, SUFFIX));
+        Path temp = directory.resolve(file.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 1024 * RECORD_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(maxCount);
+            byte[] previous = null;
+            long count = 0;
+            while (records.hasNext()) {
+                byte[] record = records.next();
+                if (Arrays.equals(record, previous)) {
+                    continue;
+                }
+                if (buffer.remaining() < RECORD_BYTES) {
+                    writeFully(channel, buffer);
+                }
+                buffer.put(record);
+                previous = record;
+                count++;
+            }
+            writeFully(channel, buffer);
+            buffer.putLong(count).flip();
+            channel.write(buffer, 8);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return Segment.map(file, number);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static byte[] record(byte[] txHash, Location location) {
+        return ByteBuffer.allocate(RECORD_BYTES).put(txHash).put(location.blockHash)
+                .putInt(location.height).putInt(location.position).array();
+    }
+
+    /** @return the transaction hash at {@code offset} as four big-endian longs, which compare unsigned like its bytes */
+    private static long[] key(ByteBuffer buffer, int offset) {
+        return new long[] {buffer.getLong(offset), buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16), buffer.getLong(offset + 24)};
+    }
+
+    private static void checkHash(byte[] hash) {
+        if (hash == null || hash.length != HASH_BYTES) {
+            throw new IllegalArgumentException("expected a " + HASH_BYTES + "-byte hash");
+        }
+    }
+
+    /** Sun's Unsafe.invokeCleaner bound to its instance, or null if this JDK does not offer it */
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Unmaps {@code buffer} now if the JDK allows it, and otherwise leaves it to the garbage collector */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            // still unmapped once the buffer is collected
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long number;
+        final MappedByteBuffer buffer;
+        final int count;
+
+        /** one for the index holding the segment, plus one per lookup reading it; unmapped at 0 */
+        private final AtomicInteger users = new AtomicInteger(1);
+
+        private Segment(Path path, long number, MappedByteBuffer buffer, int count) {
+            this.path = path;
+            this.number = number;
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        static Segment map(Path path, long number) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                    throw new IOException("not a transaction index segment: " + path);
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                long count = buffer.getLong(8);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                        || count < 0 || HEADER_BYTES + count * RECORD_BYTES != size) {
+                    throw new IOException("not a transaction index segment: " + path);
+                }
+                return new Segment(path, number, buffer, (int) count);
+            }
+        }
+
+        /** @return false if the index has released the segment, which may be unmapped already */
+        boolean acquire() {
+            for (int n = users.get(); n > 0; n = users.get()) {
+                if (users.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0) {
+                unmap(buffer);
+            }
+        }
+
+        int offset(int record) {
+            return HEADER_BYTES + record * RECORD_BYTES;
+        }
+
+        /** @return the first record whose hash is not below {@code key}, or count if there is none */
+        int lowerBound(long[] key) {
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(offset(mid), key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        int compare(int offset, long[] key) {
+            for (int i = 0; i < key.length; i++) {
+                int c = Long.compareUnsigned(buffer.getLong(offset + i * Long.BYTES), key[i]);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+
+        void collect(long[] key, List<Location> out) {
+            for (int r = lowerBound(key); r < count && compare(offset(r), key) == 0; r++) {
+                int offset = offset(r);
+                byte[] blockHash = new byte[HASH_BYTES];
+                buffer.get(offset + HASH_BYTES, blockHash);
+                out.add(new Location(blockHash, buffer.getInt(offset + 2 * HASH_BYTES),
+                        buffer.getInt(offset + 2 * HASH_BYTES + Integer.BYTES)));
+            }
+        }
+
+        byte[] recordAt(int record) {
+            byte[] bytes = new byte[RECORD_BYTES];
+            buffer.get(offset(record), bytes);
+            return bytes;
+        }
+    }
+
+    /** The records of several segments in sorted order, by a k-way merge */
+    private static final class MergeIterator implements Iterator<byte[]> {
+        private final PriorityQueue<Cursor> heap = new PriorityQueue<>((a, b) -> Arrays.compareUnsigned(a.record, b.record));
+
+        private static final class Cursor {
+            final Segment segment;
+            int next;
+            byte[] record;
+
+            Cursor(Segment segment) {
+                this.segment = segment;
+            }
+
+            boolean advance() {
+                if (next == segment.count) {
+                    return false;
+                }
+                record = segment.recordAt(next++);
+                return true;
+            }
+        }
+
+        MergeIterator(List<Segment> segments) {
+            for (Segment segment : segments) {
+                Cursor cursor = new Cursor(segment);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heap.isEmpty();
+        }
+
+        @Override
+        public byte[] next() {
+            Cursor cursor = heap.poll();
+            byte[] record = cursor.record;
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+            return record;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * The reads transaction validation makes of a set of UTXOs. {@link UTXOPool} is one, and so is the
+ * view of a parent pool that {@link BlockValidator} checks each group of a block against.
+ */
+public interface UTXOLookup {
+
+    /** @return the transaction output of {@code utxo}, or null if it is not in the set */
+    Transaction.Output getTxOutput(UTXO utxo);
+
+    /**
+     * @return false if the output {@code index} of the transaction with hash {@code txHash} is
+     *         certainly not in the set, true if it may be
+     */
+    boolean mightContain(byte[] txHash, int index);
+
+    /** A set of UTXOs that a {@link TxHandler} also applies the transactions it accepts to */
+    interface Mutable extends UTXOLookup {
+
+        void addUTXO(UTXO utxo, Transaction.Output txOut);
+
+        void removeUTXO(UTXO utxo);
+    }
+}
@@ -1,33 +1,197 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
-public class UTXOPool {
+public class UTXOPool implements UTXOLookup.Mutable {
+
+    /** Number of shards used by a pool created with the no-argument constructor */
+    public static final int DEFAULT_SHARD_COUNT = 16;
+
+    /** Updates with at least this many UTXOs are applied one shard per thread */
+    public static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    /** False positive rate of the outpoint filter of a pool created without one */
+    public static final double DEFAULT_FILTER_FALSE_POSITIVE_RATE = 0.001;
+
+    /** slots a shard's filter starts with; it doubles whenever it is {@link #FILTER_MAX_LOAD} full */
+    private static final int FILTER_INITIAL_CAPACITY = 256;
+    private static final double FILTER_MAX_LOAD = 0.9;
+
+    /** changes a shard records before folding them into its commitment unasked */
+    public static final int COMMITMENT_BATCH = 1024;
+
+    /** elements to hash over all shards from which {@link #getCommitment()} folds the shards concurrently */
+    private static final int COMMITMENT_PARALLEL_THRESHOLD = 64;
+
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
 
     /**
-     * The current collection of UTXOs, with each one mapped to its corresponding transaction output
+     * The current collection of UTXOs, with each one mapped to its corresponding transaction output.
+     * UTXOs are spread over the shards by the leading bits of their transaction hash, and every
+     * shard is guarded by its own read-write lock. Lookups of a single UTXO take no lock at all:
+     * a shard's table maps UTXOs to outputs in a ConcurrentHashMap, which may be read while it is
+     * written to. Every other read shares the read lock with other readers. A shard also indexes
+     * its UTXOs by the address they pay to, from the first query by address on that shard onwards.
+     *
+     * Copies and snapshots share the tables of a shard with the pool they were taken from, and
+     * whichever side first writes to a shared shard copies its table before doing so.
+     *
+     * Every shard keeps a cuckoo filter over its UTXOs, so that lookups of outpoints that are not
+     * in the pool, which is what junk and double-spending transactions mostly ask for, are
+     * answered without probing the table; {@link #mightContain(byte[], int)} does so without
+     * even building a UTXO.
+     *
+     * Once asked for its {@link #getCommitment() commitment}, a shard keeps a MuHash3072 of its
+     * UTXOs with their outputs, and so do copies of it, so that later commitments need not read
+     * the whole pool. Each add and remove is recorded, and folded into the hash the next time it
+     * is asked for or once {@link #COMMITMENT_BATCH} have piled up, at one 3072-bit
+     * multiplication per change. Copies that are thrown away after use, like the ones mining
+     * and validation hand to a TxHandler, are taken with
+     * {@link #UTXOPool(UTXOPool, boolean) tracking off} so they don't pay for it.
      */
-    private HashMap<UTXO, Transaction.Output> H;
+    private final Shard[] shards;
+    private final int shardBits;
+    private final int filterFingerprintBits;
 
     /** Creates a new empty UTXOPool */
     public UTXOPool() {
-        H = new HashMap<UTXO, Transaction.Output>();
+        this(DEFAULT_SHARD_COUNT);
     }
 
-    /** Creates a new UTXOPool that is a copy of {@code uPool} */
+    /** Creates a new empty UTXOPool with {@code shardCount} shards, rounded up to a power of two */
+    public UTXOPool(int shardCount) {
+        this(shardCount, DEFAULT_FILTER_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Creates a new empty UTXOPool with {@code shardCount} shards, rounded up to a power of two,
+     * whose outpoint filters wrongly report an absent outpoint as maybe present at most at
+     * {@code filterFalsePositiveRate}. The rate is met through the fingerprint length; filters
+     * take four bytes per slot whatever the rate.
+     */
+    public UTXOPool(int shardCount, double filterFalsePositiveRate) {
+        if (shardCount < 1 || shardCount > (1 << 16)) {
+            throw new IllegalArgumentException("shardCount must be between 1 and 65536: " + shardCount);
+        }
+        shardBits = 32 - Integer.numberOfLeadingZeros(shardCount - 1);
+        filterFingerprintBits = CuckooFilter.fingerprintBits(filterFalsePositiveRate);
+        shards = new Shard[1 << shardBits];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(new Table(new ConcurrentHashMap<UTXO, Transaction.Output>(), null,
+                    new CuckooFilter(FILTER_INITIAL_CAPACITY, filterFingerprintBits), null,
+                    new ArrayList<Change>()), false, true);
+        }
+    }
+
+    /**
+     * Creates a new UTXOPool that is a copy of {@code uPool}. The copy shares every shard with
+     * {@code uPool} until one of the two writes to it, so copying takes time in the number of shards.
+     */
     public UTXOPool(UTXOPool uPool) {
-        H = new HashMap<UTXO, Transaction.Output>(uPool.H);
+        this(uPool, true);
+    }
+
+    /**
+     * Same as above, but unless {@code trackCommitment} is set, shards of the copy drop the
+     * running hash of {@code uPool} on their first write and record no changes from then on. A
+     * commitment can still be asked of such a copy; shards it has written to are then read in
+     * full every time.
+     */
+    public UTXOPool(UTXOPool uPool, boolean trackCommitment) {
+        long start = LedgerMetrics.get().startTimer();
+        shardBits = uPool.shardBits;
+        filterFingerprintBits = uPool.filterFingerprintBits;
+        shards = new Shard[uPool.shards.length];
+        Table[] tables = uPool.shareTables();
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(tables[i], true, trackCommitment);
+        }
+        LedgerMetrics.get().utxoPoolCopied(start);
     }
 
     /** Adds a mapping from UTXO {@code utxo} to transaction output @code{txOut} to the pool */
     public void addUTXO(UTXO utxo, Transaction.Output txOut) {
-        H.put(utxo, txOut);
+        Shard shard = shardFor(utxo);
+        shard.lock();
+        try {
+            shard.put(utxo, txOut);
+        } finally {
+            shard.unlock();
+        }
+        LedgerMetrics.get().utxoAdded(1);
     }
 
     /** Removes the UTXO {@code utxo} from the pool */
     public void removeUTXO(UTXO utxo) {
-        H.remove(utxo);
+        Shard shard = shardFor(utxo);
+        shard.lock();
+        try {
+            shard.remove(utxo);
+        } finally {
+            shard.unlock();
+        }
+        LedgerMetrics.get().utxoRemoved(1);
+    }
+
+    /**
+     * Removes every UTXO in {@code removed} and then adds every mapping in {@code added}. Each
+     * affected shard is locked once, and large updates are applied to the shards concurrently.
+     */
+    public void applyUpdate(Collection<UTXO> removed, Map<UTXO, Transaction.Output> added) {
+        List<List<UTXO>> removedByShard = new ArrayList<>(shards.length);
+        List<List<Map.Entry<UTXO, Transaction.Output>>> addedByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            removedByShard.add(new ArrayList<>());
+            addedByShard.add(new ArrayList<>());
+        }
+        for (UTXO utxo : removed) {
+            removedByShard.get(shardIndex(utxo)).add(utxo);
+        }
+        for (Map.Entry<UTXO, Transaction.Output> entry : added.entrySet()) {
+            addedByShard.get(shardIndex(entry.getKey())).add(entry);
+        }
+
+        IntStream indices = IntStream.range(0, shards.length)
+                .filter(i -> !removedByShard.get(i).isEmpty() || !addedByShard.get(i).isEmpty());
+        if (removed.size() + added.size() >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> {
+            Shard shard = shards[i];
+            shard.lock();
+            try {
+                for (UTXO utxo : removedByShard.get(i)) {
+                    shard.remove(utxo);
+                }
+                for (Map.Entry<UTXO, Transaction.Output> entry : addedByShard.get(i)) {
+                    shard.put(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                shard.unlock();
+            }
+        });
+        LedgerMetrics.get().utxoRemoved(removed.size());
+        LedgerMetrics.get().utxoAdded(added.size());
     }
 
     /**
@@ -35,21 +199,751 @@ public class UTXOPool {
      *         not in the pool.
      */
     public Transaction.Output getTxOutput(UTXO ut) {
-        return H.get(ut);
+        long hash = filterHash(ut.getTxHash(), ut.getIndex());
+        Shard shard = shardFor(ut);
+        boolean filtered = !shard.filterMightContain(hash);
+        Transaction.Output txOut = filtered ? null : shard.get(ut);
+        recordFilterResult(filtered, txOut != null);
+        return txOut;
     }
 
     /** @return true if UTXO {@code utxo} is in the pool and false otherwise */
     public boolean contains(UTXO utxo) {
-        return H.containsKey(utxo);
+        return getTxOutput(utxo) != null;
+    }
+
+    /**
+     * @return false if the output {@code index} of the transaction with hash {@code txHash} is
+     *         certainly not in the pool, true if it may be. Only the shard's filter is read, so a
+     *         true answer still has to be confirmed with {@link #contains(UTXO)}; in return, no
+     *         UTXO is built and the table is not probed.
+     */
+    public boolean mightContain(byte[] txHash, int index) {
+        long hash = filterHash(txHash, index);
+        boolean maybe = shards[shardIndex(txHash, shardBits)].filterMightContain(hash);
+        if (!maybe) {
+            LedgerMetrics.get().utxoFilterRejected();
+        }
+        return maybe;
+    }
+
+    private static void recordFilterResult(boolean filtered, boolean found) {
+        if (filtered) {
+            LedgerMetrics.get().utxoFilterRejected();
+        } else if (!found) {
+            LedgerMetrics.get().utxoFilterFalsePositive();
+        }
     }
 
-    /** Returns an {@code ArrayList} of all UTXOs in the pool */
+    /** @return the number of UTXOs in the pool */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.read(t -> t.H.size());
+        }
+        return size;
+    }
+
+    /**
+     * Returns an {@code ArrayList} of all UTXOs in the pool. To go through a large pool without
+     * copying it, read a {@link #snapshot()} instead.
+     */
     public ArrayList<UTXO> getAllUTXO() {
-        Set<UTXO> setUTXO = H.keySet();
         ArrayList<UTXO> allUTXO = new ArrayList<UTXO>();
-        for (UTXO ut : setUTXO) {
-            allUTXO.add(ut);
+        for (Shard shard : shards) {
+            allUTXO.addAll(shard.read(t -> new ArrayList<>(t.H.keySet())));
         }
         return allUTXO;
     }
+
+    /**
+     * @return a consistent, read-only view of the pool as it is now. Taking it copies nothing: the
+     *         snapshot shares the shard tables, and the pool copies a shared table on its next
+     *         write to it, so the snapshot can be read from any thread while the pool keeps changing.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(shareTables(), shardBits);
+    }
+
+    /**
+     * @return a hash of the pool's UTXOs and their outputs that depends on nothing else: not the
+     *         order they were added in, the number of shards or the UTXOs since removed. Pools with
+     *         the same UTXOs have commitments with equal digests, and barring a collision, pools
+     *         without do not. The first call reads every UTXO; after that, and in copies taken
+     *         after it, only the shards' running hashes and the changes recorded since are read.
+     *         All shards are locked at once.
+     */
+    public MuHash3072 getCommitment() {
+        MuHash3072[] parts = new MuHash3072[shards.length];
+        int locked = 0;
+        try {
+            int unfolded = 0;
+            for (; locked < shards.length; locked++) {
+                shards[locked].lock();
+                unfolded += shards[locked].table.unfolded();
+            }
+            // this thread holds every lock, so the shards can be folded on other threads undisturbed
+            IntStream indices = IntStream.range(0, shards.length);
+            if (unfolded >= COMMITMENT_PARALLEL_THRESHOLD) {
+                indices = indices.parallel();
+            }
+            indices.forEach(i -> parts[i] = shards[i].commitment());
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                shards[i].unlock();
+            }
+        }
+        return combine(parts);
+    }
+
+    /** @return the product of {@code parts}, none of which is changed */
+    private static MuHash3072 combine(MuHash3072[] parts) {
+        MuHash3072 commitment = new MuHash3072(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            commitment.combine(parts[i]);
+        }
+        return commitment;
+    }
+
+    /** @return the bytes a UTXO and its output contribute to the commitment */
+    private static byte[] commitmentElement(UTXO utxo, Transaction.Output txOut) {
+        byte[] txHash = utxo.getTxHash();
+        AddressTable.Entry address = (txOut.address == null) ? null : txOut.addressEntry();
+        ByteBuffer element = ByteBuffer.allocate(Short.BYTES + txHash.length + Integer.BYTES + Double.BYTES
+                + ((address == null) ? 0 : address.encodedLength()));
+        element.putShort((short) txHash.length).put(txHash).putInt(utxo.getIndex()).putDouble(txOut.value);
+        if (address != null) {
+            address.writeEncoded(element);
+        }
+        return element.array();
+    }
+
+    /** Marks every shard as shared and returns its table, with all shards locked at once */
+    private Table[] shareTables() {
+        Table[] tables = new Table[shards.length];
+        int locked = 0;
+        try {
+            for (; locked < shards.length; locked++) {
+                shards[locked].lock();
+            }
+            for (int i = 0; i < shards.length; i++) {
+                shards[i].shared = true;
+                tables[i] = shards[i].table;
+            }
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                shards[i].unlock();
+            }
+        }
+        return tables;
+    }
+
+    /** @return all UTXOs in the pool that pay to {@code address} */
+    public ArrayList<UTXO> getUTXOs(PublicKey address) {
+        ArrayList<UTXO> owned = new ArrayList<UTXO>();
+        AddressTable.Entry entry = AddressTable.get().lookup(address);
+        if (entry == null) {
+            return owned;
+        }
+        for (Shard shard : shards) {
+            List<UTXO> utxos = shard.read(t -> (t.byAddress == null) ? null
+                    : new ArrayList<>(t.byAddress.getOrDefault(entry.id, new HashSet<>())));
+            if (utxos == null) {
+                // the index is built on first use, which is a write
+                shard.lock();
+                try {
+                    utxos = new ArrayList<>(shard.addressIndex().getOrDefault(entry.id, new HashSet<>()));
+                } finally {
+                    shard.unlock();
+                }
+            }
+            owned.addAll(utxos);
+        }
+        return owned;
+    }
+
+    /** @return the sum of the values of all UTXOs in the pool that pay to {@code address} */
+    public double getBalance(PublicKey address) {
+        return Amount.toCoins(getBalanceUnits(address));
+    }
+
+    /**
+     * @return the sum of the values of all UTXOs in the pool that pay to {@code address}, in base units
+     * @throws ArithmeticException if a value is not a representable amount or the sum overflows
+     */
+    public long getBalanceUnits(PublicKey address) {
+        long balance = 0;
+        for (UTXO utxo : getUTXOs(address)) {
+            Transaction.Output txOut = getTxOutput(utxo);
+            if (txOut != null) {
+                balance = Math.addExact(balance, txOut.getUnits());
+            }
+        }
+        return balance;
+    }
+
+    /**
+     * Picks UTXOs paying to {@code address} to fund a transaction of {@code amount}, largest first,
+     * so that as few inputs as possible are used.
+     *
+     * @return the chosen UTXOs, whose values add up to at least {@code amount}, or null if the
+     *         balance of {@code address} is too low
+     */
+    public List<UTXO> selectCoins(PublicKey address, double amount) {
+        return selectCoinsUnits(address, Amount.toUnits(amount));
+    }
+
+    /** Same as {@link #selectCoins(PublicKey, double)} for an amount in base units */
+    public List<UTXO> selectCoinsUnits(PublicKey address, long amount) {
+        List<UTXO> owned = getUTXOs(address);
+        Map<UTXO, Long> values = new HashMap<>();
+        for (UTXO utxo : owned) {
+            Transaction.Output txOut = getTxOutput(utxo);
+            values.put(utxo, (txOut == null) ? 0 : txOut.getUnits());
+        }
+        owned.sort((a, b) -> Long.compare(values.get(b), values.get(a)));
+
+        List<UTXO> selected = new ArrayList<>();
+        long total = 0;
+        for (UTXO utxo : owned) {
+            if (total >= amount) {
+                break;
+            }
+            selected.add(utxo);
+            total = Math.addExact(total, values.get(utxo));
+        }
+        return (total >= amount) ? selected : null;
+    }
+
+    /**
+     * @return an estimate in bytes of the heap held by the address index, from the number of
+     *         addresses and indexed UTXOs and the sizes of the HashMap/HashSet structures holding
+     *         them on a 64-bit JVM with compressed references; 0 while no shard has been queried
+     */
+    public long estimateAddressIndexBytes() {
+        long addresses = 0;
+        long indexed = 0;
+        for (Shard shard : shards) {
+            long[] counts = shard.read(t -> {
+                long[] c = new long[2];
+                if (t.byAddress != null) {
+                    c[0] = t.byAddress.size();
+                    for (HashSet<UTXO> utxos : t.byAddress.values()) {
+                        c[1] += utxos.size();
+                    }
+                }
+                return c;
+            });
+            addresses += counts[0];
+            indexed += counts[1];
+        }
+        // per address: boxed ID (16), map node (32), table slot (~6), HashSet (16) and its HashMap (48)
+        // and table (~16 + slots); per UTXO: set node (32) and table slot (~6)
+        return addresses * 134 + indexed * 38;
+    }
+
+    /**
+     * @return the false positive rate the outpoint filters should show at their current load,
+     *         averaged over the shards; {@code LedgerMetrics} tracks the rate actually seen
+     */
+    public double estimateFilterFalsePositiveRate() {
+        double sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.read(t -> t.filter.expectedFalsePositiveRate());
+        }
+        return sum / shards.length;
+    }
+
+    /** @return the heap taken by the outpoint filters of this pool's own shards, in bytes */
+    public long estimateFilterBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.read(t -> t.filter.sizeInBytes());
+        }
+        return bytes;
+    }
+
+    /** @return the number of shards in the pool */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return the size and lock statistics of every shard, in shard order; the lock is taken by
+     *         writers, and by readers only when a write raced with them
+     */
+    public List<ShardStats> getShardStats() {
+        List<ShardStats> stats = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            shard.lock();
+            try {
+                stats.add(new ShardStats(i, shard.table.H.size(), shard.acquisitions, shard.contended));
+            } finally {
+                shard.unlock();
+            }
+        }
+        return stats;
+    }
+
+    private Shard shardFor(UTXO utxo) {
+        return shards[shardIndex(utxo)];
+    }
+
+    private int shardIndex(UTXO utxo) {
+        return shardIndex(utxo, shardBits);
+    }
+
+    /** @return the shard holding {@code utxo}, taken from the leading bits of its transaction hash */
+    private static int shardIndex(UTXO utxo, int shardBits) {
+        return shardIndex(utxo.getTxHash(), shardBits);
+    }
+
+    private static int shardIndex(byte[] txHash, int shardBits) {
+        if (shardBits == 0) {
+            return 0;
+        }
+        int prefix = 0;
+        for (int i = 0; i < 4; i++) {
+            prefix = (prefix << 8) | (i < txHash.length ? (txHash[i] & 0xff) : 0);
+        }
+        return prefix >>> (32 - shardBits);
+    }
+
+    /**
+     * @return a 64-bit mix of an outpoint for the filters. The leading bits of the hash, which
+     *         pick the shard, are mixed in like the rest, so shards do not all use the same buckets.
+     */
+    private static long filterHash(byte[] txHash, int index) {
+        long h = 0x9E3779B97F4A7C15L * (index + 1);
+        int i = 0;
+        for (; i + Long.BYTES <= txHash.length; i += Long.BYTES) {
+            h = Long.rotateLeft(h ^ (long) LONG_BE.get(txHash, i) * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+        }
+        for (; i < txHash.length; i++) {
+            h = (h ^ (txHash[i] & 0xff)) * 0x100000001B3L;
+        }
+        h ^= txHash.length;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /** The UTXOs of one shard; never modified once shared with a copy or snapshot */
+    private static final class Table {
+        /** concurrent so that {@link Shard#get} can read it while a writer changes it */
+        final ConcurrentHashMap<UTXO, Transaction.Output> H;
+
+        /** the UTXOs in H by the AddressTable ID of the address they pay to; null until first asked for */
+        HashMap<Integer, HashSet<UTXO>> byAddress;
+
+        /** holds the filter hash of every UTXO in H, and nothing else once removals are taken into account */
+        CuckooFilter filter;
+
+        /**
+         * MuHash3072 of the commitment elements of the entries H had before the pending changes,
+         * or null while no one has asked; replaced rather than changed, so tables may share it
+         */
+        MuHash3072 commitment;
+
+        /** the changes made to H since commitment, oldest first; none are recorded while it is null */
+        final ArrayList<Change> pending;
+
+        Table(ConcurrentHashMap<UTXO, Transaction.Output> H, HashMap<Integer, HashSet<UTXO>> byAddress, CuckooFilter filter,
+              MuHash3072 commitment, ArrayList<Change> pending) {
+            this.H = H;
+            this.byAddress = byAddress;
+            this.filter = filter;
+            this.commitment = commitment;
+            this.pending = pending;
+        }
+
+        /** @return a copy to write to, which keeps the commitment and pending changes if {@code tracked} */
+        Table copy(boolean tracked) {
+            HashMap<Integer, HashSet<UTXO>> byAddressCopy = null;
+            if (byAddress != null) {
+                byAddressCopy = new HashMap<>(byAddress.size() * 4 / 3 + 1);
+                for (Map.Entry<Integer, HashSet<UTXO>> entry : byAddress.entrySet()) {
+                    byAddressCopy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+                }
+            }
+            return new Table(new ConcurrentHashMap<UTXO, Transaction.Output>(H), byAddressCopy, filter.copy(),
+                    tracked ? commitment : null, tracked ? new ArrayList<>(pending) : new ArrayList<Change>());
+        }
+
+        /** Records that {@code txOut} was added as, or removed from being, the output of {@code utxo} */
+        void recordChange(UTXO utxo, Transaction.Output txOut, boolean removed) {
+            if (commitment == null) {
+                return;
+            }
+            pending.add(new Change(utxo, txOut, removed));
+            if (pending.size() >= COMMITMENT_BATCH) {
+                commitment = foldedCommitment();
+                pending.clear();
+            }
+        }
+
+        /** @return the number of elements foldedCommitment has to hash */
+        int unfolded() {
+            return (commitment == null) ? H.size() : pending.size();
+        }
+
+        /** @return commitment with every pending change applied, leaving the table as it is */
+        MuHash3072 foldedCommitment() {
+            if (commitment == null) {
+                MuHash3072 full = new MuHash3072();
+                for (Map.Entry<UTXO, Transaction.Output> entry : H.entrySet()) {
+                    full.insert(commitmentElement(entry.getKey(), entry.getValue()));
+                }
+                return full;
+            }
+            if (pending.isEmpty()) {
+                return commitment;
+            }
+            MuHash3072 folded = new MuHash3072(commitment);
+            for (Change change : pending) {
+                byte[] element = commitmentElement(change.utxo, change.txOut);
+                if (change.removed) {
+                    folded.remove(element);
+                } else {
+                    folded.insert(element);
+                }
+            }
+            return folded;
+        }
+
+        /** Adds {@code utxo} to the filter, rebuilding it twice as large from H when it fills up */
+        void addToFilter(UTXO utxo) {
+            if (filter.add(filterHash(utxo.getTxHash(), utxo.getIndex()))
+                    && filter.size() <= filter.capacity() * FILTER_MAX_LOAD) {
+                return;
+            }
+            int capacity = filter.capacity();
+            boolean complete;
+            do {
+                capacity *= 2;
+                CuckooFilter rebuilt = new CuckooFilter(capacity, filter.fingerprintBits());
+                complete = true;
+                for (UTXO key : H.keySet()) {
+                    complete &= rebuilt.add(filterHash(key.getTxHash(), key.getIndex()));
+                }
+                filter = rebuilt;
+            } while (!complete);
+        }
+    }
+
+    private static final class Shard {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /** volatile so that get and filterMightContain, which read it without the lock, see a whole table */
+        private volatile Table table;
+
+        /** odd while a writer holds the lock and is changing table, so filterMightContain can tell */
+        private volatile int version;
+
+        /** true while a copy or snapshot may still read table; guarded by lock */
+        private boolean shared;
+
+        /** false if the table's commitment is dropped on its first copy and never kept again */
+        private final boolean tracksCommitment;
+
+        /** number of times the write lock was taken, and how many of those had to wait; guarded by it */
+        private long acquisitions;
+        private long contended;
+
+        Shard(Table table, boolean shared, boolean tracksCommitment) {
+            this.table = table;
+            this.shared = shared;
+            this.tracksCommitment = tracksCommitment;
+        }
+
+        // the following must be called with the lock held
+
+        /** @return the table to modify, copied first if anyone else may still read it */
+        private Table writable() {
+            if (shared) {
+                table = table.copy(tracksCommitment);
+                shared = false;
+            }
+            return table;
+        }
+
+        void put(UTXO utxo, Transaction.Output txOut) {
+            // the output enters the UTXO set, so its address gets an ID, held by the output
+            if (txOut.address != null) {
+                txOut.internAddress();
+            }
+            beginWrite();
+            try {
+                Table t = writable();
+                Transaction.Output previous = t.H.put(utxo, txOut);
+                if (previous == null) {
+                    t.addToFilter(utxo);
+                } else {
+                    t.recordChange(utxo, previous, true);
+                }
+                t.recordChange(utxo, txOut, false);
+                if (t.byAddress != null) {
+                    unindex(t, utxo, previous);
+                    t.byAddress.computeIfAbsent(addressId(txOut), (k) -> new HashSet<>()).add(utxo);
+                }
+            } finally {
+                endWrite();
+            }
+        }
+
+        void remove(UTXO utxo) {
+            if (!table.H.containsKey(utxo)) {
+                return;
+            }
+            beginWrite();
+            try {
+                Table t = writable();
+                Transaction.Output previous = t.H.remove(utxo);
+                t.filter.remove(filterHash(utxo.getTxHash(), utxo.getIndex()));
+                t.recordChange(utxo, previous, true);
+                if (t.byAddress != null) {
+                    unindex(t, utxo, previous);
+                }
+            } finally {
+                endWrite();
+            }
+        }
+
+        private void beginWrite() {
+            version++;
+            VarHandle.storeStoreFence();
+        }
+
+        private void endWrite() {
+            version++;
+        }
+
+        private static void unindex(Table t, UTXO utxo, Transaction.Output txOut) {
+            if (txOut == null) {
+                return;
+            }
+            int addressId = addressId(txOut);
+            HashSet<UTXO> utxos = t.byAddress.get(addressId);
+            if (utxos != null && utxos.remove(utxo) && utxos.isEmpty()) {
+                t.byAddress.remove(addressId);
+            }
+        }
+
+        /** @return the ID of the address {@code txOut} pays to, interned when it was put */
+        private static int addressId(Transaction.Output txOut) {
+            return txOut.internAddress().id;
+        }
+
+        /**
+         * @return the table's commitment with the pending changes folded in, or computed from
+         *         scratch the first time, and kept so unless the table is shared or not tracked
+         */
+        MuHash3072 commitment() {
+            MuHash3072 folded = table.foldedCommitment();
+            if (!shared && tracksCommitment) {
+                table.commitment = folded;
+                table.pending.clear();
+            }
+            return folded;
+        }
+
+        /** Builds the address index on first use; building it counts as a write to a shared table */
+        HashMap<Integer, HashSet<UTXO>> addressIndex() {
+            if (table.byAddress == null) {
+                beginWrite();
+                try {
+                    Table t = writable();
+                    HashMap<Integer, HashSet<UTXO>> byAddress = new HashMap<>();
+                    for (Map.Entry<UTXO, Transaction.Output> entry : t.H.entrySet()) {
+                        byAddress.computeIfAbsent(addressId(entry.getValue()), (k) -> new HashSet<>()).add(entry.getKey());
+                    }
+                    t.byAddress = byAddress;
+                } finally {
+                    endWrite();
+                }
+            }
+            return table.byAddress;
+        }
+
+        /**
+         * Asks the filter without taking the lock, seqlock style: the answer counts only if no
+         * write began or ended while it was read, and otherwise the filter is asked again under
+         * the lock. A racing read cannot fail, since every field a lookup indexes with is final.
+         */
+        boolean filterMightContain(long hash) {
+            int before = version;
+            if ((before & 1) == 0) {
+                boolean maybe = table.filter.mightContain(hash);
+                VarHandle.acquireFence();
+                if (version == before) {
+                    return maybe;
+                }
+            }
+            lock();
+            try {
+                return table.filter.mightContain(hash);
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * @return the output of {@code utxo}, read without the lock: H is a ConcurrentHashMap, and
+         *         a table that is replaced by a copy is not changed after
+         */
+        Transaction.Output get(UTXO utxo) {
+            return table.H.get(utxo);
+        }
+
+        /**
+         * @return what {@code reader} reads from the table, under the read lock, which readers
+         *         share with each other but not with writers. {@code reader} must only read.
+         */
+        <R> R read(Function<Table, R> reader) {
+            lock.readLock().lock();
+            try {
+                return reader.apply(table);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /** Takes the write lock */
+        void lock() {
+            if (!lock.writeLock().tryLock()) {
+                lock.writeLock().lock();
+                contended++;
+            }
+            acquisitions++;
+        }
+
+        void unlock() {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A read-only view of a pool at the moment {@link UTXOPool#snapshot()} was called. It holds
+     * no locks and never changes, so it can be streamed in parallel or read page by page while
+     * the pool it came from keeps being updated. UTXOs are visited shard by shard, in no
+     * particular order within a shard.
+     */
+    public static final class Snapshot {
+        private final Table[] tables;
+        private final int shardBits;
+        private final List<Set<UTXO>> keys;
+        private final Page.Slots<UTXO> slots;
+        private final int size;
+
+        private Snapshot(Table[] tables, int shardBits) {
+            this.tables = tables;
+            this.shardBits = shardBits;
+            List<Set<UTXO>> keys = new ArrayList<>(tables.length);
+            int size = 0;
+            for (Table table : tables) {
+                keys.add(Collections.unmodifiableSet(table.H.keySet()));
+                size += table.H.size();
+            }
+            this.keys = Collections.unmodifiableList(keys);
+            this.slots = new Page.Slots<>(this.keys);
+            this.size = size;
+        }
+
+        /** @return the number of UTXOs in the snapshot */
+        public int size() {
+            return size;
+        }
+
+        /** @return the transaction output of {@code utxo}, or null if it was not in the pool */
+        public Transaction.Output getTxOutput(UTXO utxo) {
+            return tables[shardIndex(utxo, shardBits)].H.get(utxo);
+        }
+
+        public boolean contains(UTXO utxo) {
+            return tables[shardIndex(utxo, shardBits)].H.containsKey(utxo);
+        }
+
+        /** @return the commitment the pool had when the snapshot was taken, see {@link UTXOPool#getCommitment()} */
+        public MuHash3072 getCommitment() {
+            MuHash3072[] parts = new MuHash3072[tables.length];
+            IntStream indices = IntStream.range(0, tables.length);
+            if (Arrays.stream(tables).mapToInt(Table::unfolded).sum() >= COMMITMENT_PARALLEL_THRESHOLD) {
+                indices = indices.parallel();
+            }
+            indices.forEach(i -> parts[i] = tables[i].foldedCommitment());
+            return combine(parts);
+        }
+
+        /** @return a spliterator over the UTXOs, splitting by shard and then within a shard */
+        public Spliterator<UTXO> spliterator() {
+            return new TableSpliterator<>(keys);
+        }
+
+        public Stream<UTXO> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        public Stream<UTXO> parallelStream() {
+            return StreamSupport.stream(spliterator(), true);
+        }
+
+        /** @return a stream of every UTXO with its transaction output */
+        public Stream<Map.Entry<UTXO, Transaction.Output>> entries() {
+            return stream().map(utxo -> new AbstractMap.SimpleImmutableEntry<>(utxo, getTxOutput(utxo)));
+        }
+
+        /** @return the first {@code limit} UTXOs, and the position after them */
+        public Page<UTXO> firstPage(int limit) {
+            return Page.first(slots, limit);
+        }
+
+        /** @return the {@code limit} UTXOs following {@code previous}, which must be a page of this snapshot */
+        public Page<UTXO> nextPage(Page<UTXO> previous, int limit) {
+            return Page.after(slots, previous, limit);
+        }
+
+        /**
+         * @return the {@code limit} UTXOs from the position named by {@code resumeToken}, which must
+         *         come from a page of this snapshot; the position is a slot within a shard, so no
+         *         UTXO before it is read again
+         */
+        public Page<UTXO> resume(String resumeToken, int limit) {
+            return Page.resume(slots, resumeToken, limit);
+        }
+    }
+
+    /** An add or remove not yet folded into a shard's commitment */
+    private static final class Change {
+        final UTXO utxo;
+        final Transaction.Output txOut;
+        final boolean removed;
+
+        Change(UTXO utxo, Transaction.Output txOut, boolean removed) {
+            this.utxo = utxo;
+            this.txOut = txOut;
+            this.removed = removed;
+        }
+    }
+
+    /** A point-in-time view of the size and lock contention of one shard */
+    public static class ShardStats {
+        public final int shard;
+        public final int size;
+        public final long lockAcquisitions;
+        public final long contendedAcquisitions;
+
+        public ShardStats(int shard, int size, long lockAcquisitions, long contendedAcquisitions) {
+            this.shard = shard;
+            this.size = size;
+            this.lockAcquisitions = lockAcquisitions;
+            this.contendedAcquisitions = contendedAcquisitions;
+        }
+
+        @Override
+        public String toString() {
+            return "shard " + shard + ": size=" + size + ", locks=" + lockAcquisitions
+                    + ", contended=" + contendedAcquisitions;
+        }
+    }
 }
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs every {@link Node} as an actor on its own virtual thread, so nodes run truly concurrently
+ * and their messages cross threads. An actor's round: it asks its node for proposals, sends them at
+ * once to the {@link Mailbox} of every follower, and arrives at the round's barrier; meanwhile it
+ * drains its own mailbox as messages come in. Once every actor has arrived, all of the round's
+ * messages are in the mailboxes, and each node receives its Candidates as in {@link Simulation}.
+ * Until then drained messages are kept as they are, so what the actors hold between barriers is
+ * a reference per message rather than a set of Candidates each.
+ *
+ * <p>A message is one node's valid proposals for a round, made into Candidates once and shared by
+ * all its followers. Mailboxes are bounded: a sender facing a full one drains its own mailbox and
+ * yields until there is room, so two actors filling each other's mailboxes cannot deadlock. An
+ * actor runs at most one round ahead of the slowest, so a mailbox holds messages of two rounds at
+ * most, sorted by the round they carry.
+ *
+ * <p>Measured along the way: the messages and candidates delivered, the time from a message being
+ * sent to it being taken from a mailbox, the depth of a mailbox whenever its actor drains it, and
+ * how often a sender found a mailbox full.
+ */
+public final class ActorRuntime {
+
+    private final FollowGraph graph;
+    private final int numRounds;
+    private final Transaction[] transactions;
+    private final Set<Transaction> valid = new HashSet<>();
+    private final Actor[] actors;
+
+    // the barrier: arrived counts the actors done sending in round completedRounds
+    private final AtomicInteger arrived = new AtomicInteger();
+    private volatile int completedRounds;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    private long elapsedNanos;
+    private final Histogram latencies = new Histogram();
+    private final Histogram depths = new Histogram();
+
+    /** One node's candidates for one round */
+    private static final class Message {
+        final int round;
+        final long sentAt;
+        final Candidate[] candidates;
+
+        Message(int round, long sentAt, Candidate[] candidates) {
+            this.round = round;
+            this.sentAt = sentAt;
+            this.candidates = candidates;
+        }
+    }
+
+    private final class Actor implements Runnable {
+        final int id;
+        final Node node;
+        final Thread thread;
+        final Mailbox<Message> mailbox;
+
+        int round;
+        // the messages of this round and of the next, kept as they are until the node takes them
+        List<Message> current = new ArrayList<>();
+        List<Message> next = new ArrayList<>();
+        int currentCandidates;
+        int nextCandidates;
+        Set<Transaction> consensus;
+
+        // statistics, read once the thread has ended
+        final Histogram latencies = new Histogram();
+        final Histogram depths = new Histogram();
+        long messagesDelivered;
+        long candidatesDelivered;
+        long fullMailboxes;
+
+        Actor(int id, Node node, int mailboxCapacity) {
+            this.id = id;
+            this.node = node;
+            this.thread = Thread.ofVirtual().name("node-" + id).unstarted(this);
+            this.mailbox = new Mailbox<>(mailboxCapacity, thread);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (round = 0; round < numRounds; round++) {
+                    send();
+                    arrive();
+                    int sent = round;
+                    while (completedRounds == sent) {
+                        checkFailure();
+                        if (!drain()) {
+                            mailbox.park(() -> completedRounds != sent || failure.get() != null);
+                        }
+                    }
+                    // every message of this round was offered before its sender arrived
+                    drain();
+                    receive();
+                }
+                consensus = node.sendToFollowers();
+            } catch (CancellationException e) {
+                // another actor failed
+            } catch (RuntimeException | Error e) {
+                if (failure.compareAndSet(null, new IllegalStateException("node " + id + " failed in round " + round, e))) {
+                    for (Actor actor : actors) {
+                        actor.mailbox.wake();
+                    }
+                }
+            }
+        }
+
+        private void send() {
+            List<Candidate> candidates = new ArrayList<>();
+            for (Transaction tx : node.sendToFollowers()) {
+                if (valid.contains(tx)) {
+                    candidates.add(new Candidate(tx, id));
+                }
+            }
+            if (candidates.isEmpty()) {
+                return;
+            }
+            Message message = new Message(round, System.nanoTime(), candidates.toArray(new Candidate[0]));
+            for (int k = graph.followerStart(id); k < graph.followerEnd(id); k++) {
+                Mailbox<Message> to = actors[graph.followerAt(k)].mailbox;
+                if (!to.offer(message)) {
+                    fullMailboxes++;
+                    do {
+                        checkFailure();
+                        drain();
+                        Thread.yield();
+                    } while (!to.offer(message));
+                }
+            }
+        }
+
+        private void receive() {
+            if (!current.isEmpty()) {
+                Set<Candidate> candidates = new HashSet<>(2 * currentCandidates);
+                for (Message message : current) {
+                    Collections.addAll(candidates, message.candidates);
+                }
+                node.receiveFromFollowees(candidates);
+            }
+            List<Message> received = current;
+            received.clear();
+            current = next;
+            currentCandidates = nextCandidates;
+            next = received;
+            nextCandidates = 0;
+        }
+
+        private void arrive() {
+            if (arrived.incrementAndGet() == actors.length) {
+                arrived.set(0);
+                completedRounds = round + 1;
+                for (Actor actor : actors) {
+                    actor.mailbox.wake();
+                }
+            }
+        }
+
+        /** @return false if the mailbox was empty */
+        private boolean drain() {
+            int depth = mailbox.depth();
+            Message message = mailbox.poll();
+            if (message == null) {
+                return false;
+            }
+            depths.record(depth);
+            do {
+                latencies.record(System.nanoTime() - message.sentAt);
+                if (message.round == round) {
+                    current.add(message);
+                    currentCandidates += message.candidates.length;
+                } else {
+                    next.add(message);
+                    nextCandidates += message.candidates.length;
+                }
+                messagesDelivered++;
+                candidatesDelivered += message.candidates.length;
+                message = mailbox.poll();
+            } while (message != null);
+            return true;
+        }
+
+        private void checkFailure() {
+            if (failure.get() != null) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    /**
+     * Creates a runtime of {@code numRounds} rounds, transaction index i standing for the
+     * transaction with id {@code txIds[i]}, and tells every node its followees
+     */
+    public ActorRuntime(FollowGraph graph, Node[] nodes, int[] txIds, int numRounds, int mailboxCapacity) {
+        if (nodes.length != graph.numNodes()) {
+            throw new IllegalArgumentException(nodes.length + " nodes for a graph of " + graph.numNodes());
+        }
+        this.graph = graph;
+        this.numRounds = numRounds;
+        this.transactions = new Transaction[txIds.length];
+        for (int i = 0; i < txIds.length; i++) {
+            transactions[i] = new Transaction(txIds[i]);
+            valid.add(transactions[i]);
+        }
+        this.actors = new Actor[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            actors[i] = new Actor(i, nodes[i], mailboxCapacity);
+            nodes[i].setFollowees(graph.followeeMask(i));
+        }
+    }
+
+    /** Gives node {@code node} the transactions with indices {@code txs}, before the runtime runs */
+    public void setPendingTransactions(int node, int[] txs) {
+        Set<Transaction> pending = new HashSet<>();
+        for (int tx : txs) {
+            pending.add(transactions[tx]);
+        }
+        actors[node].node.setPendingTransaction(pending);
+    }
+
+    /**
+     * Runs all rounds, once, and returns when every actor is done
+     *
+     * @throws IllegalStateException if a node threw, after every actor has stopped
+     */
+    public void run() throws InterruptedException {
+        long start = System.nanoTime();
+        for (Actor actor : actors) {
+            actor.thread.start();
+        }
+        for (Actor actor : actors) {
+            actor.thread.join();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        for (Actor actor : actors) {
+            latencies.add(actor.latencies);
+            depths.add(actor.depths);
+        }
+    }
+
+    /** @return the transactions node {@code node} believes consensus has been reached on, after {@link #run} */
+    public Set<Transaction> consensus(int node) {
+        return actors[node].consensus;
+    }
+
+    /** @return the wall-clock time {@link #run} took, from starting the first actor to the end of the last */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getMessagesDelivered() {
+        long total = 0;
+        for (Actor actor : actors) {
+            total += actor.messagesDelivered;
+        }
+        return total;
+    }
+
+    public long getCandidatesDelivered() {
+        long total = 0;
+        for (Actor actor : actors) {
+            total += actor.candidatesDelivered;
+        }
+        return total;
+    }
+
+    /** @return how many messages found their mailbox full at first */
+    public long getFullMailboxes() {
+        long total = 0;
+        for (Actor actor : actors) {
+            total += actor.fullMailboxes;
+        }
+        return total;
+    }
+
+    /** @return the {@code quantile} of the nanoseconds from a message being sent to it being taken from the mailbox, within an eighth */
+    public long latencyQuantile(double quantile) {
+        return latencies.quantile(quantile);
+    }
+
+    public long getMaxLatency() {
+        return latencies.max();
+    }
+
+    /** @return the {@code quantile} of the messages waiting in a mailbox when its actor came to drain it */
+    public long mailboxDepthQuantile(double quantile) {
+        return depths.quantile(quantile);
+    }
+
+    public long getMaxMailboxDepth() {
+        return depths.max();
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs one {@link Scenario} on the {@link ActorRuntime}, every node on its own virtual thread, and
+ * reports the throughput in rounds, messages and candidates per second, the latency of messages
+ * from sender to receiver, the depth of the mailboxes, how often one was full, and the agreement
+ * among compliant nodes. Every node holds a CompliantNode's sets, so keep the graph sparse with
+ * thousands of nodes.
+ *
+ * <p>Arguments, all optional: numNodes (2000), p_graph (.01), p_malicious (.3), p_txDistribution
+ * (.05), numRounds (10), mailbox capacity (64), malicious behavior as
+ * {@link MaliciousBehavior#parse} reads it (silent), seed (1), and a graph as
+ * {@link GraphGenerator#parse} reads it (a random graph with p_graph).
+ */
+public class ActorSimulation {
+
+    public static void main(String[] args) throws InterruptedException {
+        int numNodes = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        double p_graph = (args.length > 1) ? Double.parseDouble(args[1]) : .01;
+        double p_malicious = (args.length > 2) ? Double.parseDouble(args[2]) : .3;
+        double p_txDistribution = (args.length > 3) ? Double.parseDouble(args[3]) : .05;
+        int numRounds = (args.length > 4) ? Integer.parseInt(args[4]) : 10;
+        int mailboxCapacity = (args.length > 5) ? Integer.parseInt(args[5]) : 64;
+        MaliciousBehavior malicious = MaliciousBehavior.parse((args.length > 6) ? args[6] : "silent");
+        long seed = (args.length > 7) ? Long.parseLong(args[7]) : 1;
+        GraphGenerator graph = (args.length > 8) ? GraphGenerator.parse(args[8]) : GraphGenerator.erdosRenyi(p_graph);
+
+        Scenario scenario = new Scenario(numNodes, p_graph, p_malicious, p_txDistribution, numRounds, 500, seed, graph, malicious);
+        ActorRuntime runtime = scenario.newActorRuntime(mailboxCapacity);
+        runtime.run();
+        double seconds = runtime.getElapsedNanos() / 1e9;
+
+        Map<Set<Transaction>, Integer> holders = new HashMap<>();
+        int compliant = 0;
+        for (int i = 0; i < numNodes; i++) {
+            if (!scenario.isMalicious(i)) {
+                compliant++;
+                holders.merge(runtime.consensus(i), 1, Integer::sum);
+            }
+        }
+        int most = holders.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+
+        System.out.printf(Locale.ROOT, "%d nodes, graph %s, p_malicious %s (%s), p_txDistribution %s, %d rounds, mailboxes of %d, seed %d%n",
+                numNodes, graph, p_malicious, malicious, p_txDistribution, numRounds, mailboxCapacity, seed);
+        System.out.printf(Locale.ROOT, "%d carrier threads, %.2f s, %.1f rounds/s%n",
+                Runtime.getRuntime().availableProcessors(), seconds, numRounds / seconds);
+        System.out.printf(Locale.ROOT, "messages     %12d  %12.0f /s%n", runtime.getMessagesDelivered(), runtime.getMessagesDelivered() / seconds);
+        System.out.printf(Locale.ROOT, "candidates   %12d  %12.0f /s%n", runtime.getCandidatesDelivered(), runtime.getCandidatesDelivered() / seconds);
+        System.out.printf(Locale.ROOT, "latency      p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                runtime.latencyQuantile(.5) / 1e3, runtime.latencyQuantile(.99) / 1e3, runtime.latencyQuantile(.999) / 1e3,
+                runtime.getMaxLatency() / 1e3);
+        System.out.printf(Locale.ROOT, "mailbox      p50 %d, p99 %d, max %d messages; full %d times%n",
+                runtime.mailboxDepthQuantile(.5), runtime.mailboxDepthQuantile(.99), runtime.getMaxMailboxDepth(),
+                runtime.getFullMailboxes());
+        System.out.printf(Locale.ROOT, "agreement    %.4f (%d sets among %d compliant nodes)%n",
+                (compliant == 0) ? 1 : most / (double) compliant, holders.size(), compliant);
+    }
+}
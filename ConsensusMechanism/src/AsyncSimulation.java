@@ -0,0 +1,78 @@
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs one {@link Scenario} on the {@link EventSimulator}, with log-normal delays on every link, a
+ * fraction of the links ten times slower, clocks up to half a round apart, and a small cost per
+ * message received, and reports how long consensus took in simulated time, the message load, how
+ * many messages came too late, the agreement among compliant nodes, and the events simulated per
+ * second of wall-clock time.
+ *
+ * <p>Arguments, all optional: numNodes (1000), p_graph (.1), p_malicious (.3), p_txDistribution
+ * (.05), numRounds (10), round period in ms (100), median delay in ms (20), sigma of the delay's
+ * logarithm (.5), fraction of slow links (.05), seed (1), and a graph as
+ * {@link GraphGenerator#parse} reads it (a random graph with p_graph).
+ */
+public class AsyncSimulation {
+
+    private static final long MILLISECOND = 1_000_000L;
+
+    public static void main(String[] args) {
+        int numNodes = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        double p_graph = (args.length > 1) ? Double.parseDouble(args[1]) : .1;
+        double p_malicious = (args.length > 2) ? Double.parseDouble(args[2]) : .3;
+        double p_txDistribution = (args.length > 3) ? Double.parseDouble(args[3]) : .05;
+        int numRounds = (args.length > 4) ? Integer.parseInt(args[4]) : 10;
+        double periodMillis = (args.length > 5) ? Double.parseDouble(args[5]) : 100;
+        double medianMillis = (args.length > 6) ? Double.parseDouble(args[6]) : 20;
+        double sigma = (args.length > 7) ? Double.parseDouble(args[7]) : .5;
+        double slowFraction = (args.length > 8) ? Double.parseDouble(args[8]) : .05;
+        long seed = (args.length > 9) ? Long.parseLong(args[9]) : 1;
+        GraphGenerator graph = (args.length > 10) ? GraphGenerator.parse(args[10]) : GraphGenerator.erdosRenyi(p_graph);
+
+        Scenario scenario = new Scenario(numNodes, p_graph, p_malicious, p_txDistribution, numRounds, 500, seed, graph);
+        long period = (long) (periodMillis * MILLISECOND);
+        LatencyModel latency = LatencyModel.slowLinks(
+                LatencyModel.logNormal((long) (medianMillis * MILLISECOND), sigma), slowFraction, 10, seed);
+        EventSimulator simulator = scenario.newEventSimulator(true)
+                .latency(latency)
+                .roundPeriod(period)
+                .maxClockOffset(period / 2)
+                .processingCost(10_000, 1_000);
+
+        long start = System.nanoTime();
+        simulator.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<IntBuffer, Integer> holders = new HashMap<>();
+        int compliant = 0;
+        for (int i = 0; i < numNodes; i++) {
+            int[] consensus = simulator.consensus(i);
+            if (scenario.isMalicious(i)) {
+                continue;
+            }
+            compliant++;
+            Arrays.sort(consensus);
+            holders.merge(IntBuffer.wrap(consensus), 1, Integer::sum);
+        }
+        int most = holders.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+
+        System.out.printf(Locale.ROOT, "%d nodes, graph %s, p_malicious %s, p_txDistribution %s, %d rounds of %s ms, seed %d%n",
+                numNodes, graph, p_malicious, p_txDistribution, numRounds, periodMillis, seed);
+        System.out.printf(Locale.ROOT, "delays: log-normal, median %s ms, sigma %s, %s of links 10x slower%n",
+                medianMillis, sigma, slowFraction);
+        System.out.printf(Locale.ROOT, "quiet after      %10.1f ms%n", simulator.getQuietTime() / 1e6);
+        System.out.printf(Locale.ROOT, "decided after    %10.1f ms%n", simulator.getDecisionTime() / 1e6);
+        System.out.printf(Locale.ROOT, "messages         %10d (%d candidates)%n", simulator.getMessagesSent(), simulator.getCandidatesSent());
+        System.out.printf(Locale.ROOT, "lost             %10d (%.2f%%)%n", simulator.getMessagesLost(),
+                100.0 * simulator.getMessagesLost() / Math.max(1, simulator.getMessagesSent()));
+        System.out.printf(Locale.ROOT, "max inbox        %10d messages%n", simulator.getMaxInboxDepth());
+        System.out.printf(Locale.ROOT, "agreement        %10.4f (%d sets among %d compliant nodes)%n",
+                (compliant == 0) ? 1 : most / (double) compliant, holders.size(), compliant);
+        System.out.printf(Locale.ROOT, "events           %10d in %.2f s, %.0f events/s%n",
+                simulator.getEventsProcessed(), seconds, simulator.getEventsProcessed() / seconds);
+    }
+}
@@ -6,4 +6,20 @@ public class Candidate {
 		this.tx = tx;
 		this.sender = sender;
 	}
-}
\ No newline at end of file
+
+	/** @return true if {@code obj} is the same transaction from the same sender */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Candidate)) {
+			return false;
+		}
+		Candidate other = (Candidate) obj;
+		return sender == other.sender && tx.equals(other.tx);
+	}
+
+	// hashed by value, so a set of candidates iterates in the same order on every run
+	@Override
+	public int hashCode() {
+		return 31 * tx.hashCode() + sender;
+	}
+}
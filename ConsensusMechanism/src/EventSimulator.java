@@ -0,0 +1,347 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Runs {@link IntNode}s asynchronously, on simulated time: where {@link SimulationEngine} has every
+ * round's messages arrive at once, here every message is an event delivered after a delay drawn
+ * from a {@link LatencyModel}, and every node keeps its own round timer. At each tick a node is
+ * handed what has arrived and been processed since its last tick, then sends its proposals for
+ * the round; a message still on its way, or queued behind others, counts for a later round, and
+ * one that arrives after its receiver's last tick is lost. Receiving a message keeps the receiver
+ * busy for a fixed cost plus a cost per candidate, and messages are processed one after another.
+ *
+ * <p>Node i ticks at {@code offset(i) + r * roundPeriod} for r = 0 to numRounds: it sends after
+ * each of the first numRounds ticks, and the last tick only collects what is left, after which
+ * {@link #consensus} asks for its result. Events live in a 4-ary heap over primitive arrays,
+ * ordered by time and then by the order they were scheduled, so a seed gives the same run.
+ */
+public final class EventSimulator {
+
+    private final FollowGraph graph;
+    private final IntNode[] nodes;
+    private final int numTx;
+    private final int numRounds;
+    private final SplittableRandom[] random;
+
+    private LatencyModel latency = LatencyModel.constant(0);
+    private long roundPeriod = 100_000_000L;
+    private long maxClockOffset;
+    private long costPerMessage;
+    private long costPerCandidate;
+
+    // the events, each in a slot: node to tick, or to receive payload from sender if sender >= 0
+    private long[] eventOrder = new long[1024];
+    private int[] eventNode = new int[1024];
+    private int[] eventSender = new int[1024];
+    private int[][] eventPayload = new int[1024][];
+    private int[] freeSlots = new int[1024];
+    private int freeCount;
+    private int slotCount;
+    private long scheduled;
+    // a 4-ary heap of the slots by time, which moves 12 bytes per level and touches a slot only on ties
+    private long[] heapTime = new long[1024];
+    private int[] heapSlot = new int[1024];
+    private int events;
+
+    /** Per node: the next tick, when it is free to process the next message, and its inbox */
+    private final int[] tick;
+    private final long[] busyUntil;
+    private final Inbox[] inboxes;
+    private final IntList proposals = new IntList();
+    private final IntList candidateTxs = new IntList();
+    private final IntList candidateSenders = new IntList();
+
+    private long now;
+    private long eventsProcessed;
+    private long messagesSent;
+    private long candidatesSent;
+    private long messagesLost;
+    private long lastProposalTime;
+    private long lastTickTime;
+    private int maxInboxDepth;
+
+    /**
+     * The messages a node has received since its last tick, each with the time it is processed;
+     * a message is the sender's proposals, shared by all its followers
+     */
+    private static final class Inbox {
+        int[][] payloads = new int[4][];
+        int[] senders = new int[4];
+        long[] readyTime = new long[4];
+        int messages;
+
+        void add(int sender, int[] payload, long ready) {
+            if (messages == payloads.length) {
+                payloads = Arrays.copyOf(payloads, 2 * messages);
+                senders = Arrays.copyOf(senders, 2 * messages);
+                readyTime = Arrays.copyOf(readyTime, 2 * messages);
+            }
+            payloads[messages] = payload;
+            senders[messages] = sender;
+            readyTime[messages] = ready;
+            messages++;
+        }
+
+        /** Removes the first {@code count} messages */
+        void removeFirst(int count) {
+            System.arraycopy(payloads, count, payloads, 0, messages - count);
+            System.arraycopy(senders, count, senders, 0, messages - count);
+            System.arraycopy(readyTime, count, readyTime, 0, messages - count);
+            Arrays.fill(payloads, messages - count, messages, null);
+            messages -= count;
+        }
+    }
+
+    /** Creates a simulator of {@code numRounds} rounds that draws its delays from {@code random}, and tells every node its followees */
+    public EventSimulator(FollowGraph graph, IntNode[] nodes, int numTx, int numRounds, RandomStreams random) {
+        if (nodes.length != graph.numNodes()) {
+            throw new IllegalArgumentException(nodes.length + " nodes for a graph of " + graph.numNodes());
+        }
+        this.graph = graph;
+        this.nodes = nodes;
+        this.numTx = numTx;
+        this.numRounds = numRounds;
+        this.random = new SplittableRandom[nodes.length];
+        this.tick = new int[nodes.length];
+        this.busyUntil = new long[nodes.length];
+        this.inboxes = new Inbox[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            this.random[i] = random.forNode("latency", i);
+            this.inboxes[i] = new Inbox();
+            nodes[i].setFollowees(graph.followees(i), nodes.length);
+        }
+    }
+
+    public EventSimulator latency(LatencyModel latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /** Sets the time between two ticks of a node, 100 ms unless set */
+    public EventSimulator roundPeriod(long nanos) {
+        this.roundPeriod = nanos;
+        return this;
+    }
+
+    /** Has every node start its first round at a random time from 0 to {@code nanos}, so clocks are not in step */
+    public EventSimulator maxClockOffset(long nanos) {
+        this.maxClockOffset = nanos;
+        return this;
+    }
+
+    /** Sets how long receiving a message keeps a node busy: {@code perMessage} plus {@code perCandidate} for each transaction in it */
+    public EventSimulator processingCost(long perMessage, long perCandidate) {
+        this.costPerMessage = perMessage;
+        this.costPerCandidate = perCandidate;
+        return this;
+    }
+
+    /** Gives node {@code node} the transactions it starts with, before the simulation runs */
+    public void setPendingTransactions(int node, int[] txs) {
+        nodes[node].setPendingTransactions(txs);
+    }
+
+    /** Runs until every node has had its last tick and no message is left on its way */
+    public void run() {
+        for (int i = 0; i < nodes.length; i++) {
+            long offset = (maxClockOffset == 0) ? 0 : random[i].nextLong(maxClockOffset + 1);
+            schedule(offset, i, -1, null);
+        }
+        while (events > 0) {
+            now = heapTime[0];
+            int slot = heapSlot[0];
+            int node = eventNode[slot];
+            int sender = eventSender[slot];
+            int[] payload = eventPayload[slot];
+            eventPayload[slot] = null;
+            freeSlots[freeCount++] = slot;
+            removeFirst();
+            eventsProcessed++;
+            if (sender < 0) {
+                tick(node);
+            } else {
+                deliver(node, sender, payload);
+            }
+        }
+    }
+
+    private void tick(int node) {
+        lastTickTime = Math.max(lastTickTime, now);
+        Inbox inbox = inboxes[node];
+        int ready = 0;
+        while (ready < inbox.messages && inbox.readyTime[ready] <= now) {
+            ready++;
+        }
+        if (ready > 0) {
+            candidateTxs.clear();
+            candidateSenders.clear();
+            for (int m = 0; m < ready; m++) {
+                int[] payload = inbox.payloads[m];
+                candidateTxs.addAll(payload, 0, payload.length);
+                for (int k = 0; k < payload.length; k++) {
+                    candidateSenders.add(inbox.senders[m]);
+                }
+            }
+            nodes[node].receiveFromFollowees(candidateTxs.array(), candidateSenders.array(), candidateTxs.size());
+            inbox.removeFirst(ready);
+        }
+        if (tick[node] == numRounds) {
+            messagesLost += inbox.messages;
+            inbox.removeFirst(inbox.messages);
+            tick[node]++;
+            return;
+        }
+
+        proposals.clear();
+        nodes[node].sendToFollowers(proposals);
+        int valid = 0;
+        int[] txs = proposals.array();
+        for (int k = 0; k < proposals.size(); k++) {
+            if (txs[k] >= 0 && txs[k] < numTx) {
+                txs[valid++] = txs[k];
+            }
+        }
+        if (valid > 0) {
+            // the last round announces the consensus, so it does not count as proposals still going on
+            if (tick[node] < numRounds - 1) {
+                lastProposalTime = Math.max(lastProposalTime, now);
+            }
+            int[] payload = Arrays.copyOf(txs, valid);
+            for (int k = graph.followerStart(node); k < graph.followerEnd(node); k++) {
+                int follower = graph.followerAt(k);
+                schedule(now + latency.delay(node, follower, random[node]), follower, node, payload);
+                messagesSent++;
+                candidatesSent += valid;
+            }
+        }
+        tick[node]++;
+        schedule(now + roundPeriod, node, -1, null);
+    }
+
+    private void deliver(int node, int sender, int[] payload) {
+        if (tick[node] > numRounds) {
+            messagesLost++;
+            return;
+        }
+        busyUntil[node] = Math.max(busyUntil[node], now) + costPerMessage + costPerCandidate * payload.length;
+        Inbox inbox = inboxes[node];
+        inbox.add(sender, payload, busyUntil[node]);
+        maxInboxDepth = Math.max(maxInboxDepth, inbox.messages);
+    }
+
+    private void schedule(long time, int node, int sender, int[] payload) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == eventNode.length) {
+                int capacity = 2 * slotCount;
+                eventOrder = Arrays.copyOf(eventOrder, capacity);
+                eventNode = Arrays.copyOf(eventNode, capacity);
+                eventSender = Arrays.copyOf(eventSender, capacity);
+                eventPayload = Arrays.copyOf(eventPayload, capacity);
+                freeSlots = new int[capacity];
+                heapTime = Arrays.copyOf(heapTime, capacity);
+                heapSlot = Arrays.copyOf(heapSlot, capacity);
+            }
+            slot = slotCount++;
+        }
+        eventOrder[slot] = scheduled++;
+        eventNode[slot] = node;
+        eventSender[slot] = sender;
+        eventPayload[slot] = payload;
+
+        int i = events++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 2;
+            if (!before(time, slot, parent)) {
+                break;
+            }
+            heapTime[i] = heapTime[parent];
+            heapSlot[i] = heapSlot[parent];
+            i = parent;
+        }
+        heapTime[i] = time;
+        heapSlot[i] = slot;
+    }
+
+    private void removeFirst() {
+        int last = --events;
+        long time = heapTime[last];
+        int slot = heapSlot[last];
+        int i = 0;
+        while (true) {
+            int first = 4 * i + 1;
+            if (first >= events) {
+                break;
+            }
+            int child = first;
+            for (int c = first + 1; c < Math.min(first + 4, events); c++) {
+                if (before(heapTime[c], heapSlot[c], child)) {
+                    child = c;
+                }
+            }
+            if (!before(heapTime[child], heapSlot[child], time, slot)) {
+                break;
+            }
+            heapTime[i] = heapTime[child];
+            heapSlot[i] = heapSlot[child];
+            i = child;
+        }
+        heapTime[i] = time;
+        heapSlot[i] = slot;
+    }
+
+    /** @return true if the event at {@code time} in {@code slot} comes before the one at heap position {@code i} */
+    private boolean before(long time, int slot, int i) {
+        return before(time, slot, heapTime[i], heapSlot[i]);
+    }
+
+    private boolean before(long time, int slot, long otherTime, int otherSlot) {
+        return time < otherTime || (time == otherTime && eventOrder[slot] < eventOrder[otherSlot]);
+    }
+
+    /** @return the transactions node {@code node} believes consensus has been reached on; ask once, after {@link #run} */
+    public int[] consensus(int node) {
+        IntList out = new IntList();
+        nodes[node].sendToFollowers(out);
+        return out.toArray();
+    }
+
+    /** @return the simulated time of the last event */
+    public long getTime() {
+        return now;
+    }
+
+    /** @return the simulated time of the last tick, when the last node decided */
+    public long getDecisionTime() {
+        return lastTickTime;
+    }
+
+    /** @return the simulated time at which a node last proposed something before its final round, 0 if none did */
+    public long getQuietTime() {
+        return lastProposalTime;
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public long getCandidatesSent() {
+        return candidatesSent;
+    }
+
+    /** @return the number of messages that reached, or were processed by, their receiver after its last tick */
+    public long getMessagesLost() {
+        return messagesLost;
+    }
+
+    /** @return the most messages a node held at once, waiting for its next tick */
+    public int getMaxInboxDepth() {
+        return maxInboxDepth;
+    }
+}
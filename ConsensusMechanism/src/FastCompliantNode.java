@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * {@link CompliantNode} as an {@link IntNode}: it accepts, forwards and blacklists exactly as
+ * CompliantNode does, but allocates nothing per round once its buffers have grown. State kept
+ * per followee (blacklisted, heard from this round, rounds of silence) is indexed by the
+ * followee's position in the sorted followee list, bitsets and a byte each, rather than by node,
+ * so a node costs O(followees) memory and a round O(followees + candidates) time instead of
+ * O(numNodes). Votes are tallied in an {@link IntCounts}, and the transactions accepted and still
+ * to broadcast are {@link IntSet}s, sized by what the node has heard of rather than by numTx.
+ */
+public class FastCompliantNode implements IntNode {
+
+    private final int numRounds;
+
+    private int[] followees;
+    private long[] blacklisted;
+    private long[] heard;
+    private byte[] silenceCount;
+    private int trustedFollowees;
+
+    private int currentRound = 0;
+
+    private final IntSet toBroadcast = new IntSet(); // what we'll send next round
+    private final IntSet accepted = new IntSet();    // transactions we believe reached consensus
+    private final IntCounts votes = new IntCounts();
+
+    /** the last sender looked up and its position, as candidates come grouped by sender */
+    private int lastSender = -1;
+    private int lastPosition = -1;
+
+    // the same rules as CompliantNode
+    private static final int    SILENCE_BLACKLIST_THRESHOLD = 2;
+    private static final double ACCEPT_FRACTION             = 0.30;
+    private static final boolean PROPAGATE_WEAK_SIGNALS     = true;
+
+    public FastCompliantNode(double p_graph, double p_malicious, double p_txDistribution, int numRounds) {
+        this.numRounds = numRounds;
+    }
+
+    @Override
+    public void setFollowees(int[] followees, int numNodes) {
+        this.followees = followees;
+        this.blacklisted = new long[(followees.length + 63) >>> 6];
+        this.heard = new long[blacklisted.length];
+        this.silenceCount = new byte[followees.length];
+        this.trustedFollowees = followees.length;
+        this.lastSender = -1;
+    }
+
+    @Override
+    public void setPendingTransactions(int[] txs) {
+        for (int tx : txs) {
+            accepted.add(tx);
+            toBroadcast.add(tx);
+        }
+    }
+
+    @Override
+    public void sendToFollowers(IntList out) {
+        if (currentRound >= numRounds - 1) {
+            out.addAll(accepted.elements().array(), 0, accepted.size());
+            return;
+        }
+        out.addAll(toBroadcast.elements().array(), 0, toBroadcast.size());
+        toBroadcast.clear();
+        currentRound++;
+    }
+
+    @Override
+    public void receiveFromFollowees(int[] txs, int[] senders, int count) {
+        for (int k = 0; k < count; k++) {
+            int position = positionOf(senders[k]);
+            if (position >= 0) {
+                heard[position >>> 6] |= 1L << position;
+            }
+        }
+
+        // silence counts & blacklist only on repeated silence
+        for (int position = 0; position < followees.length; position++) {
+            if (isSet(blacklisted, position)) continue;
+            if (!isSet(heard, position)) {
+                if (++silenceCount[position] >= SILENCE_BLACKLIST_THRESHOLD) {
+                    blacklisted[position >>> 6] |= 1L << position;
+                    trustedFollowees--;
+                }
+            } else {
+                silenceCount[position] = 0;
+            }
+        }
+        Arrays.fill(heard, 0);
+
+        votes.clear();
+        for (int k = 0; k < count; k++) {
+            int position = positionOf(senders[k]);
+            if (position >= 0 && !isSet(blacklisted, position)) {
+                votes.increment(txs[k]);
+            }
+        }
+
+        int acceptThreshold = (trustedFollowees == 0)
+                ? Integer.MAX_VALUE
+                : Math.max(1, (int) Math.ceil(ACCEPT_FRACTION * trustedFollowees));
+        for (int i = 0; i < votes.size(); i++) {
+            int tx = votes.keyAt(i);
+            if (votes.countAt(i) >= acceptThreshold) {
+                if (accepted.add(tx)) {
+                    toBroadcast.add(tx);
+                }
+            } else if (PROPAGATE_WEAK_SIGNALS) {
+                toBroadcast.add(tx);
+            }
+        }
+    }
+
+    /** @return the position of {@code sender} among the followees, or -1 if it is not followed */
+    private int positionOf(int sender) {
+        if (sender != lastSender) {
+            lastSender = sender;
+            int position = Arrays.binarySearch(followees, sender);
+            lastPosition = (position >= 0) ? position : -1;
+        }
+        return lastPosition;
+    }
+
+    private static boolean isSet(long[] bits, int position) {
+        return (bits[position >>> 6] & (1L << position)) != 0;
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * Who follows whom, in compressed sparse rows: the followees of all nodes, each node's sorted, in
+ * one int array with an offset per node, and the followers likewise. That is 8 bytes per edge and 8
+ * per node, where the {@code boolean[numNodes][numNodes]} of {@link Simulation} takes
+ * numNodes^2 bytes, 10 GB for 100k nodes. Self-follows and repeated edges are dropped.
+ */
+public final class FollowGraph {
+
+    private final int numNodes;
+    /** the followees of node i are followees[followeeStart[i] .. followeeStart[i + 1] - 1] */
+    private final int[] followeeStart;
+    private final int[] followees;
+    private final int[] followerStart;
+    private final int[] followers;
+
+    /** Collects edges in any order; an edge costs 8 bytes until the graph is built */
+    public static final class Builder {
+        private final int numNodes;
+        private final IntList from = new IntList();
+        private final IntList to = new IntList();
+
+        public Builder(int numNodes) {
+            if (numNodes < 0) {
+                throw new IllegalArgumentException("numNodes must not be negative: " + numNodes);
+            }
+            this.numNodes = numNodes;
+        }
+
+        /** Records that {@code follower} follows {@code followee} */
+        public Builder addEdge(int follower, int followee) {
+            if (follower < 0 || follower >= numNodes || followee < 0 || followee >= numNodes) {
+                throw new IllegalArgumentException("edge " + follower + " -> " + followee + " outside " + numNodes + " nodes");
+            }
+            from.add(follower);
+            to.add(followee);
+            return this;
+        }
+
+        public int numNodes() {
+            return numNodes;
+        }
+
+        public FollowGraph build() {
+            return new FollowGraph(numNodes, from.array(), to.array(), from.size());
+        }
+    }
+
+    private FollowGraph(int numNodes, int[] from, int[] to, int numEdges) {
+        this.numNodes = numNodes;
+
+        // counting sort by follower, then sort and deduplicate every row in place
+        int[] start = new int[numNodes + 1];
+        for (int e = 0; e < numEdges; e++) {
+            start[from[e] + 1]++;
+        }
+        for (int i = 0; i < numNodes; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] rows = new int[numEdges];
+        int[] next = Arrays.copyOf(start, numNodes);
+        for (int e = 0; e < numEdges; e++) {
+            rows[next[from[e]]++] = to[e];
+        }
+        this.followeeStart = new int[numNodes + 1];
+        int kept = 0;
+        for (int i = 0; i < numNodes; i++) {
+            Arrays.sort(rows, start[i], start[i + 1]);
+            followeeStart[i] = kept;
+            for (int k = start[i]; k < start[i + 1]; k++) {
+                if (rows[k] != i && (kept == followeeStart[i] || rows[kept - 1] != rows[k])) {
+                    rows[kept++] = rows[k];
+                }
+            }
+        }
+        followeeStart[numNodes] = kept;
+        this.followees = (kept == rows.length) ? rows : Arrays.copyOf(rows, kept);
+
+        // the transpose, filled follower by follower so every row comes out sorted
+        this.followerStart = new int[numNodes + 1];
+        for (int k = 0; k < kept; k++) {
+            followerStart[followees[k] + 1]++;
+        }
+        for (int i = 0; i < numNodes; i++) {
+            followerStart[i + 1] += followerStart[i];
+        }
+        this.followers = new int[kept];
+        next = Arrays.copyOf(followerStart, numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            for (int k = followeeStart[i]; k < followeeStart[i + 1]; k++) {
+                followers[next[followees[k]]++] = i;
+            }
+        }
+    }
+
+    /** @return the graph in which i follows j if and only if {@code matrix[i][j]}, as {@link Simulation} draws it */
+    public static FollowGraph fromMatrix(boolean[][] matrix) {
+        Builder builder = new Builder(matrix.length);
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                if (matrix[i][j]) {
+                    builder.addEdge(i, j);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    public int numNodes() {
+        return numNodes;
+    }
+
+    public int numEdges() {
+        return followees.length;
+    }
+
+    public int followeeCount(int node) {
+        return followeeStart[node + 1] - followeeStart[node];
+    }
+
+    public int followerCount(int node) {
+        return followerStart[node + 1] - followerStart[node];
+    }
+
+    /** @return the nodes {@code node} follows, in increasing order */
+    public int[] followees(int node) {
+        return Arrays.copyOfRange(followees, followeeStart[node], followeeStart[node + 1]);
+    }
+
+    /** @return the nodes following {@code node}, in increasing order */
+    public int[] followers(int node) {
+        return Arrays.copyOfRange(followers, followerStart[node], followerStart[node + 1]);
+    }
+
+    /** @return true if {@code follower} follows {@code followee} */
+    public boolean follows(int follower, int followee) {
+        return Arrays.binarySearch(followees, followeeStart[follower], followeeStart[follower + 1], followee) >= 0;
+    }
+
+    /** @return the followees of {@code node} as {@link Node#setFollowees} takes them, numNodes bytes */
+    public boolean[] followeeMask(int node) {
+        boolean[] mask = new boolean[numNodes];
+        for (int k = followeeStart[node]; k < followeeStart[node + 1]; k++) {
+            mask[followees[k]] = true;
+        }
+        return mask;
+    }
+
+    // unchecked access to the rows, for loops over every edge
+
+    int followeeStart(int node) {
+        return followeeStart[node];
+    }
+
+    int followeeEnd(int node) {
+        return followeeStart[node + 1];
+    }
+
+    int followeeAt(int k) {
+        return followees[k];
+    }
+
+    int followerStart(int node) {
+        return followerStart[node];
+    }
+
+    int followerEnd(int node) {
+        return followerStart[node + 1];
+    }
+
+    int followerAt(int k) {
+        return followers[k];
+    }
+}
@@ -0,0 +1,79 @@
+import java.nio.file.Paths;
+
+/**
+ * Draws a {@link FollowGraph}. Generators build the graph's edge lists directly, in time
+ * proportional to the number of edges, and take all their random numbers from the
+ * {@link RandomStreams} they are given, so a seed gives the same graph every time. Undirected
+ * models are turned into follow graphs by having both ends of every edge follow each other.
+ */
+public interface GraphGenerator {
+
+    FollowGraph generate(int numNodes, RandomStreams random);
+
+    /** @return a short description, such as the spec {@link #parse} reads */
+    String toString();
+
+    /** Every node follows every other with probability {@code p}, as in {@link Simulation} */
+    static GraphGenerator erdosRenyi(double p) {
+        return new GraphGenerators.ErdosRenyi(p);
+    }
+
+    /**
+     * Preferential attachment: starting from a clique of {@code m + 1} nodes, every new node links
+     * to {@code m} distinct earlier nodes chosen with probability proportional to their degree, for
+     * a scale-free degree distribution with a few heavily followed hubs
+     */
+    static GraphGenerator barabasiAlbert(int m) {
+        return new GraphGenerators.BarabasiAlbert(m);
+    }
+
+    /**
+     * A small world: a ring in which every node links to its {@code k} nearest neighbours, k even,
+     * with each link moved to a random node with probability {@code beta}
+     */
+    static GraphGenerator wattsStrogatz(int k, double beta) {
+        return new GraphGenerators.WattsStrogatz(k, beta);
+    }
+
+    /** Every node follows {@code k} random nodes and is followed by {@code k} */
+    static GraphGenerator kRegular(int k) {
+        return new GraphGenerators.KRegular(k);
+    }
+
+    /**
+     * The graph in a file of lines "follower followee", node indices separated by white space;
+     * blank lines and lines starting with '#' are skipped. Indices must be below numNodes, and nodes
+     * not in the file follow nobody. The file is read every time a graph is generated.
+     */
+    static GraphGenerator edgeList(String path) {
+        return new GraphGenerators.EdgeList(Paths.get(path));
+    }
+
+    /**
+     * @return the generator described by {@code spec}: {@code er:p}, {@code ba:m},
+     *         {@code ws:k:beta}, {@code regular:k} or {@code file:path}
+     */
+    static GraphGenerator parse(String spec) {
+        String[] parts = spec.split(":", 2);
+        String[] args = (parts.length > 1) ? parts[1].split(":") : new String[0];
+        try {
+            switch (parts[0]) {
+                case "er":
+                    return erdosRenyi(Double.parseDouble(args[0]));
+                case "ba":
+                    return barabasiAlbert(Integer.parseInt(args[0]));
+                case "ws":
+                    return wattsStrogatz(Integer.parseInt(args[0]), Double.parseDouble(args[1]));
+                case "regular":
+                    return kRegular(Integer.parseInt(args[0]));
+                case "file":
+                    return edgeList(parts[1]);
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("bad graph spec " + spec, e);
+        }
+        throw new IllegalArgumentException("unknown graph spec " + spec + ", expected er:p, ba:m, ws:k:beta, regular:k or file:path");
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/** The generators behind the factories of {@link GraphGenerator} */
+final class GraphGenerators {
+
+    private GraphGenerators() {
+    }
+
+    /**
+     * Row by row, each from the node's own stream: rather than drawing for each of the numNodes - 1
+     * possible followees, the gap to the next followee is drawn from the geometric distribution,
+     * so a row costs one draw per edge
+     */
+    static final class ErdosRenyi implements GraphGenerator {
+        private final double p;
+
+        ErdosRenyi(double p) {
+            if (!(p >= 0 && p <= 1)) {
+                throw new IllegalArgumentException("p must be between 0 and 1: " + p);
+            }
+            this.p = p;
+        }
+
+        @Override
+        public FollowGraph generate(int numNodes, RandomStreams random) {
+            FollowGraph.Builder builder = new FollowGraph.Builder(numNodes);
+            if (p == 0) {
+                return builder.build();
+            }
+            double logOfMiss = Math.log1p(-p);
+            for (int i = 0; i < numNodes; i++) {
+                SplittableRandom row = random.forNode("graph", i);
+                // position j among the others stands for node j, or j + 1 past node i itself
+                long j = -1;
+                while (true) {
+                    j += (p == 1) ? 1 : 1 + (long) Math.floor(Math.log(1 - row.nextDouble()) / logOfMiss);
+                    if (j >= numNodes - 1) {
+                        break;
+                    }
+                    builder.addEdge(i, (j >= i) ? (int) j + 1 : (int) j);
+                }
+            }
+            return builder.build();
+        }
+
+        @Override
+        public String toString() {
+            return "er:" + p;
+        }
+    }
+
+    static final class BarabasiAlbert implements GraphGenerator {
+        private final int m;
+
+        BarabasiAlbert(int m) {
+            if (m < 1) {
+                throw new IllegalArgumentException("m must be at least 1: " + m);
+            }
+            this.m = m;
+        }
+
+        @Override
+        public FollowGraph generate(int numNodes, RandomStreams random) {
+            FollowGraph.Builder builder = new FollowGraph.Builder(numNodes);
+            SplittableRandom draws = random.forSimulation("graph");
+            // every node appears once per link it has, so a uniform pick is a pick by degree
+            IntList ends = new IntList();
+            int seedNodes = Math.min(numNodes, m + 1);
+            for (int i = 0; i < seedNodes; i++) {
+                for (int j = i + 1; j < seedNodes; j++) {
+                    link(builder, ends, i, j);
+                }
+            }
+            int[] targets = new int[m];
+            for (int v = seedNodes; v < numNodes; v++) {
+                for (int t = 0; t < m; t++) {
+                    int target;
+                    do {
+                        target = ends.get(draws.nextInt(ends.size()));
+                    } while (contains(targets, t, target));
+                    targets[t] = target;
+                }
+                for (int target : targets) {
+                    link(builder, ends, v, target);
+                }
+            }
+            return builder.build();
+        }
+
+        private static void link(FollowGraph.Builder builder, IntList ends, int a, int b) {
+            builder.addEdge(a, b).addEdge(b, a);
+            ends.add(a);
+            ends.add(b);
+        }
+
+        private static boolean contains(int[] values, int count, int value) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "ba:" + m;
+        }
+    }
+
+    /** A link moved onto one that exists is dropped when the graph is built, leaving two nodes a link short */
+    static final class WattsStrogatz implements GraphGenerator {
+        private final int k;
+        private final double beta;
+
+        WattsStrogatz(int k, double beta) {
+            if (k < 2 || k % 2 != 0) {
+                throw new IllegalArgumentException("k must be even and at least 2: " + k);
+            }
+            if (!(beta >= 0 && beta <= 1)) {
+                throw new IllegalArgumentException("beta must be between 0 and 1: " + beta);
+            }
+            this.k = k;
+            this.beta = beta;
+        }
+
+        @Override
+        public FollowGraph generate(int numNodes, RandomStreams random) {
+            if (k >= numNodes) {
+                throw new IllegalArgumentException("k = " + k + " needs more than " + numNodes + " nodes");
+            }
+            FollowGraph.Builder builder = new FollowGraph.Builder(numNodes);
+            for (int i = 0; i < numNodes; i++) {
+                SplittableRandom row = random.forNode("graph", i);
+                for (int d = 1; d <= k / 2; d++) {
+                    int j = (i + d) % numNodes;
+                    if (row.nextDouble() < beta) {
+                        j = row.nextInt(numNodes - 1);
+                        j = (j >= i) ? j + 1 : j;
+                    }
+                    builder.addEdge(i, j).addEdge(j, i);
+                }
+            }
+            return builder.build();
+        }
+
+        @Override
+        public String toString() {
+            return "ws:" + k + ":" + beta;
+        }
+    }
+
+    /**
+     * The union of k random permutations, node i following perm(i) in each. A pick that would
+     * have a node follow itself or a node it already follows is swapped with another node's,
+     * so the graph is exactly regular unless no swap is found, which is unlikely unless k is
+     * close to numNodes.
+     */
+    static final class KRegular implements GraphGenerator {
+        private static final int SWAP_ATTEMPTS = 100;
+
+        private final int k;
+
+        KRegular(int k) {
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative: " + k);
+            }
+            this.k = k;
+        }
+
+        @Override
+        public FollowGraph generate(int numNodes, RandomStreams random) {
+            if (k >= numNodes && numNodes > 0) {
+                throw new IllegalArgumentException("k = " + k + " needs more than " + numNodes + " nodes");
+            }
+            SplittableRandom draws = random.forSimulation("graph");
+            // the followees of node i picked so far are picked[i * k .. i * k + r - 1]
+            int[] picked = new int[numNodes * k];
+            int[] perm = new int[numNodes];
+            for (int r = 0; r < k; r++) {
+                for (int i = 0; i < numNodes; i++) {
+                    perm[i] = i;
+                }
+                for (int i = numNodes - 1; i > 0; i--) {
+                    swap(perm, i, draws.nextInt(i + 1));
+                }
+                for (int i = 0; i < numNodes; i++) {
+                    for (int attempt = 0; attempt < SWAP_ATTEMPTS && !allowed(picked, r, i, perm[i]); attempt++) {
+                        int x = draws.nextInt(numNodes);
+                        if (allowed(picked, r, i, perm[x]) && allowed(picked, r, x, perm[i])) {
+                            swap(perm, i, x);
+                        }
+                    }
+                }
+                for (int i = 0; i < numNodes; i++) {
+                    picked[i * k + r] = perm[i];
+                }
+            }
+            FollowGraph.Builder builder = new FollowGraph.Builder(numNodes);
+            for (int i = 0; i < numNodes; i++) {
+                for (int r = 0; r < k; r++) {
+                    builder.addEdge(i, picked[i * k + r]);
+                }
+            }
+            return builder.build();
+        }
+
+        /** @return true if node i may follow {@code followee}, given its first {@code r} picks */
+        private boolean allowed(int[] picked, int r, int i, int followee) {
+            if (followee == i) {
+                return false;
+            }
+            for (int s = 0; s < r; s++) {
+                if (picked[i * k + s] == followee) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void swap(int[] values, int a, int b) {
+            int value = values[a];
+            values[a] = values[b];
+            values[b] = value;
+        }
+
+        @Override
+        public String toString() {
+            return "regular:" + k;
+        }
+    }
+
+    static final class EdgeList implements GraphGenerator {
+        private final Path path;
+
+        EdgeList(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public FollowGraph generate(int numNodes, RandomStreams random) {
+            FollowGraph.Builder builder = new FollowGraph.Builder(numNodes);
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                int lineNumber = 0;
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lineNumber++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] ends = line.split("\\s+");
+                    try {
+                        builder.addEdge(Integer.parseInt(ends[0]), Integer.parseInt(ends[1]));
+                    } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                        throw new IllegalArgumentException(path + ":" + lineNumber + ": not an edge between two of "
+                                + numNodes + " nodes: " + line, e);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return builder.build();
+        }
+
+        @Override
+        public String toString() {
+            return "file:" + path;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Counts of non-negative longs, such as latencies in nanoseconds, in buckets eight to a power of
+ * two: a value is known to within an eighth, over the whole range of a long, in 488 counters.
+ * Not thread safe; keep one per thread and {@link #add} them up.
+ */
+final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below 2 * SUB_BUCKETS have a bucket each
+    private static final int EXACT = 2 * SUB_BUCKETS;
+
+    private final long[] counts = new long[EXACT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS];
+    private long count;
+    private long max;
+
+    void record(long value) {
+        value = Math.max(0, value);
+        counts[index(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    /** @return the least value of the bucket holding the {@code quantile} of the values, 0 if there are none */
+    long quantile(double quantile) {
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return lowest(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowest(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int exponent = (index - EXACT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long sub = (index - EXACT) % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+}
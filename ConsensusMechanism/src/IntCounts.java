@@ -0,0 +1,121 @@
+import java.util.Arrays;
+
+/**
+ * Counts per non-negative int key, by open addressing with linear probing, in the order keys were
+ * first counted. Like {@link IntSet} it is cleared in time proportional to the number of keys, for
+ * tallies that are taken again every round.
+ */
+final class IntCounts {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int shift;
+    /** the slot of the i-th key counted */
+    private final IntList slots = new IntList();
+
+    IntCounts() {
+        this(16);
+    }
+
+    IntCounts(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, 2 * expectedSize - 1)) << 1;
+        this.keys = newTable(capacity);
+        this.counts = new int[capacity];
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Adds one to the count of {@code key}
+     *
+     * @return the new count
+     */
+    int increment(int key) {
+        int mask = keys.length - 1;
+        int slot = index(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                slots.add(slot);
+                if (2 * slots.size() > keys.length) {
+                    grow();
+                    return ++counts[find(key)];
+                }
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ++counts[slot];
+    }
+
+    /** @return the count of {@code key}, 0 if it was never counted */
+    int count(int key) {
+        int slot = find(key);
+        return (slot < 0) ? 0 : counts[slot];
+    }
+
+    /** @return the number of distinct keys counted */
+    int size() {
+        return slots.size();
+    }
+
+    /** @return the i-th key counted, in the order keys were first counted */
+    int keyAt(int i) {
+        return keys[slots.get(i)];
+    }
+
+    /** @return the count of the i-th key counted */
+    int countAt(int i) {
+        return counts[slots.get(i)];
+    }
+
+    void clear() {
+        int[] used = slots.array();
+        for (int i = 0; i < slots.size(); i++) {
+            keys[used[i]] = EMPTY;
+            counts[used[i]] = 0;
+        }
+        slots.clear();
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        for (int slot = index(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = newTable(2 * oldKeys.length);
+        counts = new int[keys.length];
+        shift--;
+        int mask = keys.length - 1;
+        int[] used = slots.array();
+        for (int i = 0; i < slots.size(); i++) {
+            int key = oldKeys[used[i]];
+            int slot = index(key);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            counts[slot] = oldCounts[used[i]];
+            used[i] = slot;
+        }
+    }
+
+    private int index(int key) {
+        return (key * 0x9e3779b9) >>> shift;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+}
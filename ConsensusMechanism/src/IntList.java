@@ -0,0 +1,58 @@
+import java.util.Arrays;
+
+/** A growable array of ints, for buffers that are cleared and refilled round after round without boxing */
+public final class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        values[size++] = value;
+    }
+
+    /** Appends {@code from[start]} to {@code from[end - 1]} */
+    public void addAll(int[] from, int start, int end) {
+        int count = end - start;
+        if (size + count > values.length) {
+            values = Arrays.copyOf(values, Math.max(2 * values.length, size + count));
+        }
+        System.arraycopy(from, start, values, size, count);
+        size += count;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Empties the list, keeping its capacity */
+    public void clear() {
+        size = 0;
+    }
+
+    /** @return the backing array, valid up to {@link #size()} and replaced when the list grows */
+    public int[] array() {
+        return values;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * A {@link Node} for large simulations: nodes are known by their index, 0 to numNodes - 1, and
+ * transactions by theirs, 0 to numTx - 1, and proposals travel in int arrays that are reused
+ * every round. {@link NodeAdapter} runs a Node as one.
+ */
+public interface IntNode {
+
+    /** {@code followees} holds the nodes this node follows, in increasing order, out of {@code numNodes} */
+    void setFollowees(int[] followees, int numNodes);
+
+    /** initialize proposal list of transactions */
+    void setPendingTransactions(int[] txs);
+
+    /**
+     * Appends the proposals to send to my followers to {@code out}. REMEMBER: After final round,
+     * it should append the transactions upon which consensus has been reached.
+     */
+    void sendToFollowers(IntList out);
+
+    /**
+     * receive {@code count} candidates from other nodes: transaction {@code txs[k]} proposed by
+     * node {@code senders[k]}. The arrays are refilled once the call returns.
+     */
+    void receiveFromFollowees(int[] txs, int[] senders, int count);
+}
@@ -0,0 +1,105 @@
+import java.util.Arrays;
+
+/**
+ * A set of non-negative ints by open addressing with linear probing, which remembers the order
+ * elements were added in. Clearing costs the number of elements rather than the capacity, so a
+ * set can be emptied every round while staying as large as its busiest round needed.
+ */
+final class IntSet {
+
+    private static final int EMPTY = -1;
+
+    private int[] table;
+    private int shift;
+    private final IntList elements = new IntList();
+
+    IntSet() {
+        this(16);
+    }
+
+    IntSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, 2 * expectedSize - 1)) << 1;
+        this.table = newTable(capacity);
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /** @return true if {@code value} was not in the set */
+    boolean add(int value) {
+        int mask = table.length - 1;
+        for (int slot = index(value); ; slot = (slot + 1) & mask) {
+            if (table[slot] == value) {
+                return false;
+            }
+            if (table[slot] == EMPTY) {
+                table[slot] = value;
+                elements.add(value);
+                if (2 * elements.size() > table.length) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    boolean contains(int value) {
+        int mask = table.length - 1;
+        for (int slot = index(value); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return elements.size();
+    }
+
+    /** @return the elements in the order they were added; do not change the list */
+    IntList elements() {
+        return elements;
+    }
+
+    void clear() {
+        // latest first: the probe path of an element only crosses elements added before it
+        int[] values = elements.array();
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            remove(values[i]);
+        }
+        elements.clear();
+    }
+
+    private void remove(int value) {
+        int mask = table.length - 1;
+        for (int slot = index(value); table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == value) {
+                table[slot] = EMPTY;
+                return;
+            }
+        }
+    }
+
+    private void grow() {
+        table = newTable(2 * table.length);
+        shift--;
+        int mask = table.length - 1;
+        int[] values = elements.array();
+        for (int i = 0; i < elements.size(); i++) {
+            int slot = index(values[i]);
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = values[i];
+        }
+    }
+
+    private int index(int value) {
+        return (value * 0x9e3779b9) >>> shift;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+}
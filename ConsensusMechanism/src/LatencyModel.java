@@ -0,0 +1,63 @@
+import java.util.SplittableRandom;
+
+/**
+ * How long a message takes from one node to another, in nanoseconds of simulated time, for the
+ * {@link EventSimulator}. A model draws from the sending node's stream, so delays are
+ * reproducible; {@link #perEdge} fixes one delay per link instead of one per message.
+ */
+public interface LatencyModel {
+
+    /** @return the delay of one message from {@code from} to {@code to}, not negative */
+    long delay(int from, int to, SplittableRandom random);
+
+    /** Every message takes {@code nanos} */
+    static LatencyModel constant(long nanos) {
+        return (from, to, random) -> nanos;
+    }
+
+    /** Messages take between {@code min} and {@code max}, uniformly */
+    static LatencyModel uniform(long min, long max) {
+        return (from, to, random) -> (min == max) ? min : random.nextLong(min, max + 1);
+    }
+
+    /**
+     * Delays whose logarithm is normal, with half of them below {@code median}: most messages are
+     * close to it, a few take many times as long, as on real links
+     */
+    static LatencyModel logNormal(long median, double sigma) {
+        return (from, to, random) -> (long) (median * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * A delay drawn from {@code model} once per ordered pair of nodes, the same for every message
+     * between them; drawn again from the pair's own stream rather than stored, so it costs no
+     * memory per link
+     */
+    static LatencyModel perEdge(LatencyModel model, long seed) {
+        return (from, to, random) -> model.delay(from, to, new SplittableRandom(mix(seed ^ mix(((long) from << 32) | (to & 0xffffffffL)))));
+    }
+
+    /**
+     * {@code base}, times {@code factor} on a fraction {@code fraction} of the links, chosen by
+     * pair as in {@link #perEdge}
+     */
+    static LatencyModel slowLinks(LatencyModel base, double fraction, double factor, long seed) {
+        return (from, to, random) -> {
+            long delay = base.delay(from, to, random);
+            long pair = mix(~seed ^ mix(((long) from << 32) | (to & 0xffffffffL)));
+            return ((pair >>> 11) * 0x1.0p-53 < fraction) ? (long) (delay * factor) : delay;
+        };
+    }
+
+    /** @return this delay plus that of {@code other}, such as a fixed delay per link and jitter per message */
+    default LatencyModel plus(LatencyModel other) {
+        return (from, to, random) -> delay(from, to, random) + other.delay(from, to, random);
+    }
+
+    /** The SplitMix64 finalizer, as in {@link RandomStreams} */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded queue that any thread may offer to and only its owner polls, without locks: every
+ * slot carries a sequence number saying whose turn it is, producers claim a slot by a
+ * compare-and-set on the tail, and the owner, being the only consumer, moves the head with plain
+ * writes. A full mailbox refuses the offer, leaving the sender to decide how to wait.
+ *
+ * <p>An owner with nothing to do may {@link #park}; an offer wakes it.
+ */
+final class Mailbox<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    /** slot i may be written by the producer of position p when it holds p, and read when it holds p + 1 */
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final Thread owner;
+    private volatile boolean parked;
+
+    /** A mailbox of {@code capacity} messages, rounded up to a power of two, polled by {@code owner} */
+    Mailbox(int capacity, Thread owner) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+        this.mask = size - 1;
+        this.owner = owner;
+    }
+
+    /** @return false if the mailbox is full */
+    boolean offer(T message) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequence.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(slot, message);
+                    // a volatile write, so the read of parked below cannot move ahead of it
+                    sequence.set(slot, position + 1);
+                    if (parked) {
+                        LockSupport.unpark(owner);
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /** @return the oldest message, or null if there is none; by the owner only */
+    T poll() {
+        int slot = (int) head & mask;
+        if (sequence.get(slot) != head + 1) {
+            return null;
+        }
+        T message = slots.get(slot);
+        slots.lazySet(slot, null);
+        sequence.lazySet(slot, head + mask + 1);
+        head++;
+        return message;
+    }
+
+    /** @return the number of messages waiting, counting those being written; by the owner only */
+    int depth() {
+        return (int) (tail.get() - head);
+    }
+
+    /**
+     * Parks the owner until a message is offered or {@code until} is true, unless one already
+     * has been; may return early. {@code until} must be set before whoever sets it calls
+     * {@link #wake}.
+     */
+    void park(BooleanSupplier until) {
+        parked = true;
+        if (sequence.get((int) head & mask) != head + 1 && !until.getAsBoolean()) {
+            LockSupport.park(this);
+        }
+        parked = false;
+    }
+
+    /** Wakes the owner if it is parked */
+    void wake() {
+        if (parked) {
+            LockSupport.unpark(owner);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * What a {@link MaliciousNode} sends each round. A node can only broadcast, so a behavior attacks
+ * through what it sends and when: staying silent, drowning its followers in everything it has
+ * heard, dropping in and out, or holding back until it is too late to check.
+ */
+public interface MaliciousBehavior {
+
+    /**
+     * @return the transactions to send in round {@code round}, 0 to numRounds - 1, given those the
+     *         node started with and those it has received so far; the node does not change them
+     */
+    Set<Transaction> send(int round, int numRounds, Set<Transaction> pending, Set<Transaction> heard);
+
+    /** @return a short description, such as the spec {@link #parse} reads */
+    String toString();
+
+    /** Sends nothing, ever: the original MaliciousNode */
+    static MaliciousBehavior silent() {
+        return named("silent", (round, numRounds, pending, heard) -> Collections.emptySet());
+    }
+
+    /** Sends everything it started with and everything it has heard, every round */
+    static MaliciousBehavior echo() {
+        return named("echo", (round, numRounds, pending, heard) -> union(pending, heard));
+    }
+
+    /** Echoes in even rounds and is silent in odd ones, to stay just short of looking dead */
+    static MaliciousBehavior flicker() {
+        return named("flicker", (round, numRounds, pending, heard) ->
+                (round % 2 == 0) ? union(pending, heard) : Collections.emptySet());
+    }
+
+    /** Echoes until round {@code round}, then is silent: a node that crashes midway */
+    static MaliciousBehavior crash(int round) {
+        return named("crash:" + round, (r, numRounds, pending, heard) ->
+                (r < round) ? union(pending, heard) : Collections.<Transaction>emptySet());
+    }
+
+    /** Silent until the last round, then sends what it started with, too late for anyone to confirm */
+    static MaliciousBehavior late() {
+        return named("late", (round, numRounds, pending, heard) ->
+                (round == numRounds - 1) ? pending : Collections.emptySet());
+    }
+
+    /** @return the behavior described by {@code spec}: silent, echo, flicker, crash:round or late */
+    static MaliciousBehavior parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+                case "silent":
+                    return silent();
+                case "echo":
+                    return echo();
+                case "flicker":
+                    return flicker();
+                case "crash":
+                    return crash(Integer.parseInt(parts[1]));
+                case "late":
+                    return late();
+                default:
+                    break;
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("bad malicious behavior " + spec, e);
+        }
+        throw new IllegalArgumentException("unknown malicious behavior " + spec + ", expected silent, echo, flicker, crash:round or late");
+    }
+
+    private static Set<Transaction> union(Set<Transaction> a, Set<Transaction> b) {
+        Set<Transaction> union = new HashSet<>(a);
+        union.addAll(b);
+        return union;
+    }
+
+    private static MaliciousBehavior named(String name, MaliciousBehavior behavior) {
+        return new MaliciousBehavior() {
+            @Override
+            public Set<Transaction> send(int round, int numRounds, Set<Transaction> pending, Set<Transaction> heard) {
+                return behavior.send(round, numRounds, pending, heard);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+}
@@ -3,7 +3,22 @@ import java.util.Set;
 
 public class MaliciousNode implements Node {
 
+    private final int numRounds;
+    private final MaliciousBehavior behavior;
+
+    private final Set<Transaction> pending = new HashSet<Transaction>();
+    private final Set<Transaction> heard = new HashSet<Transaction>();
+    private int round;
+
     public MaliciousNode(double p_graph, double p_malicious, double p_txDistribution, int numRounds) {
+        this(p_graph, p_malicious, p_txDistribution, numRounds, MaliciousBehavior.silent());
+    }
+
+    /** A malicious node that sends what {@code behavior} picks */
+    public MaliciousNode(double p_graph, double p_malicious, double p_txDistribution, int numRounds,
+                         MaliciousBehavior behavior) {
+        this.numRounds = numRounds;
+        this.behavior = behavior;
     }
 
     public void setFollowees(boolean[] followees) {
@@ -11,14 +26,19 @@ public class MaliciousNode implements Node {
     }
 
     public void setPendingTransaction(Set<Transaction> pendingTransactions) {
-        return;
+        pending.addAll(pendingTransactions);
     }
 
     public Set<Transaction> sendToFollowers() {
-        return new HashSet<Transaction>();
+        if (round >= numRounds) {
+            return new HashSet<Transaction>();
+        }
+        return new HashSet<Transaction>(behavior.send(round++, numRounds, pending, heard));
     }
 
     public void receiveFromFollowees(Set<Candidate> candidates) {
-        return;
+        for (Candidate candidate : candidates) {
+            heard.add(candidate.tx);
+        }
     }
 }
@@ -0,0 +1,81 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs a {@link Node} as an {@link IntNode}, translating indices to {@link Transaction}s and
+ * {@link Candidate}s and back. The node still gets a {@code boolean[numNodes]} of followees and
+ * fresh sets every round, so this is for checking a Node against the engine, not for scale.
+ */
+public final class NodeAdapter implements IntNode {
+
+    private final Node node;
+    /** shared by all adapters of one simulation */
+    private final Transaction[] transactions;
+    private final Map<Integer, Integer> indexById;
+
+    private NodeAdapter(Node node, Transaction[] transactions, Map<Integer, Integer> indexById) {
+        this.node = node;
+        this.transactions = transactions;
+        this.indexById = indexById;
+    }
+
+    /**
+     * @return an adapter for every node, transaction index i standing for the transaction with id
+     *         {@code txIds[i]}; null where the node is null, to be filled with other IntNodes
+     */
+    public static NodeAdapter[] wrap(Node[] nodes, int[] txIds) {
+        Transaction[] transactions = new Transaction[txIds.length];
+        Map<Integer, Integer> indexById = new HashMap<>();
+        for (int i = 0; i < txIds.length; i++) {
+            transactions[i] = new Transaction(txIds[i]);
+            indexById.put(txIds[i], i);
+        }
+        NodeAdapter[] adapters = new NodeAdapter[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            adapters[i] = (nodes[i] == null) ? null : new NodeAdapter(nodes[i], transactions, indexById);
+        }
+        return adapters;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public void setFollowees(int[] followees, int numNodes) {
+        boolean[] mask = new boolean[numNodes];
+        for (int followee : followees) {
+            mask[followee] = true;
+        }
+        node.setFollowees(mask);
+    }
+
+    @Override
+    public void setPendingTransactions(int[] txs) {
+        Set<Transaction> pending = new HashSet<>();
+        for (int tx : txs) {
+            pending.add(transactions[tx]);
+        }
+        node.setPendingTransaction(pending);
+    }
+
+    @Override
+    public void sendToFollowers(IntList out) {
+        for (Transaction tx : node.sendToFollowers()) {
+            // a transaction nobody was given stays invalid, whatever its id
+            Integer index = indexById.get(tx.id);
+            out.add((index == null) ? -1 : index);
+        }
+    }
+
+    @Override
+    public void receiveFromFollowees(int[] txs, int[] senders, int count) {
+        Set<Candidate> candidates = new HashSet<>();
+        for (int k = 0; k < count; k++) {
+            candidates.add(new Candidate(transactions[txs[k]], senders[k]));
+        }
+        node.receiveFromFollowees(candidates);
+    }
+}
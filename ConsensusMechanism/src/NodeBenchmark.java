@@ -0,0 +1,84 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times {@link CompliantNode} (through a {@link NodeAdapter}) against {@link FastCompliantNode} on
+ * the same scenarios: the time per run and per candidate delivered, and the bytes allocated per
+ * round, while the engine runs on the calling thread. Setting up the nodes and the graph is not
+ * measured. It also checks that both reach the same consensus at every node. MaliciousNodes run
+ * through a NodeAdapter either way, and allocate for every candidate they are sent; the scenario
+ * without them shows what the compliant nodes allocate alone.
+ *
+ * <p>Arguments, all optional: warm-up runs (3), measured runs (5), seed (1).
+ */
+public class NodeBenchmark {
+
+    public static void main(String[] args) {
+        int warmups = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+        int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+
+        Scenario[] scenarios = {
+            new Scenario(100, .1, .30, .05, 20, 500, seed),
+            new Scenario(100, .3, .15, .10, 20, 500, seed),
+            new Scenario(1000, .1, .30, .05, 20, 500, seed),
+            new Scenario(1000, .1, 0, .05, 20, 500, seed),
+        };
+        System.out.printf(Locale.ROOT, "%-34s %-18s %10s %12s %14s %6s%n",
+                "scenario", "node", "ms/run", "ns/candidate", "bytes/round", "same");
+        for (Scenario scenario : scenarios) {
+            String name = String.format(Locale.ROOT, "%d nodes, %s/%s/%s, %d rounds", scenario.numNodes,
+                    scenario.p_graph, scenario.p_malicious, scenario.p_txDistribution, scenario.numRounds);
+            int[][] expected = null;
+            for (boolean fastNodes : new boolean[] {false, true}) {
+                double nanos = 0;
+                long bytes = 0;
+                boolean bytesKnown = true;
+                long candidates = 0;
+                int[][] consensus = null;
+                for (int run = 0; run < warmups + runs; run++) {
+                    SimulationEngine engine = scenario.newEngine(null, fastNodes);
+                    long allocatedBefore = allocatedBytes();
+                    long start = System.nanoTime();
+                    engine.run(scenario.numRounds);
+                    long elapsed = System.nanoTime() - start;
+                    long allocatedAfter = allocatedBytes();
+                    if (run >= warmups) {
+                        nanos += elapsed;
+                        bytesKnown &= allocatedBefore != UNKNOWN && allocatedAfter != UNKNOWN;
+                        bytes += allocatedAfter - allocatedBefore;
+                        candidates += engine.getCandidatesDelivered();
+                    }
+                    consensus = new int[scenario.numNodes][];
+                    for (int i = 0; i < scenario.numNodes; i++) {
+                        consensus[i] = engine.consensus(i);
+                        Arrays.sort(consensus[i]);
+                    }
+                }
+                if (expected == null) {
+                    expected = consensus;
+                }
+                System.out.printf(Locale.ROOT, "%-34s %-18s %10.2f %12.1f %14s %6s%n",
+                        name, fastNodes ? "FastCompliantNode" : "CompliantNode", nanos / runs / 1e6, nanos / candidates,
+                        !bytesKnown ? "n/a" : String.valueOf(bytes / runs / scenario.numRounds),
+                        Arrays.deepEquals(expected, consensus) ? "yes" : "NO");
+            }
+        }
+    }
+
+    /** What {@link #allocatedBytes} returns when the JVM does not tell */
+    private static final long UNKNOWN = -1;
+
+    /** @return the bytes allocated by the calling thread so far, or UNKNOWN */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            // -1 too if measuring is not supported or turned off
+            long bytes = ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+            return (bytes < 0) ? UNKNOWN : bytes;
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.SplittableRandom;
+
+/**
+ * Random numbers for a simulation, all derived from one seed: every node has its own stream for
+ * every purpose, so what is drawn for a node does not depend on the order nodes are set up or run
+ * in, nor on how many threads run them. The same seed gives the same simulation.
+ */
+public final class RandomStreams {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;
+
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** @return a new generator for stream {@code purpose} of node {@code node}; asking again restarts it */
+    public SplittableRandom forNode(String purpose, int node) {
+        return new SplittableRandom(mix(mix(seed + purpose.hashCode() * GOLDEN_GAMMA) + node * GOLDEN_GAMMA));
+    }
+
+    /** @return a new generator for stream {@code purpose} of the simulation as a whole */
+    public SplittableRandom forSimulation(String purpose) {
+        return forNode(purpose, -1);
+    }
+
+    /** The SplitMix64 finalizer: nearby inputs give unrelated outputs */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs one {@link Scenario} on 1, 2, 4, ... threads up to the number of cores and reports the
+ * rounds per second at each thread count, the speedup over one thread, and whether the results
+ * were identical to those on one thread, node by node and in order. Setting up the nodes and the
+ * graph is not timed.
+ *
+ * <p>Arguments, all optional: numNodes (2000), p_graph (.1), p_malicious (.3),
+ * p_txDistribution (.05), numRounds (20), seed (1), and a graph as {@link GraphGenerator#parse}
+ * reads it (a random graph with p_graph).
+ */
+public class RoundScaling {
+
+    public static void main(String[] args) {
+        int numNodes = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        double p_graph = (args.length > 1) ? Double.parseDouble(args[1]) : .1;
+        double p_malicious = (args.length > 2) ? Double.parseDouble(args[2]) : .3;
+        double p_txDistribution = (args.length > 3) ? Double.parseDouble(args[3]) : .05;
+        int numRounds = (args.length > 4) ? Integer.parseInt(args[4]) : 20;
+        long seed = (args.length > 5) ? Long.parseLong(args[5]) : 1;
+        GraphGenerator graph = (args.length > 6) ? GraphGenerator.parse(args[6]) : GraphGenerator.erdosRenyi(p_graph);
+        Scenario scenario = new Scenario(numNodes, p_graph, p_malicious, p_txDistribution, numRounds, 500, seed, graph);
+
+        List<Integer> threadCounts = new ArrayList<>();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+
+        System.out.printf(Locale.ROOT, "%d nodes, graph %s, p_malicious %s, p_txDistribution %s, %d rounds, seed %d%n",
+                numNodes, graph, p_malicious, p_txDistribution, numRounds, seed);
+        System.out.printf(Locale.ROOT, "%8s %12s %8s %10s%n", "threads", "rounds/s", "speedup", "identical");
+        double baseline = 0;
+        int[][] expected = null;
+        for (int threads : threadCounts) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                SimulationEngine engine = scenario.newEngine(pool);
+                long start = System.nanoTime();
+                engine.run(numRounds);
+                double roundsPerSecond = numRounds / ((System.nanoTime() - start) / 1e9);
+
+                int[][] results = new int[numNodes + 1][];
+                for (int i = 0; i < numNodes; i++) {
+                    results[i] = engine.consensus(i);
+                }
+                results[numNodes] = new int[] {(int) engine.getCandidatesDelivered(), (int) (engine.getCandidatesDelivered() >>> 32)};
+                if (expected == null) {
+                    expected = results;
+                    baseline = roundsPerSecond;
+                }
+                System.out.printf(Locale.ROOT, "%8d %12.1f %7.2fx %10s%n",
+                        threads, roundsPerSecond, roundsPerSecond / baseline, Arrays.deepEquals(expected, results) ? "yes" : "NO");
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
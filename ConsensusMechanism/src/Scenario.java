@@ -0,0 +1,166 @@
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * One configuration of {@link Simulation}: who is malicious, the follow graph, the valid
+ * transactions and who starts with which, all drawn from the {@link RandomStreams} of a seed. Each
+ * node's draws come from its own streams, so the same seed sets up the same simulation however
+ * it is run.
+ */
+public final class Scenario {
+
+    public final int numNodes;
+    public final double p_graph;
+    public final double p_malicious;
+    public final double p_txDistribution;
+    public final int numRounds;
+    public final int numTx;
+    public final GraphGenerator graph;
+    public final MaliciousBehavior malicious;
+
+    private final RandomStreams random;
+    private int[] txIds;
+
+    /** A scenario on a random graph in which every node follows every other with probability p_graph */
+    public Scenario(int numNodes, double p_graph, double p_malicious, double p_txDistribution, int numRounds,
+                    int numTx, long seed) {
+        this(numNodes, p_graph, p_malicious, p_txDistribution, numRounds, numTx, seed, GraphGenerator.erdosRenyi(p_graph));
+    }
+
+    /** A scenario on a graph drawn by {@code graph}; p_graph is only passed on to the nodes */
+    public Scenario(int numNodes, double p_graph, double p_malicious, double p_txDistribution, int numRounds,
+                    int numTx, long seed, GraphGenerator graph) {
+        this(numNodes, p_graph, p_malicious, p_txDistribution, numRounds, numTx, seed, graph, MaliciousBehavior.silent());
+    }
+
+    /** Same as above, with malicious nodes that behave as {@code malicious} rather than stay silent */
+    public Scenario(int numNodes, double p_graph, double p_malicious, double p_txDistribution, int numRounds,
+                    int numTx, long seed, GraphGenerator graph, MaliciousBehavior malicious) {
+        this.numNodes = numNodes;
+        this.p_graph = p_graph;
+        this.p_malicious = p_malicious;
+        this.p_txDistribution = p_txDistribution;
+        this.numRounds = numRounds;
+        this.numTx = numTx;
+        this.graph = graph;
+        this.malicious = malicious;
+        this.random = new RandomStreams(seed);
+    }
+
+    public long getSeed() {
+        return random.getSeed();
+    }
+
+    /** @return true if node {@code node} is set to be malicious, with probability p_malicious */
+    public boolean isMalicious(int node) {
+        return random.forNode("malicious", node).nextDouble() < p_malicious;
+    }
+
+    public Node newNode(int node) {
+        if (isMalicious(node)) {
+            return new MaliciousNode(p_graph, p_malicious, p_txDistribution, numRounds, malicious);
+        }
+        return new CompliantNode(p_graph, p_malicious, p_txDistribution, numRounds);
+    }
+
+    public FollowGraph newGraph() {
+        return graph.generate(numNodes, random);
+    }
+
+    /**
+     * @return the ids of the valid transactions, by index: numTx random ints, fewer if some are
+     *         drawn twice
+     */
+    public int[] txIds() {
+        if (txIds == null) {
+            SplittableRandom draws = random.forSimulation("transactions");
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (int i = 0; i < numTx; i++) {
+                ids.add(draws.nextInt());
+            }
+            txIds = ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return txIds;
+    }
+
+    /** @return the transactions node {@code node} starts with, each with probability p_txDistribution */
+    public int[] pendingTransactions(int node) {
+        SplittableRandom draws = random.forNode("pending", node);
+        IntList pending = new IntList();
+        for (int tx = 0; tx < txIds().length; tx++) {
+            if (draws.nextDouble() < p_txDistribution) {
+                pending.add(tx);
+            }
+        }
+        return pending.toArray();
+    }
+
+    /**
+     * @return an engine running the nodes of this scenario on its graph, with every node given its
+     *         pending transactions, on {@code pool} or on the calling thread if it is null
+     */
+    public SimulationEngine newEngine(ForkJoinPool pool) {
+        return newEngine(pool, false);
+    }
+
+    /**
+     * Same as above, with {@link FastCompliantNode}s in place of CompliantNodes if
+     * {@code fastNodes}; the two reach the same consensus
+     */
+    public SimulationEngine newEngine(ForkJoinPool pool, boolean fastNodes) {
+        IntNode[] nodes = newIntNodes(fastNodes);
+        SimulationEngine engine = new SimulationEngine(newGraph(), nodes, txIds().length, pool);
+        for (int i = 0; i < numNodes; i++) {
+            engine.setPendingTransactions(i, pendingTransactions(i));
+        }
+        return engine;
+    }
+
+    /**
+     * @return a simulator running the nodes of this scenario on its graph, with every node given
+     *         its pending transactions and its delays drawn from the streams of this scenario
+     */
+    public EventSimulator newEventSimulator(boolean fastNodes) {
+        IntNode[] nodes = newIntNodes(fastNodes);
+        EventSimulator simulator = new EventSimulator(newGraph(), nodes, txIds().length, numRounds, random);
+        for (int i = 0; i < numNodes; i++) {
+            simulator.setPendingTransactions(i, pendingTransactions(i));
+        }
+        return simulator;
+    }
+
+    /**
+     * @return a runtime running the nodes of this scenario on its graph, each on its own virtual
+     *         thread, with every node given its pending transactions
+     */
+    public ActorRuntime newActorRuntime(int mailboxCapacity) {
+        Node[] nodes = new Node[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            nodes[i] = newNode(i);
+        }
+        ActorRuntime runtime = new ActorRuntime(newGraph(), nodes, txIds(), numRounds, mailboxCapacity);
+        for (int i = 0; i < numNodes; i++) {
+            runtime.setPendingTransactions(i, pendingTransactions(i));
+        }
+        return runtime;
+    }
+
+    /** @return the nodes of this scenario, as IntNodes over the transaction indices */
+    private IntNode[] newIntNodes(boolean fastNodes) {
+        Node[] nodes = new Node[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            if (!fastNodes || isMalicious(i)) {
+                nodes[i] = newNode(i);
+            }
+        }
+        NodeAdapter[] adapters = NodeAdapter.wrap(nodes, txIds());
+        IntNode[] intNodes = new IntNode[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            intNodes[i] = (adapters[i] != null) ? adapters[i]
+                    : new FastCompliantNode(p_graph, p_malicious, p_txDistribution, numRounds);
+        }
+        return intNodes;
+    }
+}
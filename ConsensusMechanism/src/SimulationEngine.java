@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Runs rounds of {@link IntNode}s over a {@link FollowGraph}, as {@link Simulation} runs rounds
+ * of Nodes. Every node's proposals are written once into a shared outbox, and each receiver
+ * then pulls the proposals of its followees into an inbox buffer that is reused from receiver to
+ * receiver, so a round costs O(edges x proposals) time and allocates nothing once the buffers
+ * have grown. Proposals of transaction indices outside 0 to numTx - 1 are dropped, like invalid
+ * transactions in Simulation, and a node that is proposed nothing is not called.
+ *
+ * <p>Nodes are independent within a phase, so with a fork-join pool both phases are split into
+ * chunks of consecutive nodes run in parallel. A node only touches its own state, its proposals
+ * land in the outbox in node order and every inbox is filled in followee order, so the results
+ * are the same for any number of threads as long as the nodes themselves are deterministic.
+ */
+public final class SimulationEngine {
+
+    /** chunks per thread, so that threads finishing early can take over work */
+    private static final int CHUNKS_PER_THREAD = 8;
+
+    private final FollowGraph graph;
+    private final IntNode[] nodes;
+    private final int numTx;
+    private final ForkJoinPool pool;
+    private final Chunk[] chunks;
+
+    /** the valid proposals of node i this round are outbox[outboxStart[i] .. outboxStart[i + 1] - 1] */
+    private final int[] outboxStart;
+    private int[] outbox = new int[16];
+
+    private int round;
+    private long candidatesDelivered;
+    /** per round, the valid proposals sent and the candidates delivered */
+    private long[] proposalsByRound = new long[16];
+    private long[] candidatesByRound = new long[16];
+
+    /** A run of consecutive nodes, with the buffers used while running them */
+    private static final class Chunk {
+        final int first;
+        final int end;
+        final IntList sent = new IntList();
+        final IntList proposals = new IntList();
+        final IntList inboxTxs = new IntList();
+        final IntList inboxSenders = new IntList();
+        int outboxOffset;
+        long delivered;
+
+        Chunk(int first, int end) {
+            this.first = first;
+            this.end = end;
+        }
+    }
+
+    /** Same as below, running everything on the calling thread */
+    public SimulationEngine(FollowGraph graph, IntNode[] nodes, int numTx) {
+        this(graph, nodes, numTx, null);
+    }
+
+    /** Creates an engine that runs rounds on {@code pool}, or on the calling thread if it is null, and tells every node its followees */
+    public SimulationEngine(FollowGraph graph, IntNode[] nodes, int numTx, ForkJoinPool pool) {
+        if (nodes.length != graph.numNodes()) {
+            throw new IllegalArgumentException(nodes.length + " nodes for a graph of " + graph.numNodes());
+        }
+        this.graph = graph;
+        this.nodes = nodes;
+        this.numTx = numTx;
+        this.pool = pool;
+        this.outboxStart = new int[nodes.length + 1];
+
+        int numChunks = (pool == null) ? 1 : Math.max(1, Math.min(nodes.length, pool.getParallelism() * CHUNKS_PER_THREAD));
+        this.chunks = new Chunk[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            chunks[c] = new Chunk((int) ((long) nodes.length * c / numChunks), (int) ((long) nodes.length * (c + 1) / numChunks));
+        }
+        forEachChunk(chunk -> {
+            for (int i = chunk.first; i < chunk.end; i++) {
+                nodes[i].setFollowees(graph.followees(i), nodes.length);
+            }
+        });
+    }
+
+    /** Gives node {@code node} the transactions it starts with, before the first round */
+    public void setPendingTransactions(int node, int[] txs) {
+        nodes[node].setPendingTransactions(txs);
+    }
+
+    public void run(int numRounds) {
+        for (int r = 0; r < numRounds; r++) {
+            runRound();
+        }
+    }
+
+    /** Runs one round: every node sends, then every node receives what its followees sent */
+    public void runRound() {
+        forEachChunk(this::send);
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            chunk.outboxOffset = total;
+            total += chunk.sent.size();
+        }
+        if (total > outbox.length) {
+            outbox = new int[Math.max(total, 2 * outbox.length)];
+        }
+        forEachChunk(chunk -> {
+            System.arraycopy(chunk.sent.array(), 0, outbox, chunk.outboxOffset, chunk.sent.size());
+            for (int i = chunk.first; i < chunk.end; i++) {
+                outboxStart[i] += chunk.outboxOffset;
+            }
+        });
+        outboxStart[nodes.length] = total;
+
+        forEachChunk(this::receive);
+        long delivered = 0;
+        for (Chunk chunk : chunks) {
+            delivered += chunk.delivered;
+            chunk.delivered = 0;
+        }
+        if (round == proposalsByRound.length) {
+            proposalsByRound = Arrays.copyOf(proposalsByRound, 2 * round);
+            candidatesByRound = Arrays.copyOf(candidatesByRound, 2 * round);
+        }
+        proposalsByRound[round] = total;
+        candidatesByRound[round] = delivered;
+        candidatesDelivered += delivered;
+        round++;
+    }
+
+    /** Collects the valid proposals of the chunk's nodes, with outboxStart relative to the chunk */
+    private void send(Chunk chunk) {
+        IntList sent = chunk.sent;
+        IntList proposals = chunk.proposals;
+        sent.clear();
+        for (int i = chunk.first; i < chunk.end; i++) {
+            outboxStart[i] = sent.size();
+            proposals.clear();
+            nodes[i].sendToFollowers(proposals);
+            int[] txs = proposals.array();
+            for (int k = 0; k < proposals.size(); k++) {
+                if (txs[k] >= 0 && txs[k] < numTx) {
+                    sent.add(txs[k]);
+                }
+            }
+        }
+    }
+
+    private void receive(Chunk chunk) {
+        IntList inboxTxs = chunk.inboxTxs;
+        IntList inboxSenders = chunk.inboxSenders;
+        int[] sent = outbox;
+        for (int j = chunk.first; j < chunk.end; j++) {
+            inboxTxs.clear();
+            inboxSenders.clear();
+            for (int k = graph.followeeStart(j); k < graph.followeeEnd(j); k++) {
+                int followee = graph.followeeAt(k);
+                for (int m = outboxStart[followee]; m < outboxStart[followee + 1]; m++) {
+                    inboxTxs.add(sent[m]);
+                    inboxSenders.add(followee);
+                }
+            }
+            if (inboxTxs.size() > 0) {
+                chunk.delivered += inboxTxs.size();
+                nodes[j].receiveFromFollowees(inboxTxs.array(), inboxSenders.array(), inboxTxs.size());
+            }
+        }
+    }
+
+    private void forEachChunk(Consumer<Chunk> action) {
+        if (pool == null) {
+            for (Chunk chunk : chunks) {
+                action.accept(chunk);
+            }
+        } else {
+            pool.invoke(new ChunkTask(action, 0, chunks.length));
+        }
+    }
+
+    /** Runs the action on chunks[start .. end - 1], splitting in halves down to single chunks */
+    @SuppressWarnings("serial")
+    private final class ChunkTask extends RecursiveAction {
+        private final Consumer<Chunk> action;
+        private final int start;
+        private final int end;
+
+        ChunkTask(Consumer<Chunk> action, int start, int end) {
+            this.action = action;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                action.accept(chunks[start]);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ChunkTask(action, start, middle), new ChunkTask(action, middle, end));
+            }
+        }
+    }
+
+    /**
+     * @return the transactions node {@code node} believes consensus has been reached on, in the
+     *         order it lists them; ask every node once, after the last round
+     */
+    public int[] consensus(int node) {
+        IntList out = new IntList();
+        nodes[node].sendToFollowers(out);
+        return out.toArray();
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    /** @return the number of candidates handed to nodes so far, one per proposal and follower */
+    public long getCandidatesDelivered() {
+        return candidatesDelivered;
+    }
+
+    /** @return the number of valid proposals sent in round {@code round}, counted once however many follow the sender */
+    public long getProposalsSent(int round) {
+        return (round < this.round) ? proposalsByRound[round] : 0;
+    }
+
+    /** @return the number of candidates handed to nodes in round {@code round} */
+    public long getCandidatesDelivered(int round) {
+        return (round < this.round) ? candidatesByRound[round] : 0;
+    }
+
+    public FollowGraph getGraph() {
+        return graph;
+    }
+
+    /** @return the number of threads rounds run on */
+    public int getParallelism() {
+        return (pool == null) ? 1 : pool.getParallelism();
+    }
+}
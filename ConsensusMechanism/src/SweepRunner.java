@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link Simulation} for all 3x3x3x2 = 54 combinations of p_graph, p_malicious,
+ * p_txDistribution and numRounds, each with several seeds, and writes one summary line per
+ * combination instead of every node's transaction ids. Runs are spread over a fixed pool of one
+ * thread per core, each run on its own thread, and a run is set up only when a thread takes it
+ * and reduced to a handful of numbers when it ends, so at most one run per thread is in memory.
+ *
+ * <p>Of a run are kept, over its compliant nodes: the agreement rate, the share of them that end
+ * up with the set of transactions most of them have; whether all agree; the size of that set; the
+ * quiet round, after which no node proposes anything until the final round; and the proposals
+ * and candidates sent. Summaries average them over the seeds.
+ *
+ * <p>Arguments, all optional: output file ({@code sweep.csv}; written as JSON if it ends in
+ * {@code .json}), seeds per combination (5), first seed (1), threads (the number of cores).
+ */
+public class SweepRunner {
+
+    static final double[] P_GRAPH = {.1, .2, .3};
+    static final double[] P_MALICIOUS = {.15, .30, .45};
+    static final double[] P_TX_DISTRIBUTION = {.01, .05, .10};
+    static final int[] NUM_ROUNDS = {10, 20};
+
+    static final int NUM_NODES = 100;
+    static final int NUM_TX = 500;
+
+    /** What is kept of a run */
+    static final class RunResult {
+        double agreement;
+        boolean unanimous;
+        int consensusSize;
+        int quietRound;
+        long proposals;
+        long candidates;
+        double millis;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String output = (args.length > 0) ? args[0] : "sweep.csv";
+        int seeds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        long firstSeed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        List<Scenario> configurations = new ArrayList<>();
+        for (double p_graph : P_GRAPH) {
+            for (double p_malicious : P_MALICIOUS) {
+                for (double p_txDistribution : P_TX_DISTRIBUTION) {
+                    for (int numRounds : NUM_ROUNDS) {
+                        configurations.add(new Scenario(NUM_NODES, p_graph, p_malicious, p_txDistribution, numRounds, NUM_TX, firstSeed));
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<List<Future<RunResult>>> futures = new ArrayList<>();
+        try {
+            for (Scenario configuration : configurations) {
+                List<Future<RunResult>> runs = new ArrayList<>();
+                for (int s = 0; s < seeds; s++) {
+                    Scenario scenario = new Scenario(NUM_NODES, configuration.p_graph, configuration.p_malicious,
+                            configuration.p_txDistribution, configuration.numRounds, NUM_TX, firstSeed + s);
+                    runs.add(executor.submit(() -> run(scenario)));
+                }
+                futures.add(runs);
+            }
+            List<List<RunResult>> results = new ArrayList<>();
+            for (List<Future<RunResult>> runs : futures) {
+                List<RunResult> done = new ArrayList<>();
+                for (Future<RunResult> run : runs) {
+                    done.add(run.get());
+                }
+                results.add(done);
+            }
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+                if (output.endsWith(".json")) {
+                    writeJson(out, configurations, results);
+                } else {
+                    writeCsv(out, configurations, results);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.printf(Locale.ROOT, "%d combinations x %d seeds on %d threads in %.1f s, written to %s%n",
+                configurations.size(), seeds, threads, (System.nanoTime() - start) / 1e9, output);
+    }
+
+    /** Runs {@code scenario} on the calling thread and reduces it to its result */
+    static RunResult run(Scenario scenario) {
+        long start = System.nanoTime();
+        SimulationEngine engine = scenario.newEngine(null);
+        engine.run(scenario.numRounds);
+
+        RunResult result = new RunResult();
+        Map<IntBuffer, Integer> holders = new HashMap<>();
+        int compliant = 0;
+        for (int i = 0; i < scenario.numNodes; i++) {
+            int[] consensus = engine.consensus(i);
+            if (scenario.isMalicious(i)) {
+                continue;
+            }
+            compliant++;
+            Arrays.sort(consensus);
+            holders.merge(IntBuffer.wrap(consensus), 1, Integer::sum);
+        }
+        int most = 0;
+        for (Map.Entry<IntBuffer, Integer> holder : holders.entrySet()) {
+            if (holder.getValue() > most) {
+                most = holder.getValue();
+                result.consensusSize = holder.getKey().capacity();
+            }
+        }
+        result.agreement = (compliant == 0) ? 1 : most / (double) compliant;
+        result.unanimous = holders.size() <= 1;
+
+        // the final round announces the consensus, so it does not count as traffic still going on
+        for (int round = 0; round < scenario.numRounds - 1; round++) {
+            if (engine.getProposalsSent(round) > 0) {
+                result.quietRound = round + 1;
+            }
+        }
+        for (int round = 0; round < scenario.numRounds; round++) {
+            result.proposals += engine.getProposalsSent(round);
+        }
+        result.candidates = engine.getCandidatesDelivered();
+        result.millis = (System.nanoTime() - start) / 1e6;
+        return result;
+    }
+
+    private static final String[] COLUMNS = {
+        "p_graph", "p_malicious", "p_txDistribution", "numRounds", "seeds",
+        "agreement", "minAgreement", "unanimous", "consensusSize", "quietRound", "proposals", "candidates", "millis"
+    };
+
+    /** @return the summary of one combination, in the order of COLUMNS */
+    private static Object[] summarize(Scenario configuration, List<RunResult> runs) {
+        double agreement = 0;
+        double minAgreement = 1;
+        int unanimous = 0;
+        double consensusSize = 0;
+        double quietRound = 0;
+        double proposals = 0;
+        double candidates = 0;
+        double millis = 0;
+        for (RunResult run : runs) {
+            agreement += run.agreement;
+            minAgreement = Math.min(minAgreement, run.agreement);
+            unanimous += run.unanimous ? 1 : 0;
+            consensusSize += run.consensusSize;
+            quietRound += run.quietRound;
+            proposals += run.proposals;
+            candidates += run.candidates;
+            millis += run.millis;
+        }
+        int n = runs.size();
+        return new Object[] {
+            configuration.p_graph, configuration.p_malicious, configuration.p_txDistribution, configuration.numRounds, n,
+            agreement / n, minAgreement, unanimous / (double) n, consensusSize / n, quietRound / n,
+            proposals / n, candidates / n, millis / n
+        };
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double) {
+            // four decimals at most, and none that are zero
+            return new BigDecimal(String.format(Locale.ROOT, "%.4f", (Double) value)).stripTrailingZeros().toPlainString();
+        }
+        return String.valueOf(value);
+    }
+
+    private static void writeCsv(PrintWriter out, List<Scenario> configurations, List<List<RunResult>> results) {
+        out.println(String.join(",", COLUMNS));
+        for (int c = 0; c < configurations.size(); c++) {
+            Object[] row = summarize(configurations.get(c), results.get(c));
+            StringBuilder line = new StringBuilder();
+            for (int k = 0; k < row.length; k++) {
+                line.append((k == 0) ? "" : ",").append(format(row[k]));
+            }
+            out.println(line);
+        }
+    }
+
+    private static void writeJson(PrintWriter out, List<Scenario> configurations, List<List<RunResult>> results) {
+        out.println("[");
+        for (int c = 0; c < configurations.size(); c++) {
+            Object[] row = summarize(configurations.get(c), results.get(c));
+            StringBuilder line = new StringBuilder("  {");
+            for (int k = 0; k < row.length; k++) {
+                line.append((k == 0) ? "" : ", ").append('"').append(COLUMNS[k]).append("\": ").append(format(row[k]));
+            }
+            out.println(line.append((c == configurations.size() - 1) ? "}" : "},"));
+        }
+        out.println("]");
+    }
+}